@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.impl.DefaultInceptionV4Factory;
+import org.ml4j.nn.models.inceptionv4.impl.DefaultInceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4AccuracyComparison;
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4ImagePreprocessor;
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4InputImage;
+import org.ml4j.nn.models.inceptionv4.impl.PackedInceptionV4WeightsLoaderImpl;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares a network built from a packed weights file, such as one written
+ * by the converter in float16 or bfloat16 or by the quantizer in int8, with
+ * the pretrained float32 network over a directory of images.
+ *
+ * Lives alongside the benchmarks as it needs their CPU matrix backend and
+ * session factory to build the networks.
+ *
+ * Usage: InceptionV4AccuracyComparisonTool &lt;packedWeightsFile&gt; &lt;imageDirectory&gt; [batchSize]
+ */
+public class InceptionV4AccuracyComparisonTool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4AccuracyComparisonTool.class);
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			throw new IllegalArgumentException(
+					"Usage: InceptionV4AccuracyComparisonTool <packedWeightsFile> <imageDirectory> [batchSize]");
+		}
+		int batchSize = args.length == 3 ? Integer.parseInt(args[2]) : 32;
+		ClassLoader classLoader = InceptionV4AccuracyComparisonTool.class.getClassLoader();
+		InceptionV4BenchmarkEnvironment environment = new InceptionV4BenchmarkEnvironment();
+		FeedForwardNeuralNetworkContext context = environment.createInferenceContext();
+
+		SupervisedFeedForwardNeuralNetwork referenceNetwork = new DefaultInceptionV4Factory(
+				environment.getSessionFactory(), environment.getMatrixFactory(), classLoader)
+						.createInceptionV4(context);
+		SupervisedFeedForwardNeuralNetwork candidateNetwork = new DefaultInceptionV4Factory(
+				environment.getSessionFactory(),
+				new PackedInceptionV4WeightsLoaderImpl(Paths.get(args[0]), environment.getMatrixFactory()),
+				new DefaultInceptionV4Labels(classLoader)).createInceptionV4(context);
+
+		InceptionV4AccuracyComparison.Report report = new InceptionV4AccuracyComparison(
+				environment.getMatrixFactory(), batchSize).compare(referenceNetwork, context, candidateNetwork,
+						context, InceptionV4InputImage.fromDirectory(Paths.get(args[1]),
+								new InceptionV4ImagePreprocessor()), null);
+		LOGGER.info("{} Inception V4 weights compared with float32: {}", args[0], report);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.util.Random;
+
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.jblas.JBlasRowMajorMatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.FeedForwardNeuralNetworkContextImpl;
+import org.ml4j.nn.activationfunctions.factories.DefaultDifferentiableActivationFunctionFactory;
+import org.ml4j.nn.activationfunctions.factories.DifferentiableActivationFunctionFactory;
+import org.ml4j.nn.axons.factories.AxonsFactory;
+import org.ml4j.nn.components.DirectedComponentsContext;
+import org.ml4j.nn.components.DirectedComponentsContextImpl;
+import org.ml4j.nn.components.factories.DirectedComponentFactory;
+import org.ml4j.nn.factories.DefaultAxonsFactoryImpl;
+import org.ml4j.nn.factories.DefaultDirectedComponentFactoryImpl;
+import org.ml4j.nn.neurons.ImageNeuronsActivationImpl;
+import org.ml4j.nn.neurons.Neurons3D;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.format.ImageNeuronsActivationFormat;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactoryImpl;
+import org.ml4j.nn.supervised.DefaultSupervisedFeedForwardNeuralNetworkFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetworkFactory;
+
+/**
+ * The CPU (JBlas) matrix backend and session factory shared by the benchmarks.
+ */
+public class InceptionV4BenchmarkEnvironment {
+
+	/**
+	 * The 299 x 299 x 3 input neurons of the Inception V4 network.
+	 */
+	public static final Neurons3D INPUT_NEURONS = new Neurons3D(299, 299, 3, false);
+
+	private MatrixFactory matrixFactory;
+	private DirectedComponentsContext directedComponentsContext;
+	private DefaultSessionFactory sessionFactory;
+
+	public InceptionV4BenchmarkEnvironment() {
+		this.matrixFactory = new JBlasRowMajorMatrixFactory();
+		this.directedComponentsContext = new DirectedComponentsContextImpl(matrixFactory, false);
+		AxonsFactory axonsFactory = new DefaultAxonsFactoryImpl(matrixFactory);
+		DifferentiableActivationFunctionFactory activationFunctionFactory = new DefaultDifferentiableActivationFunctionFactory();
+		DirectedComponentFactory directedComponentFactory = new DefaultDirectedComponentFactoryImpl(matrixFactory,
+				axonsFactory, activationFunctionFactory, directedComponentsContext);
+		SupervisedFeedForwardNeuralNetworkFactory supervisedFeedForwardNeuralNetworkFactory = new DefaultSupervisedFeedForwardNeuralNetworkFactory(
+				directedComponentFactory);
+		this.sessionFactory = new DefaultSessionFactoryImpl(matrixFactory, directedComponentFactory, null,
+				supervisedFeedForwardNeuralNetworkFactory, null);
+	}
+
+	public MatrixFactory getMatrixFactory() {
+		return matrixFactory;
+	}
+
+	public DefaultSessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	/**
+	 * @return A new context for non-training forward propagation.
+	 */
+	public FeedForwardNeuralNetworkContext createInferenceContext() {
+		return new FeedForwardNeuralNetworkContextImpl(directedComponentsContext, false);
+	}
+
+	/**
+	 * Create a batch of random images in the [-1, 1] range expected by the network.
+	 *
+	 * @param batchSize The number of images.
+	 * @param seed The random seed.
+	 * @return The input activations for the batch.
+	 */
+	public NeuronsActivation createRandomInput(int batchSize, long seed) {
+		Random random = new Random(seed);
+		float[] values = new float[INPUT_NEURONS.getNeuronCountExcludingBias() * batchSize];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextFloat() * 2 - 1;
+		}
+		Matrix activations = matrixFactory.createMatrixFromRowsByRowsArray(
+				INPUT_NEURONS.getNeuronCountExcludingBias(), batchSize, values);
+		return new ImageNeuronsActivationImpl(activations, INPUT_NEURONS,
+				ImageNeuronsActivationFormat.ML4J_DEFAULT_IMAGE_FORMAT, false);
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Inception V4 benchmarks, writing the results as JSON so that they
+ * can be compared between releases.
+ *
+ * Accepts the standard JMH command line options - by default the results are
+ * written to jmh-result.json in the working directory.
+ */
+public class InceptionV4Benchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		OptionsBuilder optionsBuilder = new OptionsBuilder();
+		optionsBuilder.parent(commandLineOptions);
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			optionsBuilder.include(InceptionV4Benchmarks.class.getPackage().getName() + ".*Benchmark");
+		}
+		if (!commandLineOptions.getResultFormat().hasValue()) {
+			optionsBuilder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLineOptions.getResult().hasValue()) {
+			optionsBuilder.result("jmh-result.json");
+		}
+		new Runner(optionsBuilder.build()).run();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.ForwardPropagation;
+import org.ml4j.nn.models.inceptionv4.impl.DefaultInceptionV4Factory;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks forward propagation through the pretrained Inception V4 network
+ * on the CPU matrix backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class InferenceBenchmark {
+
+	@Param({ "1", "8", "32", "128" })
+	public int batchSize;
+
+	private SupervisedFeedForwardNeuralNetwork network;
+	private FeedForwardNeuralNetworkContext context;
+	private NeuronsActivation input;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		InceptionV4BenchmarkEnvironment environment = new InceptionV4BenchmarkEnvironment();
+		context = environment.createInferenceContext();
+		network = new DefaultInceptionV4Factory(environment.getSessionFactory(), environment.getMatrixFactory(),
+				InferenceBenchmark.class.getClassLoader()).createInceptionV4(context);
+		input = environment.createRandomInput(batchSize, 0);
+	}
+
+	@Benchmark
+	public ForwardPropagation forwardPropagate() {
+		return network.forwardPropagate(input, context);
+	}
+}
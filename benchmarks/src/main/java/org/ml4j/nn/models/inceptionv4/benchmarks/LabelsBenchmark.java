@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.impl.DefaultInceptionV4Labels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks loading the Inception V4 labels and looking labels up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LabelsBenchmark {
+
+	private static final int LABEL_COUNT = 1001;
+
+	private InceptionV4Labels labels;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		labels = new DefaultInceptionV4Labels(LabelsBenchmark.class.getClassLoader());
+	}
+
+	@Benchmark
+	public InceptionV4Labels loadLabels() throws IOException {
+		return new DefaultInceptionV4Labels(LabelsBenchmark.class.getClassLoader());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LABEL_COUNT)
+	public void getLabel(Blackhole blackhole) {
+		for (int labelIndex = 0; labelIndex < LABEL_COUNT; labelIndex++) {
+			blackhole.consume(labels.getLabel(labelIndex));
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4Factory;
+import org.ml4j.nn.models.inceptionv4.impl.DefaultInceptionV4Factory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building the full pretrained Inception V4 network, including
+ * loading all of its weights.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NetworkConstructionBenchmark {
+
+	private InceptionV4BenchmarkEnvironment environment;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		environment = new InceptionV4BenchmarkEnvironment();
+	}
+
+	@Benchmark
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4() throws IOException {
+		InceptionV4Factory factory = new DefaultInceptionV4Factory(environment.getSessionFactory(),
+				environment.getMatrixFactory(), NetworkConstructionBenchmark.class.getClassLoader());
+		return factory.createInceptionV4(environment.createInferenceContext());
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.benchmarks;
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.ml4j.nn.models.inceptionv4.impl.PackedInceptionV4Weights;
+import org.ml4j.nn.models.inceptionv4.impl.PackedInceptionV4WeightsConverter;
+import org.ml4j.nn.models.inceptionv4.impl.PretrainedInceptionV4WeightsLoaderImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading a single pretrained tensor, from the serialized
+ * resources and from a packed weights file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WeightsLoadingBenchmark {
+
+	@Param({ "conv2d_1_kernel0" })
+	public String tensorName;
+
+	private PretrainedInceptionV4WeightsLoaderImpl serializedWeightsLoader;
+	private long uid;
+	private Path packedWeightsPath;
+	private PackedInceptionV4Weights packedWeights;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ClassLoader classLoader = WeightsLoadingBenchmark.class.getClassLoader();
+		serializedWeightsLoader = new PretrainedInceptionV4WeightsLoaderImpl(classLoader, null);
+		uid = ObjectStreamClass.lookup(float[].class).getSerialVersionUID();
+		packedWeightsPath = Files.createTempFile("inceptionv4", ".weights");
+		new PackedInceptionV4WeightsConverter(classLoader).convert(packedWeightsPath);
+		packedWeights = PackedInceptionV4Weights.open(packedWeightsPath);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		packedWeights = null;
+		Files.deleteIfExists(packedWeightsPath);
+	}
+
+	@Benchmark
+	public float[] deserializeTensor() throws IOException, ClassNotFoundException {
+		return serializedWeightsLoader.deserialize(float[].class, "inceptionv4javaweights", uid, tensorName);
+	}
+
+	@Benchmark
+	public float[] readPackedTensor() {
+		return packedWeights.readTensor(tensorName);
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for a service classifying images with an Inception V4 Network
+ */
+public interface InceptionV4Classifier extends AutoCloseable {
+
+	/**
+	 * Submit an image for classification.
+	 * 
+	 * @param image The 299 x 299 x 3 input activations of the image, channel-major
+	 *              and scaled to the [-1, 1] range.
+	 * @return A future completed with the top predictions for the image, in
+	 *         descending order of score.
+	 */
+	CompletableFuture<List<InceptionV4Prediction>> classify(float[] image);
+
+	/**
+	 * Stop accepting images, failing any which have not yet been classified.
+	 */
+	@Override
+	void close();
+}
@@ -24,4 +24,40 @@ package org.ml4j.nn.models.inceptionv4;
 public interface InceptionV4Labels {
 
 	String getLabel(int labelIndex);
+
+	/**
+	 * Resolve a number of label indices in one call.
+	 * 
+	 * @param labelIndices The indices of the labels.
+	 * @param labels The array populated with the label of each index.
+	 */
+	default void getLabels(int[] labelIndices, String[] labels) {
+		getLabels(labelIndices, labelIndices.length, labels);
+	}
+
+	/**
+	 * Resolve the first label indices in one call, such as those of a
+	 * partially filled batch.
+	 * 
+	 * @param labelIndices The indices of the labels.
+	 * @param count The number of label indices to resolve.
+	 * @param labels The array populated with the label of each of the first count indices.
+	 */
+	default void getLabels(int[] labelIndices, int count, String[] labels) {
+		for (int i = 0; i < count; i++) {
+			labels[i] = getLabel(labelIndices[i]);
+		}
+	}
+
+	/**
+	 * Resolve a number of label indices in one call.
+	 * 
+	 * @param labelIndices The indices of the labels.
+	 * @return The label of each index.
+	 */
+	default String[] getLabels(int[] labelIndices) {
+		String[] labels = new String[labelIndices.length];
+		getLabels(labelIndices, labels);
+		return labels;
+	}
 }
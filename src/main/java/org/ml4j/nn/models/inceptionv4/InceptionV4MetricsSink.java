@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4;
+
+/**
+ * Receives the measurements of forward propagations through the components
+ * of an Inception V4 Network.
+ */
+public interface InceptionV4MetricsSink {
+
+	/**
+	 * Record a single forward propagation through a component.
+	 * 
+	 * @param componentName  The name of the component.
+	 * @param wallTimeNanos  The elapsed time of the forward propagation.
+	 * @param allocatedBytes The bytes allocated by the propagating thread, or -1
+	 *                       if allocation cannot be measured on this JVM.
+	 * @param inputFeatures  The number of input features of each example.
+	 * @param outputFeatures The number of output features of each example.
+	 * @param exampleCount   The number of examples propagated.
+	 */
+	void recordForwardPropagation(String componentName, long wallTimeNanos, long allocatedBytes, int inputFeatures,
+			int outputFeatures, int exampleCount);
+}
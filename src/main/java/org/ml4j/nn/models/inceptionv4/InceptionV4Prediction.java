@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4;
+
+/**
+ * Interface for a single class prediction of an Inception V4 Network
+ */
+public interface InceptionV4Prediction {
+
+	/**
+	 * @return The index of the predicted class.
+	 */
+	int getLabelIndex();
+
+	/**
+	 * @return The label of the predicted class.
+	 */
+	String getLabel();
+
+	/**
+	 * @return The output activation of the network for the predicted class.
+	 */
+	float getScore();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4;
+
+/**
+ * Listener notified as the pretrained Inception V4 tensors are loaded.
+ */
+public interface InceptionV4WeightsLoadingListener {
+
+	/**
+	 * Notification that a tensor has been loaded into a matrix.
+	 * 
+	 * @param tensorName              The name of the tensor.
+	 * @param bytesRead               The number of stored bytes read for the tensor.
+	 * @param decodeNanos             The time taken to read and decode the tensor values.
+	 * @param matrixConstructionNanos The time taken to construct the matrix from the values.
+	 */
+	void onTensorLoaded(String tensorName, long bytesRead, long decodeNanos, long matrixConstructionNanos);
+
+	/**
+	 * Notification that the construction of a network has completed.
+	 * 
+	 * @param networkName       The name of the network.
+	 * @param constructionNanos The time taken to construct the network, including
+	 *                          loading its weights.
+	 */
+	default void onNetworkConstructed(String networkName, long constructionNanos) {
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.axons.BiasFormatImpl;
+import org.ml4j.nn.axons.BiasVector;
+import org.ml4j.nn.axons.BiasVectorImpl;
+import org.ml4j.nn.axons.FeaturesVector;
+import org.ml4j.nn.axons.FeaturesVectorFormat;
+import org.ml4j.nn.axons.FeaturesVectorFormatImpl;
+import org.ml4j.nn.axons.FeaturesVectorImpl;
+import org.ml4j.nn.axons.FeaturesVectorOrientation;
+import org.ml4j.nn.axons.WeightsFormatImpl;
+import org.ml4j.nn.axons.WeightsMatrix;
+import org.ml4j.nn.axons.WeightsMatrixImpl;
+import org.ml4j.nn.axons.WeightsMatrixOrientation;
+import org.ml4j.nn.models.inceptionv4.InceptionV4WeightsLoadingListener;
+import org.ml4j.nn.neurons.format.features.Dimension;
+import org.ml4j.nn.neurons.format.features.DimensionScope;
+
+/**
+ * Base class for weights loaders which obtain the pretrained Inception V4
+ * tensors as row-by-row float arrays.
+ *
+ * Subclasses only need to provide the raw values for a named tensor - the
+ * weights, bias and features vector formats expected by the
+ * InceptionV4Definition are applied here.
+ */
+public abstract class AbstractInceptionV4WeightsLoader implements InceptionV4WeightsLoader {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	protected MatrixFactory matrixFactory;
+
+	private transient volatile InceptionV4WeightsLoadingListener weightsLoadingListener;
+
+	private transient volatile InceptionV4WeightsManifest manifest;
+
+	protected AbstractInceptionV4WeightsLoader(MatrixFactory matrixFactory) {
+		this.matrixFactory = matrixFactory;
+	}
+
+	/**
+	 * @param weightsLoadingListener The listener notified as each tensor is
+	 *                               loaded, or null to stop notifications.
+	 */
+	public void setWeightsLoadingListener(InceptionV4WeightsLoadingListener weightsLoadingListener) {
+		this.weightsLoadingListener = weightsLoadingListener;
+	}
+
+	/**
+	 * @param manifest The manifest the requested shapes are checked against,
+	 *                 or null to only check the number of loaded values.
+	 */
+	public void setManifest(InceptionV4WeightsManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * @return The manifest the requested shapes are checked against, or null
+	 *         if none has been set. Loaders which delegate to a source loader
+	 *         return the manifest of their source.
+	 */
+	protected InceptionV4WeightsManifest getManifest() {
+		return manifest;
+	}
+
+	/**
+	 * Load the values of the named tensor.
+	 *
+	 * @param name The name of the tensor.
+	 * @return The values of the tensor, in row-by-row order.
+	 */
+	protected abstract float[] loadWeights(String name);
+
+	/**
+	 * @return The names of all the tensors this loader can load.
+	 * @throws UnsupportedOperationException If the loader cannot list its tensors.
+	 */
+	public Collection<String> getTensorNames() {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot list its tensors");
+	}
+
+	/**
+	 * Load the values of the named tensor, which the network expects to hold
+	 * the given number of values. Loaders which can check the stored size of a
+	 * tensor before reading its values override this method.
+	 *
+	 * @param name The name of the tensor.
+	 * @param expectedLength The number of values expected.
+	 * @return The values of the tensor, in row-by-row order.
+	 */
+	protected float[] loadWeights(String name, int expectedLength) {
+		return loadWeights(name);
+	}
+
+	/**
+	 * Create the matrix backing the named tensor.
+	 *
+	 * @param name The name of the tensor.
+	 * @param rows The number of rows of the matrix.
+	 * @param columns The number of columns of the matrix.
+	 * @return The matrix for the tensor.
+	 */
+	protected Matrix createMatrix(String name, int rows, int columns) {
+		InceptionV4WeightsLoadingListener listener = weightsLoadingListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		float[] values = checkShape(name, loadWeights(name, rows * columns), rows, columns);
+		if (listener == null) {
+			return matrixFactory.createMatrixFromRowsByRowsArray(rows, columns, values);
+		}
+		long decoded = System.nanoTime();
+		Matrix matrix = matrixFactory.createMatrixFromRowsByRowsArray(rows, columns, values);
+		listener.onTensorLoaded(name, getStoredByteLength(name, values), decoded - start,
+				System.nanoTime() - decoded);
+		return matrix;
+	}
+
+	private float[] checkShape(String name, float[] values, int rows, int columns) {
+		// Loaders may only read their manifest when the first tensor is loaded
+		InceptionV4WeightsManifest currentManifest = getManifest();
+		if (currentManifest != null) {
+			currentManifest.checkShape(name, rows, columns);
+		}
+		if (values.length != rows * columns) {
+			throw new IllegalStateException("Tensor " + name + " has " + values.length + " values but a " + rows
+					+ " x " + columns + " matrix was requested");
+		}
+		return values;
+	}
+
+	/**
+	 * @param name The name of the tensor.
+	 * @param values The loaded values of the tensor.
+	 * @return The number of stored bytes read for the tensor.
+	 */
+	protected long getStoredByteLength(String name, float[] values) {
+		return values.length * 4L;
+	}
+
+	public WeightsMatrix getDenseLayerWeights(String name, int rows, int columns) {
+		return new WeightsMatrixImpl(createMatrix(name, rows, columns),
+				new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_FEATURE),
+						Arrays.asList(Dimension.OUTPUT_FEATURE), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+	}
+
+	public WeightsMatrix getConvolutionalLayerWeights(String name, int width, int height, int inputDepth, int outputDepth) {
+		Matrix weights = createMatrix(name, outputDepth, width * height * inputDepth);
+		boolean oneByOneConvolution = width == 1 && height == 1;
+		if (oneByOneConvolution) {
+			return new WeightsMatrixImpl(weights,
+					new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_DEPTH),
+							Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+		} else {
+			return new WeightsMatrixImpl(weights,
+					new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_DEPTH, Dimension.FILTER_HEIGHT, Dimension.FILTER_WIDTH),
+							Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+		}
+	}
+
+	public WeightsMatrix getBatchNormLayerWeights(String name, int inputDepth) {
+		return new WeightsMatrixImpl(createMatrix(name, inputDepth, 1),
+				new WeightsFormatImpl(Arrays.asList(
+						Dimension.INPUT_DEPTH),
+						Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+	}
+
+	@Override
+	public BiasVector getDenseLayerBiases(String name, int rows, int columns) {
+		return new BiasVectorImpl(createMatrix(name, rows, columns),
+				FeaturesVectorFormat.DEFAULT_BIAS_FORMAT);
+	}
+
+	@Override
+	public BiasVector getBatchNormLayerBiases(String name, int outputDepth) {
+		return new BiasVectorImpl(createMatrix(name, outputDepth, 1),
+				new BiasFormatImpl(Dimension.OUTPUT_DEPTH, FeaturesVectorOrientation.COLUMN_VECTOR));
+	}
+
+	@Override
+	public FeaturesVector getBatchNormLayerMean(String name, int outputDepth) {
+		return new FeaturesVectorImpl(createMatrix(name, outputDepth, 1), new FeaturesVectorFormatImpl(Arrays.asList(Dimension.OUTPUT_DEPTH),
+				FeaturesVectorOrientation.COLUMN_VECTOR, DimensionScope.OUTPUT));
+	}
+
+	@Override
+	public FeaturesVector getBatchNormLayerVariance(String name, int outputDepth) {
+		return new FeaturesVectorImpl(createMatrix(name, outputDepth, 1), new FeaturesVectorFormatImpl(Arrays.asList(Dimension.OUTPUT_DEPTH),
+				FeaturesVectorOrientation.COLUMN_VECTOR, DimensionScope.OUTPUT));
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Classifier;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Prediction;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Classifier which coalesces concurrently submitted images into micro-batches,
+ * running one forward pass per batch.
+ *
+ * A batch is propagated as soon as it is full, or once the oldest image in it
+ * has waited for the maximum batch delay.
+ */
+public class BatchingInceptionV4Classifier implements InceptionV4Classifier {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchingInceptionV4Classifier.class);
+
+	private final SupervisedFeedForwardNeuralNetwork network;
+	private final FeedForwardNeuralNetworkContext context;
+	private final MatrixFactory matrixFactory;
+	private final InceptionV4Labels labels;
+	private final int maxBatchSize;
+	private final long maxBatchDelayNanos;
+	private final int classCount;
+	private final int topK;
+	private final InceptionV4TopKSelector topKSelector;
+	private final float[] scores;
+	private final int[] topIndices;
+	private final float[] topScores;
+	private final String[] topLabels;
+	private final BlockingQueue<PendingImage> pendingImages;
+	private final Thread dispatcher;
+	private volatile boolean closed;
+
+	/**
+	 * @param network The Inception V4 Network, as created by an InceptionV4Factory.
+	 * @param context The prediction context of the network.
+	 * @param matrixFactory The matrix factory.
+	 * @param labels The labels of the network outputs.
+	 * @param maxBatchSize The maximum number of images propagated together.
+	 * @param maxBatchDelay The maximum time an image waits for its batch to fill.
+	 * @param timeUnit The unit of the maximum batch delay.
+	 * @param classCount The number of classes output by the network.
+	 * @param topK The number of predictions returned for each image, at most the number of classes.
+	 */
+	public BatchingInceptionV4Classifier(SupervisedFeedForwardNeuralNetwork network,
+			FeedForwardNeuralNetworkContext context, MatrixFactory matrixFactory, InceptionV4Labels labels,
+			int maxBatchSize, long maxBatchDelay, TimeUnit timeUnit, int classCount, int topK) {
+		if (maxBatchSize < 1 || topK < 1) {
+			throw new IllegalArgumentException("Batch size and top k must be positive");
+		}
+		if (topK > classCount) {
+			throw new IllegalArgumentException("Cannot select top " + topK + " of " + classCount + " classes");
+		}
+		this.network = network;
+		this.context = context;
+		this.matrixFactory = matrixFactory;
+		this.labels = labels;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchDelayNanos = timeUnit.toNanos(maxBatchDelay);
+		this.classCount = classCount;
+		this.topK = topK;
+		this.topKSelector = new InceptionV4TopKSelector(topK);
+		this.scores = new float[maxBatchSize * classCount];
+		this.topIndices = new int[maxBatchSize * topK];
+		this.topScores = new float[maxBatchSize * topK];
+		this.topLabels = new String[maxBatchSize * topK];
+		this.pendingImages = new LinkedBlockingQueue<>();
+		this.dispatcher = new Thread(this::dispatchBatches, "inceptionv4-classifier");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	@Override
+	public CompletableFuture<List<InceptionV4Prediction>> classify(float[] image) {
+		if (image.length != InceptionV4Activations.INPUT_FEATURE_COUNT) {
+			throw new IllegalArgumentException("Image has " + image.length + " features but "
+					+ InceptionV4Activations.INPUT_FEATURE_COUNT + " are required");
+		}
+		PendingImage pendingImage = new PendingImage(image);
+		if (closed) {
+			pendingImage.result.completeExceptionally(new IllegalStateException("Classifier has been closed"));
+		} else {
+			pendingImages.add(pendingImage);
+			if (closed) {
+				failPending(new IllegalStateException("Classifier has been closed"));
+			}
+		}
+		return pendingImage.result;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		dispatcher.interrupt();
+		failPending(new IllegalStateException("Classifier has been closed"));
+	}
+
+	private void dispatchBatches() {
+		List<PendingImage> batch = new ArrayList<>(maxBatchSize);
+		while (!closed) {
+			try {
+				PendingImage first = pendingImages.take();
+				batch.add(first);
+				long deadline = first.submittedNanos + maxBatchDelayNanos;
+				while (batch.size() < maxBatchSize) {
+					PendingImage next = pendingImages.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				classifyBatch(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				batch.forEach(p -> p.result.completeExceptionally(e));
+				break;
+			} catch (RuntimeException e) {
+				LOGGER.error("Failed to classify batch of {} images", batch.size(), e);
+				batch.forEach(p -> p.result.completeExceptionally(e));
+			}
+			batch.clear();
+		}
+	}
+
+	private void classifyBatch(List<PendingImage> batch) {
+		int batchSize = batch.size();
+		float[] input = new float[InceptionV4Activations.INPUT_FEATURE_COUNT * batchSize];
+		for (int exampleIndex = 0; exampleIndex < batchSize; exampleIndex++) {
+			InceptionV4Activations.copyToBatch(batch.get(exampleIndex).image, input, exampleIndex, batchSize);
+		}
+		NeuronsActivation inputActivations = InceptionV4Activations.createInputActivations(matrixFactory,
+				InceptionV4Activations.INPUT_NEURONS, input, batchSize);
+		NeuronsActivation outputActivations = network.forwardPropagate(inputActivations, context).getOutput();
+		if (outputActivations.getFeatureCount() != classCount) {
+			throw new IllegalStateException("Network output " + outputActivations.getFeatureCount()
+					+ " classes but " + classCount + " were expected");
+		}
+		InceptionV4Activations.getExampleMajorActivations(outputActivations, matrixFactory, scores);
+		topKSelector.select(scores, batchSize, classCount, topIndices, topScores);
+		InceptionV4TopKSelector.resolveLabels(topIndices, batchSize * topK, labels, topLabels);
+		for (int exampleIndex = 0; exampleIndex < batchSize; exampleIndex++) {
+			List<InceptionV4Prediction> predictions = new ArrayList<>(topK);
+			for (int i = exampleIndex * topK; i < (exampleIndex + 1) * topK; i++) {
+				predictions.add(new InceptionV4PredictionImpl(topIndices[i], topLabels[i], topScores[i]));
+			}
+			batch.get(exampleIndex).result.complete(predictions);
+		}
+	}
+
+	private void failPending(Exception exception) {
+		PendingImage pendingImage;
+		while ((pendingImage = pendingImages.poll()) != null) {
+			pendingImage.result.completeExceptionally(exception);
+		}
+	}
+
+	private static class PendingImage {
+
+		private final float[] image;
+		private final long submittedNanos;
+		private final CompletableFuture<List<InceptionV4Prediction>> result;
+
+		PendingImage(float[] image) {
+			this.image = image;
+			this.submittedNanos = System.nanoTime();
+			this.result = new CompletableFuture<>();
+		}
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.axons.BiasVector;
+import org.ml4j.nn.axons.FeaturesVector;
+import org.ml4j.nn.axons.WeightsMatrix;
+
+/**
+ * Weights loader decorator which shares the decoded weights, biases and
+ * features vectors between every network built from it, keyed by tensor name
+ * and shape.
+ *
+ * The cached instances are shared read-only, so this loader should only back
+ * networks used for inference - training any one of them would update the
+ * weights of all of them.
+ */
+public class CachingInceptionV4WeightsLoader implements InceptionV4WeightsLoader {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Determines when cached tensors are released.
+	 */
+	public enum EvictionPolicy {
+
+		/**
+		 * Tensors are held until the cache is cleared.
+		 */
+		NEVER,
+
+		/**
+		 * Tensors are held while the reference count obtained through
+		 * {@link CachingInceptionV4WeightsLoader#retain()} is positive, and
+		 * released as soon as it returns to zero.
+		 */
+		ON_RELEASE,
+
+		/**
+		 * Tensors are released once no network references them any longer.
+		 */
+		WEAK,
+
+		/**
+		 * Tensors no network references any longer are released when the
+		 * garbage collector needs the memory.
+		 */
+		SOFT
+	}
+
+	private InceptionV4WeightsLoader delegate;
+	private EvictionPolicy evictionPolicy;
+	private transient Map<TensorKey, CacheEntry> cacheEntries;
+	private transient ReferenceQueue<Object> releasedTensors;
+	private transient int referenceCount;
+
+	public CachingInceptionV4WeightsLoader(InceptionV4WeightsLoader delegate, EvictionPolicy evictionPolicy) {
+		this.delegate = delegate;
+		this.evictionPolicy = evictionPolicy;
+		this.cacheEntries = new ConcurrentHashMap<>();
+		this.releasedTensors = new ReferenceQueue<>();
+	}
+
+	/**
+	 * Register a network which uses the cached tensors.
+	 */
+	public synchronized void retain() {
+		referenceCount++;
+	}
+
+	/**
+	 * Deregister a network which uses the cached tensors. Under the
+	 * {@link EvictionPolicy#ON_RELEASE} policy the cache is cleared once no
+	 * registered network remains.
+	 */
+	public synchronized void release() {
+		if (referenceCount == 0) {
+			throw new IllegalStateException("Weights cache released more times than retained");
+		}
+		referenceCount--;
+		if (referenceCount == 0 && evictionPolicy == EvictionPolicy.ON_RELEASE) {
+			clear();
+		}
+	}
+
+	/**
+	 * Release all cached tensors.
+	 */
+	public void clear() {
+		cacheEntries.clear();
+	}
+
+	/**
+	 * @return The number of tensors currently cached.
+	 */
+	public int getCachedTensorCount() {
+		expungeReleasedTensors();
+		return cacheEntries.size();
+	}
+
+	@Override
+	public WeightsMatrix getDenseLayerWeights(String name, int rows, int columns) {
+		return getCached(new TensorKey("denseWeights", name, rows, columns),
+				() -> delegate.getDenseLayerWeights(name, rows, columns));
+	}
+
+	@Override
+	public WeightsMatrix getConvolutionalLayerWeights(String name, int width, int height, int inputDepth,
+			int outputDepth) {
+		return getCached(new TensorKey("convolutionalWeights", name, width, height, inputDepth, outputDepth),
+				() -> delegate.getConvolutionalLayerWeights(name, width, height, inputDepth, outputDepth));
+	}
+
+	@Override
+	public WeightsMatrix getBatchNormLayerWeights(String name, int inputDepth) {
+		return getCached(new TensorKey("batchNormWeights", name, inputDepth),
+				() -> delegate.getBatchNormLayerWeights(name, inputDepth));
+	}
+
+	@Override
+	public BiasVector getDenseLayerBiases(String name, int rows, int columns) {
+		return getCached(new TensorKey("denseBiases", name, rows, columns),
+				() -> delegate.getDenseLayerBiases(name, rows, columns));
+	}
+
+	@Override
+	public BiasVector getBatchNormLayerBiases(String name, int outputDepth) {
+		return getCached(new TensorKey("batchNormBiases", name, outputDepth),
+				() -> delegate.getBatchNormLayerBiases(name, outputDepth));
+	}
+
+	@Override
+	public FeaturesVector getBatchNormLayerMean(String name, int outputDepth) {
+		return getCached(new TensorKey("batchNormMean", name, outputDepth),
+				() -> delegate.getBatchNormLayerMean(name, outputDepth));
+	}
+
+	@Override
+	public FeaturesVector getBatchNormLayerVariance(String name, int outputDepth) {
+		return getCached(new TensorKey("batchNormVariance", name, outputDepth),
+				() -> delegate.getBatchNormLayerVariance(name, outputDepth));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T getCached(TensorKey key, Supplier<T> loader) {
+		expungeReleasedTensors();
+		// Hold the tensor strongly until it is returned, as weak and soft entries may be cleared at any time
+		Object[] tensor = new Object[1];
+		cacheEntries.compute(key, (k, existing) -> {
+			tensor[0] = existing == null ? null : existing.get();
+			if (tensor[0] == null) {
+				tensor[0] = loader.get();
+				return new CacheEntry(k, tensor[0]);
+			}
+			return existing;
+		});
+		return (T) tensor[0];
+	}
+
+	private void expungeReleasedTensors() {
+		Reference<?> polled;
+		while ((polled = releasedTensors.poll()) != null) {
+			Reference<?> released = polled;
+			cacheEntries.computeIfPresent(((Releasable) released).getKey(),
+					(k, existing) -> existing.reference == released ? null : existing);
+		}
+	}
+
+	private Object readResolve() {
+		return new CachingInceptionV4WeightsLoader(delegate, evictionPolicy);
+	}
+
+	private interface Releasable {
+		TensorKey getKey();
+	}
+
+	private static class WeakTensorReference extends WeakReference<Object> implements Releasable {
+
+		private final TensorKey key;
+
+		WeakTensorReference(TensorKey key, Object tensor, ReferenceQueue<Object> queue) {
+			super(tensor, queue);
+			this.key = key;
+		}
+
+		@Override
+		public TensorKey getKey() {
+			return key;
+		}
+	}
+
+	private static class SoftTensorReference extends SoftReference<Object> implements Releasable {
+
+		private final TensorKey key;
+
+		SoftTensorReference(TensorKey key, Object tensor, ReferenceQueue<Object> queue) {
+			super(tensor, queue);
+			this.key = key;
+		}
+
+		@Override
+		public TensorKey getKey() {
+			return key;
+		}
+	}
+
+	private class CacheEntry {
+
+		private final Object tensor;
+		private final Reference<Object> reference;
+
+		CacheEntry(TensorKey key, Object tensor) {
+			if (evictionPolicy == EvictionPolicy.WEAK) {
+				this.tensor = null;
+				this.reference = new WeakTensorReference(key, tensor, releasedTensors);
+			} else if (evictionPolicy == EvictionPolicy.SOFT) {
+				this.tensor = null;
+				this.reference = new SoftTensorReference(key, tensor, releasedTensors);
+			} else {
+				this.tensor = tensor;
+				this.reference = null;
+			}
+		}
+
+		Object get() {
+			return reference == null ? tensor : reference.get();
+		}
+	}
+
+	private static class TensorKey {
+
+		private final String type;
+		private final String name;
+		private final int[] shape;
+
+		TensorKey(String type, String name, int... shape) {
+			this.type = type;
+			this.name = name;
+			this.shape = shape;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * type.hashCode() + name.hashCode()) + Arrays.hashCode(shape);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TensorKey)) {
+				return false;
+			}
+			TensorKey other = (TensorKey) obj;
+			return type.equals(other.type) && name.equals(other.name) && Arrays.equals(shape, other.shape);
+		}
+	}
+}
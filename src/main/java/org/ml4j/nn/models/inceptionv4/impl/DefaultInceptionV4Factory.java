@@ -15,7 +15,12 @@
  */
 package org.ml4j.nn.models.inceptionv4.impl;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import org.ml4j.MatrixFactory;
 import org.ml4j.nn.FeedForwardNeuralNetworkContext;
@@ -28,6 +33,7 @@ import org.ml4j.nn.axons.BiasVector;
 import org.ml4j.nn.axons.WeightsMatrix;
 import org.ml4j.nn.models.inceptionv4.InceptionV4Factory;
 import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4WeightsLoadingListener;
 import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
 import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
 import org.slf4j.Logger;
@@ -38,7 +44,7 @@ import org.slf4j.LoggerFactory;
  * Default factory for an Inception V4 Network.
  * 
  */
-public class DefaultInceptionV4Factory implements InceptionV4Factory {
+public class DefaultInceptionV4Factory implements InceptionV4Factory, Closeable {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultInceptionV4Factory.class);
 
@@ -48,6 +54,10 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 
 	private InceptionV4Labels labels;
 
+	private List<InceptionV4WeightsLoadingListener> weightsLoadingListeners;
+
+	private volatile InceptionV4WeightsLoadingMetrics weightsLoadingMetrics;
+
 	/**
 	 * Creates the default pre-trained InceptionV4 Networks
 	 * 
@@ -65,6 +75,26 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 				new DefaultInceptionV4Labels(classLoader));
 	}
 
+	/**
+	 * Creates the default pre-trained InceptionV4 Networks, reading all the
+	 * pretrained weights concurrently as soon as the factory is created. The
+	 * first network built is served the prefetched weights - any weights it
+	 * does not use are held until the factory is closed.
+	 * 
+	 * @param sessionFactory
+	 * @param matrixFactory
+	 * @param classLoader
+	 * @param weightsLoadingExecutor The executor reading the pretrained weights, owned and shut down by the caller
+	 * @throws IOException
+	 */
+	public DefaultInceptionV4Factory(DefaultSessionFactory sessionFactory,
+			MatrixFactory matrixFactory,
+			ClassLoader classLoader, Executor weightsLoadingExecutor) throws IOException {
+		this(sessionFactory,
+				PrefetchingInceptionV4WeightsLoader.getLoader(matrixFactory, classLoader, weightsLoadingExecutor),
+				new DefaultInceptionV4Labels(classLoader));
+	}
+
 	/**
 	 * Creates InceptionV4 Networks with custom weights and labels
 	 * 
@@ -79,6 +109,54 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 		this.sessionFactory = sessionFactory;
 		this.weightsLoader = weightsLoader;
 		this.labels = labels;
+		this.weightsLoadingListeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Each network built from the weights loader collects its own metrics, so
+	 * networks may be built concurrently. Only weights loaders extending
+	 * {@link AbstractInceptionV4WeightsLoader} report the tensors they load.
+	 * 
+	 * @return The metrics of the weights loaded by the most recently constructed
+	 *         network, or null if the weights loader does not report them.
+	 */
+	public InceptionV4WeightsLoadingMetrics getWeightsLoadingMetrics() {
+		return weightsLoadingMetrics;
+	}
+
+	/**
+	 * @param listener A listener notified of the tensors loaded by, and the
+	 *                 construction of, every subsequently built network.
+	 */
+	public void addWeightsLoadingListener(InceptionV4WeightsLoadingListener listener) {
+		weightsLoadingListeners.add(listener);
+	}
+
+	/**
+	 * Build a network from the weights loader.
+	 * 
+	 * The network is built from a loader reporting to metrics of its own, which
+	 * delegates to the weights loader of this factory without modifying it.
+	 */
+	SupervisedFeedForwardNeuralNetwork buildWithWeights(String networkName,
+			Function<InceptionV4WeightsLoader, SupervisedFeedForwardNeuralNetwork> networkBuilder) {
+		InceptionV4WeightsLoadingMetrics buildMetrics = null;
+		InceptionV4WeightsLoader buildWeightsLoader = weightsLoader;
+		if (weightsLoader instanceof AbstractInceptionV4WeightsLoader) {
+			buildMetrics = new InceptionV4WeightsLoadingMetrics();
+			for (InceptionV4WeightsLoadingListener listener : weightsLoadingListeners) {
+				buildMetrics.addListener(listener);
+			}
+			buildWeightsLoader = new ListeningInceptionV4WeightsLoader(
+					(AbstractInceptionV4WeightsLoader) weightsLoader, buildMetrics);
+		}
+		long startNanos = System.nanoTime();
+		SupervisedFeedForwardNeuralNetwork network = networkBuilder.apply(buildWeightsLoader);
+		if (buildMetrics != null) {
+			buildMetrics.onNetworkConstructed(networkName, System.nanoTime() - startNanos);
+			weightsLoadingMetrics = buildMetrics;
+		}
+		return network;
 	}
 
 	@Override
@@ -87,14 +165,16 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 
 		LOGGER.info("Creating Inception V4 Network...");
 
-		// Obtain the InceptionV4Definition from neural-network-architectures
-		InceptionV4Definition inceptionV4Definition = new InceptionV4Definition(weightsLoader);
-		
-		return sessionFactory
-			.createSession(trainingContext.getDirectedComponentsContext())
-			.buildSupervised3DNeuralNetwork("inceptionV4", inceptionV4Definition.getInputNeurons())
-			.withComponentGraphDefinition(inceptionV4Definition)
-			.build();
+		return buildWithWeights("inceptionV4", buildWeightsLoader -> {
+			// Obtain the InceptionV4Definition from neural-network-architectures
+			InceptionV4Definition inceptionV4Definition = new InceptionV4Definition(buildWeightsLoader);
+
+			return sessionFactory
+				.createSession(trainingContext.getDirectedComponentsContext())
+				.buildSupervised3DNeuralNetwork("inceptionV4", inceptionV4Definition.getInputNeurons())
+				.withComponentGraphDefinition(inceptionV4Definition)
+				.build();
+		});
 	}
 	
 	@Override
@@ -104,18 +184,18 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 
 		LOGGER.info("Creating Inception V4 Network...");
 
-		// Obtain the InceptionV4Definition from neural-network-architectures
-		InceptionV4Definition inceptionV4Definition = new InceptionV4Definition(weightsLoader);
-		inceptionV4Definition.setFinalDenseLayerInputDropoutKeepProbability(dropoutKeepProbability);
-		inceptionV4Definition.setFinalDenseLayerRegularisationLambda(regularisationLambda);
+		return buildWithWeights("inceptionV4WithRegularisation", buildWeightsLoader -> {
+			// Obtain the InceptionV4Definition from neural-network-architectures
+			InceptionV4Definition inceptionV4Definition = new InceptionV4Definition(buildWeightsLoader);
+			inceptionV4Definition.setFinalDenseLayerInputDropoutKeepProbability(dropoutKeepProbability);
+			inceptionV4Definition.setFinalDenseLayerRegularisationLambda(regularisationLambda);
 
-		
-		return sessionFactory
-				.createSession(trainingContext.getDirectedComponentsContext())
-				.buildSupervised3DNeuralNetwork("inceptionV4WithRegularisation", inceptionV4Definition.getInputNeurons())
-				.withComponentGraphDefinition(inceptionV4Definition)
-				.build();
-		
+			return sessionFactory
+					.createSession(trainingContext.getDirectedComponentsContext())
+					.buildSupervised3DNeuralNetwork("inceptionV4WithRegularisation", inceptionV4Definition.getInputNeurons())
+					.withComponentGraphDefinition(inceptionV4Definition)
+					.build();
+		});
 	}
 	
 	@Override
@@ -160,18 +240,32 @@ public class DefaultInceptionV4Factory implements InceptionV4Factory {
 
 		LOGGER.info("Creating Inception V4 Network...");
 
-		// Obtain the InceptionV4Definition from neural-network-architectures
-		InceptionV4WithoutTailDefinition inceptionV4Definition = new InceptionV4WithoutTailDefinition(weightsLoader);
+		return buildWithWeights("inceptionV4WithoutTail", buildWeightsLoader -> {
+			// Obtain the InceptionV4Definition from neural-network-architectures
+			InceptionV4WithoutTailDefinition inceptionV4Definition = new InceptionV4WithoutTailDefinition(buildWeightsLoader);
 
-		return sessionFactory
-				.createSession(trainingContext.getDirectedComponentsContext())
-				.buildSupervised3DNeuralNetwork("inceptionV4CustomTail", inceptionV4Definition.getInputNeurons())
-				.withComponentGraphDefinition(inceptionV4Definition)
-				.build();
+			return sessionFactory
+					.createSession(trainingContext.getDirectedComponentsContext())
+					.buildSupervised3DNeuralNetwork("inceptionV4CustomTail", inceptionV4Definition.getInputNeurons())
+					.withComponentGraphDefinition(inceptionV4Definition)
+					.build();
+		});
 	}
 
 	@Override
 	public InceptionV4Labels createInceptionV4Labels() throws IOException {
 		return labels;
 	}
+
+	/**
+	 * Release any weights prefetched by the weights loader which no network
+	 * has requested. Networks may still be built afterwards, loading their
+	 * weights synchronously.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (weightsLoader instanceof Closeable) {
+			((Closeable) weightsLoader).close();
+		}
+	}
 }
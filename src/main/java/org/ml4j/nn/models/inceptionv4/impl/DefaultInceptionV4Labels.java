@@ -16,12 +16,13 @@
 
 package org.ml4j.nn.models.inceptionv4.impl;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
 
@@ -33,29 +34,58 @@ import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
  */
 public class DefaultInceptionV4Labels implements InceptionV4Labels {
 
-	private Map<Integer, String> classificationNamesByIndex;
+	private static final int LABEL_COUNT = 1001;
+
+	private String[] classificationNames;
+
+	private byte[][] encodedClassificationNames;
 
 	public DefaultInceptionV4Labels(ClassLoader classLoader) throws IOException {
-		classificationNamesByIndex = new HashMap<>();
-		try (InputStream is = classLoader.getResourceAsStream("inceptionv4classes.txt")) {
-			int index = 0;
-			try (Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name())) {
-				while (scanner.useDelimiter("\n").hasNext()) {
-					classificationNamesByIndex.put(index, scanner.useDelimiter("\n").next());
-					index++;
-				}
-			}
-			if (index != 1001) {
-				throw new IllegalStateException("Inception V4 Classification Names Load Error");
+		List<String> names = new ArrayList<>(LABEL_COUNT);
+		try (InputStream is = classLoader.getResourceAsStream("inceptionv4classes.txt");
+				BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			String name;
+			while ((name = reader.readLine()) != null) {
+				names.add(name);
 			}
 		}
+		if (names.size() != LABEL_COUNT) {
+			throw new IllegalStateException("Inception V4 Classification Names Load Error");
+		}
+		classificationNames = names.toArray(new String[LABEL_COUNT]);
+		encodedClassificationNames = new byte[LABEL_COUNT][];
+		for (int i = 0; i < LABEL_COUNT; i++) {
+			encodedClassificationNames[i] = classificationNames[i].getBytes(StandardCharsets.UTF_8);
+		}
 	}
 
 	public String getLabel(int labelIndex) {
-		String classificationName = classificationNamesByIndex.get(labelIndex);
-		if (classificationName == null) {
+		checkIndex(labelIndex);
+		return classificationNames[labelIndex];
+	}
+
+	@Override
+	public void getLabels(int[] labelIndices, int count, String[] labels) {
+		for (int i = 0; i < count; i++) {
+			int labelIndex = labelIndices[i];
+			checkIndex(labelIndex);
+			labels[i] = classificationNames[labelIndex];
+		}
+	}
+
+	/**
+	 * @param labelIndex The index of the label.
+	 * @return The UTF-8 encoding of the label, for writing directly to responses.
+	 *         The returned array is shared and must not be modified.
+	 */
+	public byte[] getEncodedLabel(int labelIndex) {
+		checkIndex(labelIndex);
+		return encodedClassificationNames[labelIndex];
+	}
+
+	private void checkIndex(int labelIndex) {
+		if (labelIndex < 0 || labelIndex >= classificationNames.length) {
 			throw new IllegalArgumentException("Index of:" + labelIndex + " is out of range");
 		}
-		return classificationName;
 	}
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.ml4j.MatrixFactory;
+
+/**
+ * Weights loader for the pretrained Inception V4 tensors in an exploded
+ * weights directory on the local file system, such as the contents of the
+ * inception-v4-weights jars extracted to fast local storage.
+ *
+ * Each serialized float[] is read with a FileChannel into a direct buffer
+ * reused by the reading thread, and its Java serialization header is parsed
+ * directly rather than through an ObjectInputStream. The element count in
+ * the header is checked against the file size and against the shape
+ * requested by the network before any values are read. If the directory
+ * contains a manifest, the bytes of each tensor are checksummed as they are
+ * read and verified against it.
+ */
+public class FileSystemInceptionV4WeightsLoaderImpl extends AbstractInceptionV4WeightsLoader {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The length of the serialization stream header, array class descriptor
+	 * and element count preceding the values of a serialized float[].
+	 */
+	static final int SERIALIZED_HEADER_LENGTH = 27;
+
+	private static final int INITIAL_BUFFER_CAPACITY = 1 << 20;
+
+	private String tensorDirectory;
+	private transient volatile ThreadLocal<ByteBuffer> readBuffers;
+	private transient volatile boolean manifestRead;
+
+	/**
+	 * @param weightsRoot The root of the exploded weights, containing the
+	 *                    inceptionv4javaweights directory.
+	 * @param matrixFactory The matrix factory.
+	 */
+	public FileSystemInceptionV4WeightsLoaderImpl(Path weightsRoot, MatrixFactory matrixFactory) {
+		super(matrixFactory);
+		this.tensorDirectory = weightsRoot.resolve(InceptionV4WeightsResources.getSerializedTensorDirectory())
+				.toString();
+	}
+
+	public static FileSystemInceptionV4WeightsLoaderImpl getLoader(MatrixFactory matrixFactory, Path weightsRoot) {
+		return new FileSystemInceptionV4WeightsLoaderImpl(weightsRoot, matrixFactory);
+	}
+
+	@Override
+	protected float[] loadWeights(String name) {
+		return readTensor(name, -1);
+	}
+
+	@Override
+	protected float[] loadWeights(String name, int expectedLength) {
+		return readTensor(name, expectedLength);
+	}
+
+	@Override
+	public Collection<String> getTensorNames() {
+		SortedSet<String> tensorNames = new TreeSet<>();
+		try (Stream<Path> files = Files.list(Paths.get(tensorDirectory))) {
+			files.map(file -> file.getFileName().toString())
+					.filter(fileName -> fileName.endsWith(InceptionV4WeightsResources.SERIALIZED_EXTENSION))
+					.forEach(fileName -> tensorNames.add(fileName.substring(0,
+							fileName.length() - InceptionV4WeightsResources.SERIALIZED_EXTENSION.length())));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return tensorNames;
+	}
+
+	/**
+	 * Read a serialized float[] tensor.
+	 *
+	 * @param name The name of the tensor.
+	 * @param expectedLength The expected number of values, or -1 for any number.
+	 * @return The values of the tensor.
+	 */
+	float[] readTensor(String name, int expectedLength) {
+		InceptionV4WeightsManifest manifest = getManifest();
+		Path path = Paths.get(tensorDirectory, name + InceptionV4WeightsResources.SERIALIZED_EXTENSION);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = getReadBuffer(SERIALIZED_HEADER_LENGTH);
+			readFully(channel, buffer, 0, path);
+			CRC32 checksum = manifest == null ? null : new CRC32();
+			if (checksum != null) {
+				checksum.update(buffer.duplicate());
+			}
+			int length = parseHeader(buffer, path);
+			if (size != SERIALIZED_HEADER_LENGTH + length * 4L) {
+				throw new IOException("Serialized tensor " + name + " declares " + length + " values but has "
+						+ (size - SERIALIZED_HEADER_LENGTH) + " bytes of data in file:" + path);
+			}
+			if (expectedLength >= 0 && length != expectedLength) {
+				throw new IllegalStateException("Tensor " + name + " has " + length + " values but "
+						+ expectedLength + " were requested, in file:" + path);
+			}
+			buffer = getReadBuffer(length * 4);
+			readFully(channel, buffer, SERIALIZED_HEADER_LENGTH, path);
+			if (checksum != null) {
+				checksum.update(buffer.duplicate());
+				manifest.checkChecksum(name, checksum.getValue());
+			}
+			float[] values = new float[length];
+			buffer.asFloatBuffer().get(values);
+			return values;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return The manifest of the tensor directory, read on first use, or null
+	 *         if the directory has none.
+	 */
+	@Override
+	protected InceptionV4WeightsManifest getManifest() {
+		if (!manifestRead) {
+			synchronized (this) {
+				if (!manifestRead) {
+					Path manifestPath = Paths.get(tensorDirectory,
+							InceptionV4WeightsManifest.SERIALIZED_MANIFEST_FILE_NAME);
+					if (Files.exists(manifestPath)) {
+						try {
+							setManifest(InceptionV4WeightsManifest.read(manifestPath));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+					manifestRead = true;
+				}
+			}
+		}
+		return super.getManifest();
+	}
+
+	private ByteBuffer getReadBuffer(int length) {
+		if (readBuffers == null) {
+			synchronized (this) {
+				if (readBuffers == null) {
+					readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY));
+				}
+			}
+		}
+		ByteBuffer buffer = readBuffers.get();
+		if (buffer.capacity() < length) {
+			buffer = ByteBuffer.allocateDirect(Math.max(length, buffer.capacity() * 2));
+			readBuffers.set(buffer);
+		}
+		buffer.clear().limit(length);
+		return buffer.order(ByteOrder.BIG_ENDIAN);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path)
+			throws IOException {
+		long offset = position;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset);
+			if (read < 0) {
+				throw new IOException("Unexpected end of serialized tensor file:" + path);
+			}
+			offset += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Parse the serialization header of a float[], as written by an
+	 * ObjectOutputStream.
+	 *
+	 * @param header The big-endian header.
+	 * @param path The path of the file, for error messages.
+	 * @return The number of values in the array.
+	 * @throws IOException In the event that the header is not that of a serialized float[].
+	 */
+	static int parseHeader(ByteBuffer header, Path path) throws IOException {
+		if (header.getShort() != ObjectStreamConstants.STREAM_MAGIC
+				|| header.getShort() != ObjectStreamConstants.STREAM_VERSION
+				|| header.get() != ObjectStreamConstants.TC_ARRAY
+				|| header.get() != ObjectStreamConstants.TC_CLASSDESC
+				|| header.getShort() != 2 || header.get() != '[' || header.get() != 'F') {
+			throw new IOException("Not a serialized float[] tensor:" + path);
+		}
+		long uid = header.getLong();
+		if (uid != ObjectStreamClass.lookup(float[].class).getSerialVersionUID()) {
+			throw new IOException("Unexpected float[] serialVersionUID " + uid + " in file:" + path);
+		}
+		if (header.get() != ObjectStreamConstants.SC_SERIALIZABLE || header.getShort() != 0
+				|| header.get() != ObjectStreamConstants.TC_ENDBLOCKDATA
+				|| header.get() != ObjectStreamConstants.TC_NULL) {
+			throw new IOException("Unexpected float[] class descriptor in file:" + path);
+		}
+		int length = header.getInt();
+		if (length < 0) {
+			throw new IOException("Negative array length " + length + " in file:" + path);
+		}
+		return length;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+/**
+ * Conversions between 32-bit floats and IEEE 754 half precision values.
+ */
+final class HalfPrecision {
+
+	private HalfPrecision() {
+	}
+
+	/**
+	 * @param value The float value.
+	 * @return The nearest half precision value, rounding half to even.
+	 */
+	static short floatToHalf(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+		if (exponent == 0xff) {
+			// Infinity or NaN
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		}
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1f) {
+			return (short) (sign | 0x7c00);
+		}
+		if (halfExponent <= 0) {
+			if (halfExponent < -10) {
+				return (short) sign;
+			}
+			// Subnormal half - shift the mantissa, including its implicit leading bit
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int roundBit = 1 << (shift - 1);
+			int halfMantissa = mantissa >> shift;
+			if ((mantissa & roundBit) != 0 && (mantissa & (3 * roundBit - 1)) != 0) {
+				halfMantissa++;
+			}
+			return (short) (sign | halfMantissa);
+		}
+		int half = sign | (halfExponent << 10) | (mantissa >> 13);
+		int roundBit = 0x1000;
+		if ((mantissa & roundBit) != 0 && (mantissa & (3 * roundBit - 1)) != 0) {
+			// A carry into the exponent correctly rounds up to the next power of two, or to infinity
+			half++;
+		}
+		return (short) half;
+	}
+
+	/**
+	 * @param half The half precision value.
+	 * @return The float value.
+	 */
+	static float halfToFloat(short half) {
+		int bits = half & 0xffff;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1f;
+		int mantissa = bits & 0x3ff;
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		if (exponent == 0) {
+			float subnormal = mantissa * 0x1p-24f;
+			return sign == 0 ? subnormal : -subnormal;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of non-negative long values, such as latencies in
+ * nanoseconds or allocated bytes.
+ *
+ * Values are counted in log-linear buckets - each power of two is split into
+ * eight buckets, so percentiles are accurate to within 12.5% over the whole
+ * range of long values, in a fixed amount of memory.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong max;
+
+	public Histogram() {
+		this.counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * @param value The value to record - negative values are ignored.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			return;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMean() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0 : sum.sum() / (double) currentCount;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The upper bound of the bucket containing the percentile, or 0 if
+	 *         no values have been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return i + 1 < counts.length() ? Math.min(bucketLowerBound(i + 1) - 1, max.get()) : max.get();
+			}
+		}
+		return max.get();
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketLowerBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+	}
+}
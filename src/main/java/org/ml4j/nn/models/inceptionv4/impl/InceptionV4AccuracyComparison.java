@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.ToIntFunction;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+
+/**
+ * Compares the top-1 and top-5 predictions of a candidate Inception V4
+ * Network, such as one built from reduced precision weights, against a
+ * reference network over a sample of images.
+ */
+public class InceptionV4AccuracyComparison {
+
+	private static final int TOP_K = 5;
+
+	private MatrixFactory matrixFactory;
+	private int batchSize;
+
+	public InceptionV4AccuracyComparison(MatrixFactory matrixFactory, int batchSize) {
+		this.matrixFactory = matrixFactory;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Propagate the sample images through both networks.
+	 *
+	 * @param referenceNetwork The reference network, such as one built from float32 weights.
+	 * @param referenceContext The prediction context of the reference network.
+	 * @param candidateNetwork The candidate network.
+	 * @param candidateContext The prediction context of the candidate network.
+	 * @param images The sample images.
+	 * @param expectedLabelIndexOfId The true label index of each image id, or
+	 *                               null if the images are unlabelled.
+	 * @return The comparison report.
+	 * @throws IOException In the event that an image cannot be read.
+	 */
+	public Report compare(SupervisedFeedForwardNeuralNetwork referenceNetwork,
+			FeedForwardNeuralNetworkContext referenceContext, SupervisedFeedForwardNeuralNetwork candidateNetwork,
+			FeedForwardNeuralNetworkContext candidateContext, Iterator<InceptionV4InputImage> images,
+			ToIntFunction<String> expectedLabelIndexOfId) throws IOException {
+		InceptionV4TopKSelector topKSelector = new InceptionV4TopKSelector(TOP_K);
+		int[] referenceTopIndices = new int[batchSize * TOP_K];
+		int[] candidateTopIndices = new int[batchSize * TOP_K];
+		float[] topScores = new float[batchSize * TOP_K];
+		int[] expectedLabelIndices = new int[batchSize];
+		Report report = new Report(expectedLabelIndexOfId != null);
+		while (images.hasNext()) {
+			int size = 0;
+			float[][] batchImages = new float[batchSize][];
+			while (size < batchSize && images.hasNext()) {
+				InceptionV4InputImage image = images.next();
+				batchImages[size] = image.getActivations();
+				if (expectedLabelIndexOfId != null) {
+					expectedLabelIndices[size] = expectedLabelIndexOfId.applyAsInt(image.getId());
+				}
+				size++;
+			}
+			float[] input = new float[InceptionV4Activations.INPUT_FEATURE_COUNT * size];
+			for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+				InceptionV4Activations.copyToBatch(batchImages[exampleIndex], input, exampleIndex, size);
+			}
+			selectTopK(referenceNetwork, referenceContext, input, size, topKSelector, referenceTopIndices, topScores);
+			selectTopK(candidateNetwork, candidateContext, input, size, topKSelector, candidateTopIndices, topScores);
+			for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+				int offset = exampleIndex * TOP_K;
+				report.add(referenceTopIndices, candidateTopIndices, offset,
+						expectedLabelIndexOfId == null ? -1 : expectedLabelIndices[exampleIndex]);
+			}
+		}
+		return report;
+	}
+
+	private void selectTopK(SupervisedFeedForwardNeuralNetwork network, FeedForwardNeuralNetworkContext context,
+			float[] input, int size, InceptionV4TopKSelector topKSelector, int[] topIndices, float[] topScores) {
+		NeuronsActivation inputActivations = InceptionV4Activations.createInputActivations(matrixFactory,
+				InceptionV4Activations.INPUT_NEURONS, input, size);
+		float[] scores = InceptionV4Activations.getExampleMajorActivations(
+				network.forwardPropagate(inputActivations, context).getOutput(), matrixFactory, null);
+		topKSelector.select(scores, size, scores.length / size, topIndices, topScores);
+	}
+
+	/**
+	 * The agreement between the candidate and reference networks, and their
+	 * accuracy against the true labels when known.
+	 */
+	public static class Report {
+
+		private final boolean labelled;
+		private long imageCount;
+		private long top1Agreement;
+		private long top5Agreement;
+		private long referenceTop1Correct;
+		private long referenceTop5Correct;
+		private long candidateTop1Correct;
+		private long candidateTop5Correct;
+
+		Report(boolean labelled) {
+			this.labelled = labelled;
+		}
+
+		void add(int[] referenceTopIndices, int[] candidateTopIndices, int offset, int expectedLabelIndex) {
+			imageCount++;
+			int referenceTop1 = referenceTopIndices[offset];
+			if (candidateTopIndices[offset] == referenceTop1) {
+				top1Agreement++;
+			}
+			if (contains(candidateTopIndices, offset, referenceTop1)) {
+				top5Agreement++;
+			}
+			if (labelled) {
+				referenceTop1Correct += referenceTop1 == expectedLabelIndex ? 1 : 0;
+				referenceTop5Correct += contains(referenceTopIndices, offset, expectedLabelIndex) ? 1 : 0;
+				candidateTop1Correct += candidateTopIndices[offset] == expectedLabelIndex ? 1 : 0;
+				candidateTop5Correct += contains(candidateTopIndices, offset, expectedLabelIndex) ? 1 : 0;
+			}
+		}
+
+		private static boolean contains(int[] topIndices, int offset, int labelIndex) {
+			for (int i = offset; i < offset + TOP_K; i++) {
+				if (topIndices[i] == labelIndex) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public long getImageCount() {
+			return imageCount;
+		}
+
+		/**
+		 * @return The fraction of images whose top prediction is the same for both networks.
+		 */
+		public double getTop1Agreement() {
+			return fraction(top1Agreement);
+		}
+
+		/**
+		 * @return The fraction of images where the reference top prediction is
+		 *         within the candidate top 5 predictions.
+		 */
+		public double getTop5Agreement() {
+			return fraction(top5Agreement);
+		}
+
+		public double getReferenceTop1Accuracy() {
+			return fraction(referenceTop1Correct);
+		}
+
+		public double getReferenceTop5Accuracy() {
+			return fraction(referenceTop5Correct);
+		}
+
+		public double getCandidateTop1Accuracy() {
+			return fraction(candidateTop1Correct);
+		}
+
+		public double getCandidateTop5Accuracy() {
+			return fraction(candidateTop5Correct);
+		}
+
+		private double fraction(long count) {
+			return imageCount == 0 ? 0 : count / (double) imageCount;
+		}
+
+		@Override
+		public String toString() {
+			String report = String.format("images=%d top1Agreement=%.4f top5Agreement=%.4f", imageCount,
+					getTop1Agreement(), getTop5Agreement());
+			if (labelled) {
+				report += String.format(" referenceTop1=%.4f candidateTop1=%.4f (delta %+.4f)"
+						+ " referenceTop5=%.4f candidateTop5=%.4f (delta %+.4f)",
+						getReferenceTop1Accuracy(), getCandidateTop1Accuracy(),
+						getCandidateTop1Accuracy() - getReferenceTop1Accuracy(), getReferenceTop5Accuracy(),
+						getCandidateTop5Accuracy(), getCandidateTop5Accuracy() - getReferenceTop5Accuracy());
+			}
+			return report;
+		}
+	}
+}
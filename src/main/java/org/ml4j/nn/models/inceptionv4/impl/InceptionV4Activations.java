@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.neurons.ImageNeuronsActivationImpl;
+import org.ml4j.nn.neurons.Neurons;
+import org.ml4j.nn.neurons.Neurons3D;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.NeuronsActivationFeatureOrientation;
+import org.ml4j.nn.neurons.NeuronsActivationImpl;
+import org.ml4j.nn.neurons.format.ImageNeuronsActivationFormat;
+import org.ml4j.nn.neurons.format.NeuronsActivationFormat;
+
+/**
+ * Conversions between batches of images or scores held in float arrays and
+ * the activations propagated through Inception V4 Networks.
+ */
+final class InceptionV4Activations {
+
+	/**
+	 * The 299 x 299 x 3 input neurons of the Inception V4 Network.
+	 */
+	static final Neurons3D INPUT_NEURONS = new Neurons3D(299, 299, 3, false);
+
+	/**
+	 * The number of input features of each image.
+	 */
+	static final int INPUT_FEATURE_COUNT = INPUT_NEURONS.getNeuronCountExcludingBias();
+
+	private InceptionV4Activations() {
+	}
+
+	/**
+	 * Create the input activations for a batch of images.
+	 *
+	 * @param matrixFactory The matrix factory.
+	 * @param inputNeurons The input neurons of the network.
+	 * @param batch The feature-major batch, where feature f of example e is at
+	 *              index f * batchSize + e.
+	 * @param batchSize The number of examples in the batch.
+	 * @return The input activations.
+	 */
+	static NeuronsActivation createInputActivations(MatrixFactory matrixFactory, Neurons3D inputNeurons,
+			float[] batch, int batchSize) {
+		Matrix activations = matrixFactory.createMatrixFromRowsByRowsArray(inputNeurons.getNeuronCountExcludingBias(),
+				batchSize, batch);
+		return new ImageNeuronsActivationImpl(activations, inputNeurons,
+				ImageNeuronsActivationFormat.ML4J_DEFAULT_IMAGE_FORMAT, false);
+	}
+
+	/**
+	 * Create one-hot label activations for a batch of examples.
+	 *
+	 * @param matrixFactory The matrix factory.
+	 * @param labelIndices The label index of each example.
+	 * @param offset The index of the label of the first example of the batch.
+	 * @param batchSize The number of examples in the batch.
+	 * @param labelCount The number of labels.
+	 * @return The label activations, with a row per label.
+	 * @throws IllegalArgumentException If a label index is not in the range [0, labelCount).
+	 */
+	static NeuronsActivation createLabelActivations(MatrixFactory matrixFactory, int[] labelIndices, int offset,
+			int batchSize, int labelCount) {
+		float[] oneHot = new float[labelCount * batchSize];
+		for (int exampleIndex = 0; exampleIndex < batchSize; exampleIndex++) {
+			int labelIndex = labelIndices[offset + exampleIndex];
+			if (labelIndex < 0 || labelIndex >= labelCount) {
+				throw new IllegalArgumentException("Label index " + labelIndex + " of example " + exampleIndex
+						+ " is not in the range [0, " + labelCount + ")");
+			}
+			oneHot[labelIndex * batchSize + exampleIndex] = 1f;
+		}
+		Matrix activations = matrixFactory.createMatrixFromRowsByRowsArray(labelCount, batchSize, oneHot);
+		return new NeuronsActivationImpl(new Neurons(labelCount, false), activations,
+				NeuronsActivationFormat.ROWS_SPAN_FEATURE_SET);
+	}
+
+	/**
+	 * Copy a single channel-major image into a feature-major batch.
+	 *
+	 * @param image The channel-major image.
+	 * @param batch The feature-major batch.
+	 * @param exampleIndex The index of the example within the batch.
+	 * @param batchSize The number of examples in the batch.
+	 */
+	static void copyToBatch(float[] image, float[] batch, int exampleIndex, int batchSize) {
+		for (int feature = 0, index = exampleIndex; feature < image.length; feature++, index += batchSize) {
+			batch[index] = image[feature];
+		}
+	}
+
+	/**
+	 * Copy output activations into an example-major array, where feature f of
+	 * example e is at index e * featureCount + f.
+	 *
+	 * @param outputActivations The output activations of the network.
+	 * @param matrixFactory The matrix factory.
+	 * @param destination The array to populate from its start, which may be longer than the
+	 *                    activations, or null to allocate a new array.
+	 * @return The example-major output activations.
+	 */
+	static float[] getExampleMajorActivations(NeuronsActivation outputActivations, MatrixFactory matrixFactory,
+			float[] destination) {
+		Matrix activations = outputActivations.getActivations(matrixFactory);
+		float[] values = activations.getRowByRowArray();
+		int rows = activations.getRows();
+		int columns = activations.getColumns();
+		float[] exampleMajor = destination == null ? new float[values.length] : destination;
+		if (outputActivations.getFeatureOrientation() == NeuronsActivationFeatureOrientation.ROWS_SPAN_FEATURE_SET) {
+			// Rows are features, columns are examples
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0, index = row * columns; column < columns; column++, index++) {
+					exampleMajor[column * rows + row] = values[index];
+				}
+			}
+		} else {
+			// Rows are examples already
+			System.arraycopy(values, 0, exampleMajor, 0, values.length);
+		}
+		return exampleMajor;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Factory;
+import org.ml4j.nn.neurons.Neurons3D;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trains a custom tail created by createInceptionV4Tail from bottleneck
+ * features cached on disk, so that the frozen Inception V4 backbone only
+ * propagates each training image once rather than once per epoch.
+ */
+public class InceptionV4BottleneckTrainer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4BottleneckTrainer.class);
+
+	private MatrixFactory matrixFactory;
+
+	public InceptionV4BottleneckTrainer(MatrixFactory matrixFactory) {
+		this.matrixFactory = matrixFactory;
+	}
+
+	/**
+	 * Propagate the training images through the network without its tail,
+	 * caching the un-pooled bottleneck features of each image. An interrupted
+	 * run resumes after the last cached batch.
+	 *
+	 * @param factory The factory creating the network without its tail.
+	 * @param context The prediction context of the backbone network.
+	 * @param images The training images.
+	 * @param featuresPath The path of the bottleneck feature store.
+	 * @param dataType The type in which the features are cached.
+	 * @param batchSize The number of images propagated together.
+	 * @return The memory-mapped bottleneck feature store.
+	 * @throws IOException In the event that the network cannot be created, or the images or store cannot be read or written.
+	 */
+	public InceptionV4FeatureStore cacheBottleneckFeatures(InceptionV4Factory factory,
+			FeedForwardNeuralNetworkContext context, Iterator<InceptionV4InputImage> images, Path featuresPath,
+			PackedTensorDataType dataType, int batchSize) throws IOException {
+		SupervisedFeedForwardNeuralNetwork backbone = factory.createInceptionV4WithoutTail(context);
+		long recordCount = new InceptionV4FeatureExtractor(backbone, context, matrixFactory, batchSize, false)
+				.extract(images, featuresPath, dataType);
+		LOGGER.info("Cached bottleneck features of {} images", recordCount);
+		return InceptionV4FeatureStore.open(featuresPath);
+	}
+
+	/**
+	 * Train a tail network directly from cached bottleneck features, visiting
+	 * the cached records in a new random order each epoch.
+	 *
+	 * Only one mini-batch of features is held on the heap at a time, read from
+	 * the memory-mapped store into a reusable buffer, and each mini-batch is
+	 * trained for a single epoch with a private copy of the training context,
+	 * which is itself left unmodified.
+	 *
+	 * @param tail The tail network, as created by createInceptionV4Tail.
+	 * @param trainingContext The training context of the tail network.
+	 * @param bottleneckFeatures The cached bottleneck features.
+	 * @param labelIndexOfId The label index of each cached image id.
+	 * @param labelCount The number of output neurons of the tail.
+	 * @param epochs The number of epochs.
+	 * @param miniBatchSize The number of records in each mini-batch.
+	 * @param seed The seed of the record order.
+	 * @throws IllegalArgumentException If a label index is out of range.
+	 */
+	public void trainTail(SupervisedFeedForwardNeuralNetwork tail, FeedForwardNeuralNetworkContext trainingContext,
+			InceptionV4FeatureStore bottleneckFeatures, ToIntFunction<String> labelIndexOfId, int labelCount,
+			int epochs, int miniBatchSize, long seed) {
+		int recordCount = (int) bottleneckFeatures.getRecordCount();
+		int featureCount = bottleneckFeatures.getFeatureCount();
+		Neurons3D tailInputNeurons = getTailInputNeurons(featureCount);
+		// Resolve and check every label before the first mini-batch is trained
+		int[] labelIndices = new int[recordCount];
+		int[] recordOrder = new int[recordCount];
+		for (int recordIndex = 0; recordIndex < recordCount; recordIndex++) {
+			String id = bottleneckFeatures.getId(recordIndex);
+			int labelIndex = labelIndexOfId.applyAsInt(id);
+			if (labelIndex < 0 || labelIndex >= labelCount) {
+				throw new IllegalArgumentException("Label index " + labelIndex + " of image " + id
+						+ " is not in the range [0, " + labelCount + ")");
+			}
+			labelIndices[recordIndex] = labelIndex;
+			recordOrder[recordIndex] = recordIndex;
+		}
+		FeedForwardNeuralNetworkContext miniBatchContext = trainingContext.dup();
+		miniBatchContext.setTrainingEpochs(1);
+		miniBatchContext.setTrainingMiniBatchSize(miniBatchSize);
+		int[] batchLabelIndices = new int[miniBatchSize];
+		float[] batch = new float[featureCount * miniBatchSize];
+		float[] record = new float[featureCount];
+		Random random = new Random(seed);
+		for (int epoch = 0; epoch < epochs; epoch++) {
+			shuffle(recordOrder, random);
+			for (int start = 0; start < recordCount; start += miniBatchSize) {
+				int size = Math.min(miniBatchSize, recordCount - start);
+				for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+					int recordIndex = recordOrder[start + exampleIndex];
+					bottleneckFeatures.readFeatures(recordIndex, record, 0);
+					InceptionV4Activations.copyToBatch(record, batch, exampleIndex, size);
+					batchLabelIndices[exampleIndex] = labelIndices[recordIndex];
+				}
+				float[] miniBatch = size == miniBatchSize ? batch : Arrays.copyOf(batch, featureCount * size);
+				NeuronsActivation inputActivations = InceptionV4Activations.createInputActivations(matrixFactory,
+						tailInputNeurons, miniBatch, size);
+				NeuronsActivation labelActivations = InceptionV4Activations.createLabelActivations(matrixFactory,
+						batchLabelIndices, 0, size, labelCount);
+				tail.train(inputActivations, labelActivations, miniBatchContext);
+			}
+			LOGGER.info("Completed tail training epoch {} of {} over {} cached images", epoch + 1, epochs,
+					recordCount);
+		}
+	}
+
+	private Neurons3D getTailInputNeurons(int featureCount) {
+		int depth = InceptionV4FeatureExtractor.FEATURE_DEPTH;
+		int size = (int) Math.round(Math.sqrt(featureCount / (double) depth));
+		if (size * size * depth != featureCount) {
+			throw new IllegalArgumentException("Bottleneck features of length " + featureCount
+					+ " are not square feature maps of depth " + depth);
+		}
+		return new Neurons3D(size, size, depth, false);
+	}
+
+	private void shuffle(int[] values, Random random) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+/**
+ * The forward propagation metrics of a single Inception V4 component, as
+ * exposed over JMX.
+ */
+public interface InceptionV4ComponentMetricsMXBean {
+
+	long getForwardPropagationCount();
+
+	double getMeanWallTimeMillis();
+
+	double getP50WallTimeMillis();
+
+	double getP95WallTimeMillis();
+
+	double getP99WallTimeMillis();
+
+	double getMaxWallTimeMillis();
+
+	double getMeanAllocatedBytes();
+
+	long getMaxAllocatedBytes();
+
+	double getMeanExampleCount();
+
+	int getInputFeatures();
+
+	int getOutputFeatures();
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import javax.imageio.ImageIO;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An asynchronous pipeline feeding batches of images to an Inception V4
+ * Network, so that reading and decoding images never stalls the matrix
+ * backend.
+ *
+ * Images pass through read, decode, augment and batch stages, each with its
+ * own worker threads, connected by bounded queues. Completed batches are
+ * written into a small set of reusable batch buffers - with two buffers, one
+ * batch is filled while the network consumes the other. Images which cannot
+ * be read or decoded are skipped and counted as failures of their stage.
+ *
+ * The throughput, utilisation and input queue depth of each stage are
+ * available while the pipeline runs - the stage whose input queue is full
+ * while its successor's is empty is the bottleneck.
+ */
+public class InceptionV4DataPipeline implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4DataPipeline.class);
+
+	private static final Item END = new Item(null, -1);
+
+	private final InceptionV4ImagePreprocessor preprocessor;
+	private final Augmentation augmentation;
+	private final ToIntFunction<String> labelIndexOfId;
+	private final int batchSize;
+	private final long startNanos;
+
+	private final BlockingQueue<Item> readQueue;
+	private final BlockingQueue<Item> decodeQueue;
+	private final BlockingQueue<Item> augmentQueue;
+	private final BlockingQueue<Item> batchQueue;
+	private final BlockingQueue<float[]> freeActivations;
+	private final BlockingQueue<Batch> freeBatches;
+	private final BlockingQueue<Batch> readyBatches;
+	private final Batch endOfBatches;
+
+	private final List<StageMetrics> stageMetrics;
+	private final List<Thread> threads;
+	private final AtomicReference<Throwable> failure;
+	private final LongAdder consumerWaitNanos;
+
+	/**
+	 * Start the pipeline.
+	 *
+	 * @param imagePaths The paths of the images, each image id being its path.
+	 * @param labelIndexOfId The label index of each image id, or null for unlabelled images.
+	 * @param preprocessor The preprocessor producing the input activations.
+	 * @param augmentation The augmentation applied to the activations of each image, or null for none.
+	 * @param batchSize The number of images in each batch.
+	 * @param readThreads The number of threads reading image files.
+	 * @param decodeThreads The number of threads decoding images.
+	 * @param augmentThreads The number of threads preprocessing and augmenting images.
+	 * @param queueCapacity The capacity of the queue in front of each stage.
+	 * @param batchBufferCount The number of reusable batch buffers, at least two for double buffering.
+	 */
+	public InceptionV4DataPipeline(Iterator<Path> imagePaths, ToIntFunction<String> labelIndexOfId,
+			InceptionV4ImagePreprocessor preprocessor, Augmentation augmentation, int batchSize, int readThreads,
+			int decodeThreads, int augmentThreads, int queueCapacity, int batchBufferCount) {
+		this.preprocessor = preprocessor;
+		this.augmentation = augmentation;
+		this.labelIndexOfId = labelIndexOfId;
+		this.batchSize = batchSize;
+		this.startNanos = System.nanoTime();
+		this.readQueue = new ArrayBlockingQueue<>(queueCapacity);
+		this.decodeQueue = new ArrayBlockingQueue<>(queueCapacity);
+		this.augmentQueue = new ArrayBlockingQueue<>(queueCapacity);
+		this.batchQueue = new ArrayBlockingQueue<>(queueCapacity);
+		this.freeActivations = new ArrayBlockingQueue<>(queueCapacity + augmentThreads);
+		this.freeBatches = new ArrayBlockingQueue<>(batchBufferCount);
+		this.readyBatches = new ArrayBlockingQueue<>(batchBufferCount + 1);
+		for (int i = 0; i < batchBufferCount; i++) {
+			freeBatches.add(new Batch(batchSize));
+		}
+		this.endOfBatches = new Batch(0);
+		endOfBatches.released = true;
+		this.stageMetrics = new ArrayList<>();
+		this.threads = new ArrayList<>();
+		this.failure = new AtomicReference<>();
+		this.consumerWaitNanos = new LongAdder();
+
+		startThread("source", () -> feed(imagePaths));
+		startStage("read", readThreads, readQueue, decodeQueue,
+				item -> item.bytes = Files.readAllBytes(item.path));
+		startStage("decode", decodeThreads, decodeQueue, augmentQueue, this::decode);
+		startStage("augment", augmentThreads, augmentQueue, batchQueue, this::augment);
+		StageMetrics batchMetrics = new StageMetrics("batch", 1, batchQueue);
+		stageMetrics.add(batchMetrics);
+		startThread("batch", () -> assembleBatches(batchMetrics));
+	}
+
+	/**
+	 * Take the next batch, waiting until it has been assembled.
+	 *
+	 * @return The next batch, which must be closed once used so that its buffer
+	 *         can be refilled, or null when every image has been batched.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws IOException In the event that the pipeline failed.
+	 */
+	public Batch take() throws InterruptedException, IOException {
+		long start = System.nanoTime();
+		Batch batch = readyBatches.take();
+		consumerWaitNanos.add(System.nanoTime() - start);
+		if (batch == endOfBatches) {
+			readyBatches.put(endOfBatches);
+			Throwable cause = failure.get();
+			if (cause != null) {
+				throw new IOException("The Inception V4 data pipeline failed", cause);
+			}
+			return null;
+		}
+		return batch;
+	}
+
+	/**
+	 * @return The metrics of each stage, in pipeline order.
+	 */
+	public List<StageMetrics> getStageMetrics() {
+		return Collections.unmodifiableList(stageMetrics);
+	}
+
+	/**
+	 * @return The total time the consumer has waited for batches - time in
+	 *         which the network was starved of input.
+	 */
+	public long getConsumerWaitNanos() {
+		return consumerWaitNanos.sum();
+	}
+
+	/**
+	 * Stop every stage of the pipeline.
+	 */
+	@Override
+	public void close() {
+		threads.forEach(Thread::interrupt);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder();
+		for (StageMetrics metrics : stageMetrics) {
+			summary.append(metrics).append('\n');
+		}
+		return summary.append(String.format("consumer wait=%.1fs", getConsumerWaitNanos() / 1e9)).toString();
+	}
+
+	private void feed(Iterator<Path> imagePaths) throws InterruptedException {
+		try {
+			while (imagePaths.hasNext()) {
+				Path path = imagePaths.next();
+				String id = path.toString();
+				Item item = new Item(id, labelIndexOfId == null ? -1 : labelIndexOfId.applyAsInt(id));
+				item.path = path;
+				readQueue.put(item);
+			}
+		} catch (RuntimeException e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			readQueue.put(END);
+		}
+	}
+
+	private void decode(Item item) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(item.bytes));
+		if (image == null) {
+			throw new IOException("Unsupported image format:" + item.id);
+		}
+		item.bytes = null;
+		item.image = image;
+	}
+
+	private void augment(Item item) {
+		float[] activations = freeActivations.poll();
+		if (activations == null) {
+			activations = new float[InceptionV4Activations.INPUT_FEATURE_COUNT];
+		}
+		preprocessor.preprocess(item.image, activations, 0, 1);
+		item.image = null;
+		if (augmentation != null) {
+			augmentation.augment(activations);
+		}
+		item.activations = activations;
+	}
+
+	private void assembleBatches(StageMetrics metrics) throws InterruptedException {
+		Batch batch = null;
+		try {
+			for (Item item = batchQueue.take(); item != END; item = batchQueue.take()) {
+				long start = System.nanoTime();
+				if (batch == null) {
+					batch = freeBatches.take();
+					batch.size = 0;
+					batch.released = false;
+				}
+				InceptionV4Activations.copyToBatch(item.activations, batch.activations, batch.size, batchSize);
+				freeActivations.offer(item.activations);
+				batch.ids[batch.size] = item.id;
+				batch.labelIndices[batch.size] = item.labelIndex;
+				batch.size++;
+				if (batch.size == batchSize) {
+					readyBatches.put(batch);
+					batch = null;
+				}
+				metrics.record(System.nanoTime() - start);
+			}
+			if (batch != null) {
+				batch.compact(batchSize);
+				readyBatches.put(batch);
+			}
+		} finally {
+			readyBatches.put(endOfBatches);
+		}
+	}
+
+	private void startStage(String name, int threadCount, BlockingQueue<Item> input, BlockingQueue<Item> output,
+			ItemProcessor processor) {
+		StageMetrics metrics = new StageMetrics(name, threadCount, input);
+		stageMetrics.add(metrics);
+		AtomicInteger activeWorkers = new AtomicInteger(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			startThread(name + "-" + i, () -> {
+				for (Item item = input.take(); item != END; item = input.take()) {
+					long start = System.nanoTime();
+					try {
+						processor.process(item);
+						metrics.record(System.nanoTime() - start);
+						output.put(item);
+					} catch (IOException | RuntimeException e) {
+						metrics.recordFailure(System.nanoTime() - start);
+						LOGGER.warn("Skipping image {} which failed in the {} stage", item.id, name, e);
+					}
+				}
+				// Let the other workers of this stage see the end of the input
+				input.put(END);
+				if (activeWorkers.decrementAndGet() == 0) {
+					output.put(END);
+				}
+			});
+		}
+	}
+
+	private void startThread(String name, InterruptibleTask task) {
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException | Error e) {
+				failure.compareAndSet(null, e);
+				LOGGER.error("Inception V4 data pipeline thread failed", e);
+				close();
+			}
+		}, "inceptionv4-pipeline-" + name);
+		thread.setDaemon(true);
+		threads.add(thread);
+		thread.start();
+	}
+
+	/**
+	 * An augmentation of the channel-major input activations of an image.
+	 */
+	public interface Augmentation {
+
+		/**
+		 * @param activations The 299 x 299 x 3 channel-major activations, augmented in place.
+		 */
+		void augment(float[] activations);
+	}
+
+	/**
+	 * @param probability The probability of mirroring each image.
+	 * @return An augmentation mirroring images from left to right at random.
+	 */
+	public static Augmentation randomHorizontalFlip(double probability) {
+		return activations -> {
+			if (ThreadLocalRandom.current().nextDouble() < probability) {
+				int size = InceptionV4ImagePreprocessor.IMAGE_SIZE;
+				for (int rowStart = 0; rowStart < activations.length; rowStart += size) {
+					for (int left = rowStart, right = rowStart + size - 1; left < right; left++, right--) {
+						float swap = activations[left];
+						activations[left] = activations[right];
+						activations[right] = swap;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * A batch of images in one of the reusable batch buffers of the pipeline.
+	 */
+	public final class Batch implements AutoCloseable {
+
+		private final float[] activations;
+		private final String[] ids;
+		private final int[] labelIndices;
+		private int size;
+		private boolean released;
+
+		private Batch(int capacity) {
+			this.activations = new float[InceptionV4Activations.INPUT_FEATURE_COUNT * capacity];
+			this.ids = new String[capacity];
+			this.labelIndices = new int[capacity];
+		}
+
+		/**
+		 * Close up a partial batch, so that its activations are laid out for its size.
+		 */
+		private void compact(int capacity) {
+			for (int feature = 0; feature < InceptionV4Activations.INPUT_FEATURE_COUNT; feature++) {
+				System.arraycopy(activations, feature * capacity, activations, feature * size, size);
+			}
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return The feature-major activations of the batch, where feature f of
+		 *         example e is at index f * getSize() + e.
+		 */
+		public float[] getActivations() {
+			return activations;
+		}
+
+		public String getId(int exampleIndex) {
+			return ids[exampleIndex];
+		}
+
+		/**
+		 * @return The label index of each example, or -1 for unlabelled images.
+		 */
+		public int[] getLabelIndices() {
+			return Arrays.copyOf(labelIndices, size);
+		}
+
+		/**
+		 * @param matrixFactory The matrix factory.
+		 * @return The input activations of the batch.
+		 */
+		public NeuronsActivation getInputActivations(MatrixFactory matrixFactory) {
+			float[] batch = size == ids.length ? activations
+					: Arrays.copyOf(activations, InceptionV4Activations.INPUT_FEATURE_COUNT * size);
+			return InceptionV4Activations.createInputActivations(matrixFactory, InceptionV4Activations.INPUT_NEURONS,
+					batch, size);
+		}
+
+		/**
+		 * @param matrixFactory The matrix factory.
+		 * @param labelCount The number of labels.
+		 * @return The one-hot label activations of the batch, which must only contain labelled images.
+		 */
+		public NeuronsActivation getLabelActivations(MatrixFactory matrixFactory, int labelCount) {
+			return InceptionV4Activations.createLabelActivations(matrixFactory, labelIndices, 0, size, labelCount);
+		}
+
+		/**
+		 * Return the buffer of this batch to the pipeline for refilling.
+		 */
+		@Override
+		public void close() {
+			if (!released) {
+				released = true;
+				freeBatches.offer(this);
+			}
+		}
+	}
+
+	/**
+	 * The throughput of a single stage of the pipeline.
+	 */
+	public final class StageMetrics {
+
+		private final String name;
+		private final int threadCount;
+		private final BlockingQueue<?> inputQueue;
+		private final LongAdder processed;
+		private final LongAdder failed;
+		private final LongAdder busyNanos;
+
+		private StageMetrics(String name, int threadCount, BlockingQueue<?> inputQueue) {
+			this.name = name;
+			this.threadCount = threadCount;
+			this.inputQueue = inputQueue;
+			this.processed = new LongAdder();
+			this.failed = new LongAdder();
+			this.busyNanos = new LongAdder();
+		}
+
+		private void record(long nanos) {
+			processed.increment();
+			busyNanos.add(nanos);
+		}
+
+		private void recordFailure(long nanos) {
+			failed.increment();
+			busyNanos.add(nanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getProcessedCount() {
+			return processed.sum();
+		}
+
+		public long getFailedCount() {
+			return failed.sum();
+		}
+
+		/**
+		 * @return The number of images processed per second since the pipeline started.
+		 */
+		public double getThroughput() {
+			return processed.sum() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+		}
+
+		/**
+		 * @return The fraction of the time the threads of this stage have been busy.
+		 */
+		public double getUtilisation() {
+			return busyNanos.sum() / Math.max(1.0, (double) (System.nanoTime() - startNanos) * threadCount);
+		}
+
+		public int getQueueDepth() {
+			return inputQueue.size();
+		}
+
+		public int getQueueCapacity() {
+			return inputQueue.size() + inputQueue.remainingCapacity();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s threads=%d processed=%d failed=%d throughput=%.1f/s utilisation=%.0f%% queue=%d/%d",
+					name, threadCount, getProcessedCount(), getFailedCount(), getThroughput(),
+					getUtilisation() * 100, getQueueDepth(), getQueueCapacity());
+		}
+	}
+
+	private interface ItemProcessor {
+
+		void process(Item item) throws IOException;
+	}
+
+	private interface InterruptibleTask {
+
+		void run() throws InterruptedException;
+	}
+
+	private static class Item {
+
+		private final String id;
+		private final int labelIndex;
+		private Path path;
+		private byte[] bytes;
+		private BufferedImage image;
+		private float[] activations;
+
+		Item(String id, int labelIndex) {
+			this.id = id;
+			this.labelIndex = labelIndex;
+		}
+	}
+}
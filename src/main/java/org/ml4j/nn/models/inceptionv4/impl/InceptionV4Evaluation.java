@@ -0,0 +1,327 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+
+/**
+ * Evaluates an Inception V4 Network over a labelled set of images, measuring
+ * both its accuracy and its speed so that each change to the weights or the
+ * inference path can be validated against both in a single run.
+ *
+ * Batches are streamed from an {@link InceptionV4DataPipeline} and propagated
+ * by a number of inference threads, each leasing a network from an
+ * {@link InceptionV4NetworkPool}. The pipeline needs at least one batch
+ * buffer per inference thread, plus one being filled, to keep every thread
+ * busy.
+ *
+ * The report gives the top-1 and top-5 accuracy, the images per second over
+ * the whole run, percentiles of the forward propagation latency of each batch
+ * and the peak total heap usage, sampled every 10 ms.
+ */
+public class InceptionV4Evaluation {
+
+	private static final int TOP_K = 5;
+
+	private static final long NETWORK_TIMEOUT_MINUTES = 10;
+
+	private static final long HEAP_SAMPLE_MILLIS = 10;
+
+	private InceptionV4NetworkPool networkPool;
+	private FeedForwardNeuralNetworkContext context;
+	private MatrixFactory matrixFactory;
+	private int inferenceThreads;
+
+	/**
+	 * @param networkPool The pool of networks to evaluate.
+	 * @param context The prediction context of the networks.
+	 * @param inferenceThreads The number of batches propagated in parallel.
+	 */
+	public InceptionV4Evaluation(InceptionV4NetworkPool networkPool, FeedForwardNeuralNetworkContext context,
+			int inferenceThreads) {
+		this.networkPool = networkPool;
+		this.context = context;
+		this.matrixFactory = context.getMatrixFactory();
+		this.inferenceThreads = inferenceThreads;
+	}
+
+	/**
+	 * List a directory of labelled images, containing a sub-directory of
+	 * images for each label. Files which are not images, such as READMEs, are
+	 * skipped.
+	 *
+	 * @param directory The directory of images.
+	 * @param labelIndexOfDirectoryName The label index of each sub-directory name.
+	 * @return The label index of each image, with images in sorted order.
+	 * @throws IOException In the event that the directory cannot be listed.
+	 */
+	public static Map<Path, Integer> listLabelledImages(Path directory,
+			ToIntFunction<String> labelIndexOfDirectoryName) throws IOException {
+		Map<Path, Integer> labelledImages = new LinkedHashMap<>();
+		for (Path labelDirectory : list(directory)) {
+			if (Files.isDirectory(labelDirectory)) {
+				int labelIndex = labelIndexOfDirectoryName.applyAsInt(labelDirectory.getFileName().toString());
+				for (Path image : list(labelDirectory)) {
+					if (Files.isRegularFile(image) && InceptionV4InputImage.isImageFile(image)) {
+						labelledImages.put(image, labelIndex);
+					}
+				}
+			}
+		}
+		return labelledImages;
+	}
+
+	/**
+	 * List a directory of labelled images, containing a sub-directory of
+	 * images for each label named by its label index.
+	 *
+	 * @param directory The directory of images.
+	 * @return The label index of each image, with images in sorted order.
+	 * @throws IOException In the event that the directory cannot be listed.
+	 */
+	public static Map<Path, Integer> listLabelledImages(Path directory) throws IOException {
+		return listLabelledImages(directory, Integer::parseInt);
+	}
+
+	private static List<Path> list(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Evaluate the networks over a directory of labelled images.
+	 *
+	 * @param labelledImages The label index of each image.
+	 * @param preprocessor The preprocessor of the images.
+	 * @param batchSize The number of images in each batch.
+	 * @param decodeThreads The number of threads reading and decoding images.
+	 * @return The evaluation report.
+	 * @throws IOException In the event that the evaluation fails.
+	 * @throws InterruptedException If interrupted while evaluating.
+	 */
+	public Report evaluate(Map<Path, Integer> labelledImages, InceptionV4ImagePreprocessor preprocessor,
+			int batchSize, int decodeThreads) throws IOException, InterruptedException {
+		Map<String, Integer> labelIndexOfId = new LinkedHashMap<>();
+		labelledImages.forEach((path, labelIndex) -> labelIndexOfId.put(path.toString(), labelIndex));
+		try (InceptionV4DataPipeline pipeline = new InceptionV4DataPipeline(labelledImages.keySet().iterator(),
+				labelIndexOfId::get, preprocessor, null, batchSize, decodeThreads, decodeThreads, decodeThreads,
+				batchSize * 2, inferenceThreads + 1)) {
+			return evaluate(pipeline);
+		}
+	}
+
+	/**
+	 * Evaluate the networks over the batches of a pipeline of labelled images.
+	 *
+	 * @param pipeline The pipeline, whose images are all labelled.
+	 * @return The evaluation report.
+	 * @throws IOException In the event that the evaluation fails.
+	 * @throws InterruptedException If interrupted while evaluating.
+	 */
+	public Report evaluate(InceptionV4DataPipeline pipeline) throws IOException, InterruptedException {
+		Report report = new Report();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		AtomicLong peakHeapBytes = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+		ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(sampler -> {
+			Thread thread = new Thread(sampler, "inceptionv4-heap-sampler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heapSampler.scheduleAtFixedRate(
+				() -> peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+				HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(inferenceThreads);
+		try {
+			List<Future<Void>> workers = new ArrayList<>();
+			for (int i = 0; i < inferenceThreads; i++) {
+				workers.add(executor.submit(() -> {
+					propagateBatches(pipeline, report);
+					return null;
+				}));
+			}
+			for (Future<Void> worker : workers) {
+				worker.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Evaluation of the Inception V4 Network failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+			heapSampler.shutdownNow();
+		}
+		report.elapsedNanos = System.nanoTime() - start;
+		report.peakHeapBytes = peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+		report.pipelineWaitNanos = pipeline.getConsumerWaitNanos();
+		return report;
+	}
+
+	private void propagateBatches(InceptionV4DataPipeline pipeline, Report report)
+			throws IOException, InterruptedException, TimeoutException {
+		InceptionV4TopKSelector topKSelector = new InceptionV4TopKSelector(TOP_K);
+		float[] scores = null;
+		int[] topIndices = null;
+		float[] topScores = null;
+		for (InceptionV4DataPipeline.Batch batch = pipeline.take(); batch != null; batch = pipeline.take()) {
+			int size = batch.getSize();
+			int[] labelIndices = batch.getLabelIndices();
+			try (InceptionV4DataPipeline.Batch inputBatch = batch;
+					InceptionV4NetworkPool.Lease lease = networkPool.lease(NETWORK_TIMEOUT_MINUTES,
+							TimeUnit.MINUTES)) {
+				long batchStart = System.nanoTime();
+				NeuronsActivation outputActivations = lease.getNetwork()
+						.forwardPropagate(inputBatch.getInputActivations(matrixFactory), context).getOutput();
+				scores = InceptionV4Activations.getExampleMajorActivations(outputActivations, matrixFactory,
+						scores != null && scores.length == outputActivations.getFeatureCount() * size ? scores
+								: null);
+				report.batchLatencyNanos.record(System.nanoTime() - batchStart);
+			}
+			if (topIndices == null || topIndices.length < size * TOP_K) {
+				topIndices = new int[size * TOP_K];
+				topScores = new float[size * TOP_K];
+			}
+			topKSelector.select(scores, size, scores.length / size, topIndices, topScores);
+			for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+				report.add(topIndices, exampleIndex * TOP_K, labelIndices[exampleIndex]);
+			}
+		}
+	}
+
+	/**
+	 * The accuracy and speed of the evaluated networks.
+	 */
+	public static class Report {
+
+		private final LongAdder imageCount;
+		private final LongAdder top1Correct;
+		private final LongAdder top5Correct;
+		private final Histogram batchLatencyNanos;
+		private long elapsedNanos;
+		private long peakHeapBytes;
+		private long pipelineWaitNanos;
+
+		Report() {
+			this.imageCount = new LongAdder();
+			this.top1Correct = new LongAdder();
+			this.top5Correct = new LongAdder();
+			this.batchLatencyNanos = new Histogram();
+		}
+
+		void add(int[] topIndices, int offset, int expectedLabelIndex) {
+			imageCount.increment();
+			if (topIndices[offset] == expectedLabelIndex) {
+				top1Correct.increment();
+			}
+			for (int i = offset; i < offset + TOP_K; i++) {
+				if (topIndices[i] == expectedLabelIndex) {
+					top5Correct.increment();
+					break;
+				}
+			}
+		}
+
+		public long getImageCount() {
+			return imageCount.sum();
+		}
+
+		public double getTop1Accuracy() {
+			return fraction(top1Correct.sum());
+		}
+
+		public double getTop5Accuracy() {
+			return fraction(top5Correct.sum());
+		}
+
+		/**
+		 * @return The number of images evaluated per second, including the time
+		 *         spent reading and decoding images.
+		 */
+		public double getImagesPerSecond() {
+			return elapsedNanos == 0 ? 0 : getImageCount() / (elapsedNanos / 1e9);
+		}
+
+		/**
+		 * @return The distribution of the forward propagation time of each batch, in nanoseconds.
+		 */
+		public Histogram getBatchLatencyNanos() {
+			return batchLatencyNanos;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return The highest total heap usage sampled during the evaluation.
+		 *         Samples are taken every 10 ms, so shorter peaks may be missed.
+		 */
+		public long getPeakHeapBytes() {
+			return peakHeapBytes;
+		}
+
+		/**
+		 * @return The total time inference threads waited for the pipeline to
+		 *         provide a batch - a large value means evaluation was bound by
+		 *         image decoding rather than by the network.
+		 */
+		public long getPipelineWaitNanos() {
+			return pipelineWaitNanos;
+		}
+
+		private double fraction(long count) {
+			long images = getImageCount();
+			return images == 0 ? 0 : count / (double) images;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"images=%d top1=%.4f top5=%.4f imagesPerSecond=%.1f batchLatency p50=%.1fms p95=%.1fms p99=%.1fms"
+							+ " peakHeap=%dMB pipelineWait=%.1fs",
+					getImageCount(), getTop1Accuracy(), getTop5Accuracy(), getImagesPerSecond(),
+					batchLatencyNanos.getPercentile(50) / 1e6, batchLatencyNanos.getPercentile(95) / 1e6,
+					batchLatencyNanos.getPercentile(99) / 1e6, peakHeapBytes >> 20, pipelineWaitNanos / 1e9);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams images through an Inception V4 Network without its tail, as created
+ * by createInceptionV4WithoutTail, writing the feature vector of each image to
+ * an {@link InceptionV4FeatureStore}.
+ *
+ * Only one batch of images is held in memory at a time, and each batch is
+ * committed to the store once propagated, so an interrupted extraction
+ * resumes after the last completed batch when run again with the same images.
+ */
+public class InceptionV4FeatureExtractor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4FeatureExtractor.class);
+
+	/**
+	 * The depth of the final feature maps of the network without its tail.
+	 */
+	public static final int FEATURE_DEPTH = 1536;
+
+	private SupervisedFeedForwardNeuralNetwork network;
+	private FeedForwardNeuralNetworkContext context;
+	private MatrixFactory matrixFactory;
+	private int batchSize;
+	private boolean averagePooling;
+
+	/**
+	 * @param network The Inception V4 Network without its tail.
+	 * @param context The prediction context of the network.
+	 * @param matrixFactory The matrix factory.
+	 * @param batchSize The number of images propagated together.
+	 * @param averagePooling Whether the channel-major feature maps are average
+	 *                       pooled to one value per channel, or stored whole.
+	 */
+	public InceptionV4FeatureExtractor(SupervisedFeedForwardNeuralNetwork network,
+			FeedForwardNeuralNetworkContext context, MatrixFactory matrixFactory, int batchSize,
+			boolean averagePooling) {
+		this.network = network;
+		this.context = context;
+		this.matrixFactory = matrixFactory;
+		this.batchSize = batchSize;
+		this.averagePooling = averagePooling;
+	}
+
+	/**
+	 * Extract the features of the images into a feature store, resuming after
+	 * the last committed record if the store already exists.
+	 *
+	 * @param images The images, in the same order as for any previous run.
+	 * @param featuresPath The path of the features file.
+	 * @param dataType The type in which the features are stored.
+	 * @return The total number of records in the store.
+	 * @throws IOException In the event that an image cannot be read or the store cannot be written.
+	 */
+	public long extract(Iterator<InceptionV4InputImage> images, Path featuresPath, PackedTensorDataType dataType)
+			throws IOException {
+		InceptionV4FeatureStoreWriter writer = null;
+		int existingFeatureCount = InceptionV4FeatureStore.readFeatureCount(featuresPath);
+		if (existingFeatureCount != -1) {
+			writer = InceptionV4FeatureStoreWriter.open(featuresPath, dataType, existingFeatureCount, batchSize);
+			for (long skipped = 0; skipped < writer.getCommittedRecordCount() && images.hasNext(); skipped++) {
+				images.next();
+			}
+			LOGGER.info("Resuming feature extraction after {} images", writer.getCommittedRecordCount());
+		}
+		try {
+			String[] ids = new String[batchSize];
+			float[][] batchImages = new float[batchSize][];
+			float[] outputs = null;
+			while (images.hasNext()) {
+				int size = 0;
+				while (size < batchSize && images.hasNext()) {
+					InceptionV4InputImage image = images.next();
+					ids[size] = image.getId();
+					batchImages[size] = image.getActivations();
+					size++;
+				}
+				outputs = propagate(batchImages, size, outputs);
+				int outputFeatureCount = outputs.length / size;
+				int featureCount = averagePooling ? FEATURE_DEPTH : outputFeatureCount;
+				if (writer == null) {
+					writer = InceptionV4FeatureStoreWriter.open(featuresPath, dataType, featureCount, batchSize);
+				}
+				float[] features = averagePooling ? averagePool(outputs, size, outputFeatureCount) : outputs;
+				for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+					writer.write(ids[exampleIndex], features, exampleIndex * featureCount);
+					batchImages[exampleIndex] = null;
+				}
+				writer.commit();
+				LOGGER.debug("Extracted features of {} images", writer.getCommittedRecordCount());
+			}
+			return writer == null ? 0 : writer.getCommittedRecordCount();
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	private float[] propagate(float[][] batchImages, int size, float[] outputs) {
+		float[] input = new float[InceptionV4Activations.INPUT_FEATURE_COUNT * size];
+		for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+			InceptionV4Activations.copyToBatch(batchImages[exampleIndex], input, exampleIndex, size);
+		}
+		NeuronsActivation inputActivations = InceptionV4Activations.createInputActivations(matrixFactory,
+				InceptionV4Activations.INPUT_NEURONS, input, size);
+		NeuronsActivation outputActivations = network.forwardPropagate(inputActivations, context).getOutput();
+		int outputLength = outputActivations.getFeatureCount() * size;
+		return InceptionV4Activations.getExampleMajorActivations(outputActivations, matrixFactory,
+				outputs != null && outputs.length == outputLength ? outputs : null);
+	}
+
+	private float[] averagePool(float[] outputs, int size, int outputFeatureCount) {
+		if (outputFeatureCount % FEATURE_DEPTH != 0) {
+			throw new IllegalStateException("Cannot pool " + outputFeatureCount + " output features to depth " + FEATURE_DEPTH);
+		}
+		int spatialSize = outputFeatureCount / FEATURE_DEPTH;
+		float[] pooled = new float[FEATURE_DEPTH * size];
+		for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+			int index = exampleIndex * outputFeatureCount;
+			for (int channel = 0; channel < FEATURE_DEPTH; channel++) {
+				float sum = 0;
+				for (int s = 0; s < spatialSize; s++) {
+					sum += outputs[index++];
+				}
+				pooled[exampleIndex * FEATURE_DEPTH + channel] = sum / spatialSize;
+			}
+		}
+		return pooled;
+	}
+}
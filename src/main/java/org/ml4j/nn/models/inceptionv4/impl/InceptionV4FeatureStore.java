@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only, memory-mapped store of fixed length feature vectors, one per
+ * image, as written by {@link InceptionV4FeatureStoreWriter}.
+ *
+ * The store consists of a little-endian features file - a 16 byte header
+ * (int magic, int version, byte dataType, 3 bytes padding, int featureCount)
+ * followed by one record per image - and an accompanying ids file holding
+ * the UTF-8 id of each record, one per line. The ids file is also memory
+ * mapped, and only the offset of each id is held on the heap - ids are
+ * decoded on request.
+ */
+public class InceptionV4FeatureStore {
+
+	/**
+	 * "IV4F" when read as little-endian bytes.
+	 */
+	public static final int MAGIC = 0x46345649;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_LENGTH = 16;
+
+	public static final String IDS_SUFFIX = ".ids";
+
+	private final PackedTensorDataType dataType;
+	private final int featureCount;
+	private final int recordLength;
+	private final long recordCount;
+	private final int recordsPerSegment;
+	private final List<ByteBuffer> segments;
+	private final ByteBuffer ids;
+	private final int[] idOffsets;
+
+	private InceptionV4FeatureStore(Path featuresPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(featuresPath, StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(channel, featuresPath);
+			this.dataType = PackedTensorDataType.fromId(header.get(8));
+			this.featureCount = header.getInt(12);
+			this.recordLength = featureCount * dataType.getBytesPerElement();
+			this.recordCount = (channel.size() - HEADER_LENGTH) / recordLength;
+			// Map in whole records, as a single mapping is limited to 2GB
+			this.recordsPerSegment = Integer.MAX_VALUE / recordLength;
+			this.segments = new ArrayList<>();
+			for (long first = 0; first < recordCount; first += recordsPerSegment) {
+				long records = Math.min(recordsPerSegment, recordCount - first);
+				segments.add(channel.map(MapMode.READ_ONLY, HEADER_LENGTH + first * recordLength, records * recordLength)
+						.order(ByteOrder.LITTLE_ENDIAN));
+			}
+		}
+		Path idsPath = getIdsPath(featuresPath);
+		try (FileChannel channel = FileChannel.open(idsPath, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE || recordCount >= Integer.MAX_VALUE) {
+				throw new IOException("Feature store ids files are limited to " + Integer.MAX_VALUE
+						+ " bytes and records but " + idsPath + " has " + channel.size() + " bytes");
+			}
+			this.ids = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		this.idOffsets = indexIds(ids, recordCount);
+		if (idOffsets == null) {
+			throw new IOException("Feature store " + featuresPath + " has " + recordCount + " records but fewer ids");
+		}
+	}
+
+	/**
+	 * @return The offset of the id of each record within the ids file, followed
+	 *         by the offset after the last id, or null if there are fewer ids
+	 *         than records.
+	 */
+	private static int[] indexIds(ByteBuffer ids, long recordCount) {
+		int[] idOffsets = new int[(int) recordCount + 1];
+		int record = 0;
+		for (int position = 0; position < ids.limit() && record < recordCount; position++) {
+			if (ids.get(position) == '\n') {
+				idOffsets[++record] = position + 1;
+			}
+		}
+		return record < recordCount ? null : idOffsets;
+	}
+
+	/**
+	 * Memory-map a feature store.
+	 *
+	 * @param featuresPath The path of the features file.
+	 * @return The feature store.
+	 * @throws IOException In the event that the store cannot be read.
+	 */
+	public static InceptionV4FeatureStore open(Path featuresPath) throws IOException {
+		return new InceptionV4FeatureStore(featuresPath);
+	}
+
+	static Path getIdsPath(Path featuresPath) {
+		return Paths.get(featuresPath.toString() + IDS_SUFFIX);
+	}
+
+	/**
+	 * @param featuresPath The path of the features file.
+	 * @return The feature count of an existing store, or -1 if no store has been created.
+	 * @throws IOException In the event that the existing file is not a feature store.
+	 */
+	static int readFeatureCount(Path featuresPath) throws IOException {
+		if (!Files.exists(featuresPath) || Files.size(featuresPath) == 0) {
+			return -1;
+		}
+		try (FileChannel channel = FileChannel.open(featuresPath, StandardOpenOption.READ)) {
+			return readHeader(channel, featuresPath).getInt(12);
+		}
+	}
+
+	static ByteBuffer readHeader(FileChannel channel, Path featuresPath) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Truncated feature store header:" + featuresPath);
+			}
+		}
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			throw new IOException("Not a version " + VERSION + " Inception V4 feature store:" + featuresPath);
+		}
+		return header;
+	}
+
+	public PackedTensorDataType getDataType() {
+		return dataType;
+	}
+
+	public int getFeatureCount() {
+		return featureCount;
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @param recordIndex The index of the record.
+	 * @return The id of the image of the record.
+	 */
+	public String getId(long recordIndex) {
+		checkRecordIndex(recordIndex);
+		int offset = idOffsets[(int) recordIndex];
+		// Exclude the line break terminating the id
+		byte[] id = new byte[idOffsets[(int) recordIndex + 1] - offset - 1];
+		ByteBuffer record = ids.duplicate();
+		record.position(offset);
+		record.get(id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The ids of the images of all records, in record order, each
+	 *         decoded from the ids file when it is requested.
+	 */
+	public List<String> getIds() {
+		return new AbstractList<String>() {
+
+			@Override
+			public String get(int index) {
+				return getId(index);
+			}
+
+			@Override
+			public int size() {
+				return (int) recordCount;
+			}
+		};
+	}
+
+	/**
+	 * Widen the features of a record to floats.
+	 *
+	 * @param recordIndex The index of the record.
+	 * @param destination The array to populate.
+	 * @param offset The index at which to write the first feature.
+	 */
+	public void readFeatures(long recordIndex, float[] destination, int offset) {
+		checkRecordIndex(recordIndex);
+		ByteBuffer record = segments.get((int) (recordIndex / recordsPerSegment)).duplicate()
+				.order(ByteOrder.LITTLE_ENDIAN);
+		record.position((int) (recordIndex % recordsPerSegment) * recordLength);
+		dataType.decode(record, destination, offset, featureCount);
+	}
+
+	private void checkRecordIndex(long recordIndex) {
+		if (recordIndex < 0 || recordIndex >= recordCount) {
+			throw new IllegalArgumentException("Record index of:" + recordIndex + " is out of range");
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends feature vectors to an {@link InceptionV4FeatureStore}, resuming
+ * after the last committed record of an existing store.
+ */
+public class InceptionV4FeatureStoreWriter implements Closeable {
+
+	private final PackedTensorDataType dataType;
+	private final int featureCount;
+	private final int recordLength;
+	private final FileChannel featuresChannel;
+	private final FileChannel idsChannel;
+	private final ByteBuffer pendingFeatures;
+	private final StringBuilder pendingIds;
+	private long recordCount;
+
+	private InceptionV4FeatureStoreWriter(Path featuresPath, PackedTensorDataType dataType, int featureCount,
+			int maxPendingRecords) throws IOException {
+		this.dataType = dataType;
+		this.featureCount = featureCount;
+		this.recordLength = featureCount * dataType.getBytesPerElement();
+		this.featuresChannel = FileChannel.open(featuresPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.idsChannel = FileChannel.open(InceptionV4FeatureStore.getIdsPath(featuresPath),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.pendingFeatures = ByteBuffer.allocate(recordLength * maxPendingRecords).order(ByteOrder.LITTLE_ENDIAN);
+		this.pendingIds = new StringBuilder();
+		try {
+			if (featuresChannel.size() == 0) {
+				writeHeader();
+			} else {
+				recoverCommittedRecords(featuresPath);
+			}
+		} catch (IOException e) {
+			featuresChannel.close();
+			idsChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a feature store for appending, creating it if it does not exist.
+	 *
+	 * Any records written after the last commit of an existing store are
+	 * discarded.
+	 *
+	 * @param featuresPath The path of the features file.
+	 * @param dataType The type in which features are stored.
+	 * @param featureCount The number of features of each record.
+	 * @param maxPendingRecords The maximum number of records written between commits.
+	 * @return The writer.
+	 * @throws IOException In the event that the store cannot be opened, or was
+	 *                     created with a different data type or feature count.
+	 */
+	public static InceptionV4FeatureStoreWriter open(Path featuresPath, PackedTensorDataType dataType,
+			int featureCount, int maxPendingRecords) throws IOException {
+		return new InceptionV4FeatureStoreWriter(featuresPath, dataType, featureCount, maxPendingRecords);
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(InceptionV4FeatureStore.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(InceptionV4FeatureStore.MAGIC);
+		header.putInt(InceptionV4FeatureStore.VERSION);
+		header.put(dataType.getId());
+		header.put(new byte[3]);
+		header.putInt(featureCount);
+		header.flip();
+		while (header.hasRemaining()) {
+			featuresChannel.write(header, header.position());
+		}
+		featuresChannel.force(true);
+		idsChannel.truncate(0);
+	}
+
+	private void recoverCommittedRecords(Path featuresPath) throws IOException {
+		ByteBuffer header = InceptionV4FeatureStore.readHeader(featuresChannel, featuresPath);
+		if (header.get(8) != dataType.getId() || header.getInt(12) != featureCount) {
+			throw new IOException("Feature store " + featuresPath + " was created with a different data type or feature count");
+		}
+		long featureRecords = (featuresChannel.size() - InceptionV4FeatureStore.HEADER_LENGTH) / recordLength;
+		long idRecords = 0;
+		long idsLength = 0;
+		long committedIdsLength = 0;
+		try (InputStream ids = new BufferedInputStream(
+				Files.newInputStream(InceptionV4FeatureStore.getIdsPath(featuresPath)))) {
+			int b;
+			while (idRecords < featureRecords && (b = ids.read()) != -1) {
+				idsLength++;
+				if (b == '\n') {
+					idRecords++;
+					committedIdsLength = idsLength;
+				}
+			}
+		}
+		recordCount = idRecords;
+		featuresChannel.truncate(InceptionV4FeatureStore.HEADER_LENGTH + recordCount * recordLength);
+		idsChannel.truncate(committedIdsLength);
+	}
+
+	/**
+	 * @return The number of records written, including those not yet committed.
+	 */
+	public long getRecordCount() {
+		return recordCount + pendingFeatures.position() / recordLength;
+	}
+
+	/**
+	 * @return The number of committed records.
+	 */
+	public long getCommittedRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Write a record, which is persisted on the next commit.
+	 *
+	 * @param id The id of the image, which must not contain line breaks.
+	 * @param features The array containing the features.
+	 * @param offset The index of the first feature of the record.
+	 */
+	public void write(String id, float[] features, int offset) {
+		if (id.indexOf('\n') >= 0 || id.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Image ids must not contain line breaks:" + id);
+		}
+		dataType.encode(features, offset, featureCount, pendingFeatures);
+		pendingIds.append(id).append('\n');
+	}
+
+	/**
+	 * Persist all written records, so that a subsequent writer resumes after them.
+	 *
+	 * @throws IOException In the event that the records cannot be written.
+	 */
+	public void commit() throws IOException {
+		if (pendingFeatures.position() == 0) {
+			return;
+		}
+		long pendingRecords = pendingFeatures.position() / recordLength;
+		pendingFeatures.flip();
+		long position = InceptionV4FeatureStore.HEADER_LENGTH + recordCount * recordLength;
+		while (pendingFeatures.hasRemaining()) {
+			position += featuresChannel.write(pendingFeatures, position);
+		}
+		featuresChannel.force(false);
+		// The ids are written last, so that a record only counts as committed once its id is persisted
+		ByteBuffer ids = ByteBuffer.wrap(pendingIds.toString().getBytes(StandardCharsets.UTF_8));
+		long idsPosition = idsChannel.size();
+		while (ids.hasRemaining()) {
+			idsPosition += idsChannel.write(ids, idsPosition);
+		}
+		idsChannel.force(false);
+		recordCount += pendingRecords;
+		pendingFeatures.clear();
+		pendingIds.setLength(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			featuresChannel.close();
+			idsChannel.close();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4MetricsSink;
+
+/**
+ * Metrics sink aggregating the forward propagations through each component
+ * into histograms of wall time, allocated bytes and batch size.
+ */
+public class InceptionV4ForwardPropagationMetrics implements InceptionV4MetricsSink {
+
+	private final Map<String, ComponentMetrics> componentMetrics;
+
+	public InceptionV4ForwardPropagationMetrics() {
+		this.componentMetrics = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void recordForwardPropagation(String componentName, long wallTimeNanos, long allocatedBytes,
+			int inputFeatures, int outputFeatures, int exampleCount) {
+		getComponentMetrics(componentName).record(wallTimeNanos, allocatedBytes, inputFeatures, outputFeatures,
+				exampleCount);
+	}
+
+	/**
+	 * @return The names of the components recorded so far, in alphabetical order.
+	 */
+	public Set<String> getComponentNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(componentMetrics.keySet()));
+	}
+
+	/**
+	 * @param componentName The name of the component.
+	 * @return The metrics of the component, created if not yet recorded.
+	 */
+	public ComponentMetrics getComponentMetrics(String componentName) {
+		return componentMetrics.computeIfAbsent(componentName, ComponentMetrics::new);
+	}
+
+	/**
+	 * The aggregated forward propagations through a single component.
+	 */
+	public static class ComponentMetrics {
+
+		private final String componentName;
+		private final Histogram wallTimeNanos;
+		private final Histogram allocatedBytes;
+		private final Histogram exampleCounts;
+		private volatile int inputFeatures;
+		private volatile int outputFeatures;
+
+		ComponentMetrics(String componentName) {
+			this.componentName = componentName;
+			this.wallTimeNanos = new Histogram();
+			this.allocatedBytes = new Histogram();
+			this.exampleCounts = new Histogram();
+		}
+
+		void record(long wallTime, long allocated, int inputFeatureCount, int outputFeatureCount, int exampleCount) {
+			wallTimeNanos.record(wallTime);
+			allocatedBytes.record(allocated);
+			exampleCounts.record(exampleCount);
+			this.inputFeatures = inputFeatureCount;
+			this.outputFeatures = outputFeatureCount;
+		}
+
+		public String getComponentName() {
+			return componentName;
+		}
+
+		public Histogram getWallTimeNanos() {
+			return wallTimeNanos;
+		}
+
+		public Histogram getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public Histogram getExampleCounts() {
+			return exampleCounts;
+		}
+
+		/**
+		 * @return The number of input features of each example in the most recent forward propagation.
+		 */
+		public int getInputFeatures() {
+			return inputFeatures;
+		}
+
+		/**
+		 * @return The number of output features of each example in the most recent forward propagation.
+		 */
+		public int getOutputFeatures() {
+			return outputFeatures;
+		}
+	}
+}
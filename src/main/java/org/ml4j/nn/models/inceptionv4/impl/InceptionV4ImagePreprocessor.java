@@ -0,0 +1,419 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Converts images into the 299 x 299 x 3 channel-major input activations of
+ * the Inception V4 Network, scaled to the [-1, 1] range.
+ *
+ * Images are optionally centre-cropped, then resized with a separable
+ * fixed-point bilinear kernel reading the pixels straight from the raster of
+ * the decoded image. The activations can be written directly into a
+ * feature-major batch buffer, where feature f of example e is at index
+ * f * batchSize + e, with the images of a batch preprocessed in parallel.
+ */
+public class InceptionV4ImagePreprocessor {
+
+	/**
+	 * The width and height of the input images of the network.
+	 */
+	public static final int IMAGE_SIZE = 299;
+
+	/**
+	 * The central fraction of the image retained when evaluating the
+	 * pretrained Inception V4 Network.
+	 */
+	public static final float INCEPTION_CENTRAL_FRACTION = 0.875f;
+
+	private static final int PLANE_SIZE = IMAGE_SIZE * IMAGE_SIZE;
+
+	private static final int WEIGHT_BITS = 8;
+
+	private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+	/**
+	 * Maps each 8-bit intensity to its activation in the [-1, 1] range.
+	 */
+	private static final float[] ACTIVATIONS = new float[256];
+
+	static {
+		for (int i = 0; i < ACTIVATIONS.length; i++) {
+			ACTIVATIONS[i] = i / 127.5f - 1f;
+		}
+	}
+
+	private final float centralFraction;
+
+	/**
+	 * Create a preprocessor resizing the whole image.
+	 */
+	public InceptionV4ImagePreprocessor() {
+		this(1f);
+	}
+
+	/**
+	 * @param centralFraction The fraction of the width and height of the image
+	 *                        retained by the centre crop, in (0, 1].
+	 */
+	public InceptionV4ImagePreprocessor(float centralFraction) {
+		if (centralFraction <= 0 || centralFraction > 1) {
+			throw new IllegalArgumentException("The central fraction must be in (0, 1] but was " + centralFraction);
+		}
+		this.centralFraction = centralFraction;
+	}
+
+	/**
+	 * @param batchSize The number of images in the batch.
+	 * @return A feature-major batch buffer for the input activations of the images.
+	 */
+	public static float[] createBatchBuffer(int batchSize) {
+		return new float[PLANE_SIZE * 3 * batchSize];
+	}
+
+	/**
+	 * Decode and preprocess an image file.
+	 *
+	 * @param imagePath The path of the image.
+	 * @return The input activations of the image.
+	 * @throws IOException In the event that the image cannot be read or decoded.
+	 */
+	public float[] preprocess(Path imagePath) throws IOException {
+		return preprocess(read(imagePath));
+	}
+
+	/**
+	 * Preprocess a decoded image.
+	 *
+	 * @param image The image.
+	 * @return The input activations of the image.
+	 */
+	public float[] preprocess(BufferedImage image) {
+		float[] activations = new float[PLANE_SIZE * 3];
+		preprocess(image, activations, 0, 1);
+		return activations;
+	}
+
+	/**
+	 * Decode and preprocess image files in parallel into a batch buffer.
+	 *
+	 * @param imagePaths The paths of the images, at most the batch size.
+	 * @param batch The feature-major batch buffer.
+	 * @param batchSize The number of examples the batch buffer holds.
+	 * @throws IOException In the event that an image cannot be read or decoded.
+	 */
+	public void preprocessBatch(List<Path> imagePaths, float[] batch, int batchSize) throws IOException {
+		checkBatch(imagePaths.size(), batch, batchSize);
+		try {
+			IntStream.range(0, imagePaths.size()).parallel().forEach(exampleIndex -> {
+				try {
+					preprocess(read(imagePaths.get(exampleIndex)), batch, exampleIndex, batchSize);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Preprocess decoded images in parallel into a batch buffer.
+	 *
+	 * @param images The images, at most the batch size.
+	 * @param batch The feature-major batch buffer.
+	 * @param batchSize The number of examples the batch buffer holds.
+	 */
+	public void preprocessImages(List<BufferedImage> images, float[] batch, int batchSize) {
+		checkBatch(images.size(), batch, batchSize);
+		IntStream.range(0, images.size()).parallel()
+				.forEach(exampleIndex -> preprocess(images.get(exampleIndex), batch, exampleIndex, batchSize));
+	}
+
+	private static void checkBatch(int imageCount, float[] batch, int batchSize) {
+		if (imageCount > batchSize || batch.length < PLANE_SIZE * 3 * batchSize) {
+			throw new IllegalArgumentException("A batch buffer of size " + batchSize + " cannot hold " + imageCount
+					+ " images in " + batch.length + " activations");
+		}
+	}
+
+	/**
+	 * Preprocess a decoded image into a single example of a batch buffer.
+	 *
+	 * @param image The image.
+	 * @param batch The feature-major batch buffer.
+	 * @param exampleIndex The index of the example within the batch.
+	 * @param batchSize The number of examples the batch buffer holds.
+	 */
+	public void preprocess(BufferedImage image, float[] batch, int exampleIndex, int batchSize) {
+		int cropWidth = Math.max(1, Math.round(image.getWidth() * centralFraction));
+		int cropHeight = Math.max(1, Math.round(image.getHeight() * centralFraction));
+		preprocess(image, (image.getWidth() - cropWidth) / 2, (image.getHeight() - cropHeight) / 2, cropWidth,
+				cropHeight, false, batch, exampleIndex, batchSize);
+	}
+
+	/**
+	 * Preprocess a region of a decoded image into a single example of a batch
+	 * buffer, ignoring the central fraction of this preprocessor.
+	 *
+	 * @param image The image.
+	 * @param cropX The left of the region.
+	 * @param cropY The top of the region.
+	 * @param cropWidth The width of the region.
+	 * @param cropHeight The height of the region.
+	 * @param mirror Whether to mirror the region from left to right.
+	 * @param batch The feature-major batch buffer.
+	 * @param exampleIndex The index of the example within the batch.
+	 * @param batchSize The number of examples the batch buffer holds.
+	 */
+	public void preprocess(BufferedImage image, int cropX, int cropY, int cropWidth, int cropHeight, boolean mirror,
+			float[] batch, int exampleIndex, int batchSize) {
+		if (cropX < 0 || cropY < 0 || cropWidth < 1 || cropHeight < 1 || cropX + cropWidth > image.getWidth()
+				|| cropY + cropHeight > image.getHeight()) {
+			throw new IllegalArgumentException("Region " + cropWidth + " x " + cropHeight + " at (" + cropX + ", "
+					+ cropY + ") is not within the " + image.getWidth() + " x " + image.getHeight() + " image");
+		}
+		RowReader rowReader = RowReader.create(image);
+
+		// Source columns and fixed-point weights of each output column
+		int[] x0 = new int[IMAGE_SIZE];
+		int[] x1 = new int[IMAGE_SIZE];
+		int[] wx = new int[IMAGE_SIZE];
+		computeTaps(cropWidth, x0, x1, wx);
+		int[] y0 = new int[IMAGE_SIZE];
+		int[] y1 = new int[IMAGE_SIZE];
+		int[] wy = new int[IMAGE_SIZE];
+		computeTaps(cropHeight, y0, y1, wy);
+
+		// Horizontally resized rows, packed as 0x00RRGGBB with 8 fractional bits per channel
+		int[] top = new int[IMAGE_SIZE * 3];
+		int[] bottom = new int[IMAGE_SIZE * 3];
+		int[] sourceRow = new int[cropWidth];
+		int topRow = -1;
+		int bottomRow = -1;
+		for (int y = 0; y < IMAGE_SIZE; y++) {
+			if (y0[y] != topRow) {
+				if (y0[y] == bottomRow) {
+					int[] swap = top;
+					top = bottom;
+					bottom = swap;
+				} else {
+					rowReader.read(cropX, cropY + y0[y], sourceRow);
+					resizeRow(sourceRow, x0, x1, wx, top);
+				}
+				topRow = y0[y];
+				bottomRow = -1;
+			}
+			if (y1[y] != bottomRow) {
+				rowReader.read(cropX, cropY + y1[y], sourceRow);
+				resizeRow(sourceRow, x0, x1, wx, bottom);
+				bottomRow = y1[y];
+			}
+			int bottomWeight = wy[y];
+			int topWeight = WEIGHT_ONE - bottomWeight;
+			int index = (y * IMAGE_SIZE + (mirror ? IMAGE_SIZE - 1 : 0)) * batchSize + exampleIndex;
+			int step = mirror ? -batchSize : batchSize;
+			int planeStride = PLANE_SIZE * batchSize;
+			for (int x = 0; x < IMAGE_SIZE; x++, index += step) {
+				for (int channel = 0; channel < 3; channel++) {
+					int value = top[x * 3 + channel] * topWeight + bottom[x * 3 + channel] * bottomWeight;
+					batch[index + channel * planeStride] = ACTIVATIONS[(value + (1 << (2 * WEIGHT_BITS - 1)))
+							>> (2 * WEIGHT_BITS)];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the two source taps and the fixed-point weight of the second
+	 * tap for each output coordinate, sampling at pixel centres.
+	 */
+	private static void computeTaps(int sourceSize, int[] first, int[] second, int[] weights) {
+		double scale = sourceSize / (double) IMAGE_SIZE;
+		for (int i = 0; i < IMAGE_SIZE; i++) {
+			double source = Math.min(Math.max((i + 0.5) * scale - 0.5, 0), sourceSize - 1);
+			int floor = (int) source;
+			first[i] = floor;
+			second[i] = Math.min(floor + 1, sourceSize - 1);
+			weights[i] = (int) Math.round((source - floor) * WEIGHT_ONE);
+		}
+	}
+
+	private static void resizeRow(int[] sourceRow, int[] x0, int[] x1, int[] wx, int[] destination) {
+		for (int x = 0; x < IMAGE_SIZE; x++) {
+			int left = sourceRow[x0[x]];
+			int right = sourceRow[x1[x]];
+			int rightWeight = wx[x];
+			int leftWeight = WEIGHT_ONE - rightWeight;
+			destination[x * 3] = ((left >> 16) & 0xff) * leftWeight + ((right >> 16) & 0xff) * rightWeight;
+			destination[x * 3 + 1] = ((left >> 8) & 0xff) * leftWeight + ((right >> 8) & 0xff) * rightWeight;
+			destination[x * 3 + 2] = (left & 0xff) * leftWeight + (right & 0xff) * rightWeight;
+		}
+	}
+
+	private static BufferedImage read(Path imagePath) throws IOException {
+		BufferedImage image = ImageIO.read(imagePath.toFile());
+		if (image == null) {
+			throw new IOException("Unsupported image format:" + imagePath);
+		}
+		return image;
+	}
+
+	/**
+	 * Reads rows of an image as packed 0x00RRGGBB pixels, directly from the
+	 * data buffer for the common 8-bit interleaved and packed RGB layouts.
+	 */
+	private abstract static class RowReader {
+
+		abstract void read(int x, int y, int[] row);
+
+		static RowReader create(BufferedImage image) {
+			Raster raster = image.getRaster();
+			SampleModel sampleModel = raster.getSampleModel();
+			DataBuffer dataBuffer = raster.getDataBuffer();
+			boolean srgb = image.getColorModel().getColorSpace().isCS_sRGB();
+			int bands = sampleModel.getNumBands();
+			if (image.isAlphaPremultiplied()) {
+				return new IntRowReader(toIntRgb(image));
+			}
+			if (dataBuffer instanceof DataBufferByte && dataBuffer.getNumBanks() == 1
+					&& sampleModel instanceof ComponentSampleModel
+					&& image.getColorModel() instanceof ComponentColorModel
+					&& (bands == 1 || (bands >= 3 && srgb))) {
+				return new ByteRowReader(raster, (ComponentSampleModel) sampleModel,
+						((DataBufferByte) dataBuffer).getData());
+			} else if (dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1
+					&& sampleModel instanceof SinglePixelPackedSampleModel && srgb && bands >= 3
+					&& hasEightBitMasks((SinglePixelPackedSampleModel) sampleModel)) {
+				return new IntRowReader(raster, (SinglePixelPackedSampleModel) sampleModel,
+						((DataBufferInt) dataBuffer).getData());
+			}
+			return new IntRowReader(toIntRgb(image));
+		}
+
+		private static boolean hasEightBitMasks(SinglePixelPackedSampleModel sampleModel) {
+			int[] masks = sampleModel.getBitMasks();
+			int[] shifts = sampleModel.getBitOffsets();
+			for (int band = 0; band < 3; band++) {
+				if (masks[band] >>> shifts[band] != 0xff) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static BufferedImage toIntRgb(BufferedImage image) {
+			BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = converted.createGraphics();
+			try {
+				graphics.drawImage(image, 0, 0, null);
+			} finally {
+				graphics.dispose();
+			}
+			return converted;
+		}
+	}
+
+	private static class ByteRowReader extends RowReader {
+
+		private final byte[] data;
+		private final int origin;
+		private final int pixelStride;
+		private final int scanlineStride;
+		private final int redOffset;
+		private final int greenOffset;
+		private final int blueOffset;
+
+		ByteRowReader(Raster raster, ComponentSampleModel sampleModel, byte[] data) {
+			this.data = data;
+			this.pixelStride = sampleModel.getPixelStride();
+			this.scanlineStride = sampleModel.getScanlineStride();
+			this.origin = -raster.getSampleModelTranslateY() * scanlineStride
+					- raster.getSampleModelTranslateX() * pixelStride + raster.getDataBuffer().getOffset();
+			int[] bandOffsets = sampleModel.getBandOffsets();
+			this.redOffset = bandOffsets[0];
+			this.greenOffset = bandOffsets.length >= 3 ? bandOffsets[1] : bandOffsets[0];
+			this.blueOffset = bandOffsets.length >= 3 ? bandOffsets[2] : bandOffsets[0];
+		}
+
+		@Override
+		void read(int x, int y, int[] row) {
+			int index = origin + y * scanlineStride + x * pixelStride;
+			for (int i = 0; i < row.length; i++, index += pixelStride) {
+				row[i] = (data[index + redOffset] & 0xff) << 16 | (data[index + greenOffset] & 0xff) << 8
+						| (data[index + blueOffset] & 0xff);
+			}
+		}
+	}
+
+	private static class IntRowReader extends RowReader {
+
+		private final int[] data;
+		private final int origin;
+		private final int scanlineStride;
+		private final int[] masks;
+		private final int[] shifts;
+
+		IntRowReader(BufferedImage intRgbImage) {
+			this(intRgbImage.getRaster(), (SinglePixelPackedSampleModel) intRgbImage.getRaster().getSampleModel(),
+					((DataBufferInt) intRgbImage.getRaster().getDataBuffer()).getData());
+		}
+
+		IntRowReader(Raster raster, SinglePixelPackedSampleModel sampleModel, int[] data) {
+			this.data = data;
+			this.scanlineStride = sampleModel.getScanlineStride();
+			this.origin = -raster.getSampleModelTranslateY() * scanlineStride
+					- raster.getSampleModelTranslateX() + raster.getDataBuffer().getOffset();
+			this.masks = sampleModel.getBitMasks();
+			this.shifts = sampleModel.getBitOffsets();
+		}
+
+		@Override
+		void read(int x, int y, int[] row) {
+			int index = origin + y * scanlineStride + x;
+			int redMask = masks[0];
+			int greenMask = masks[1];
+			int blueMask = masks[2];
+			int redShift = shifts[0];
+			int greenShift = shifts[1];
+			int blueShift = shifts[2];
+			for (int i = 0; i < row.length; i++, index++) {
+				int pixel = data[index];
+				row[i] = ((pixel & redMask) >>> redShift) << 16 | ((pixel & greenMask) >>> greenShift) << 8
+						| ((pixel & blueMask) >>> blueShift);
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * An identified image whose input activations are only produced when
+ * requested, so that images can be streamed and skipped without decoding.
+ */
+public abstract class InceptionV4InputImage {
+
+	private String id;
+
+	protected InceptionV4InputImage(String id) {
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return The 299 x 299 x 3 channel-major input activations of the image.
+	 * @throws IOException In the event that the image cannot be read.
+	 */
+	public abstract float[] getActivations() throws IOException;
+
+	/**
+	 * @param id The id of the image.
+	 * @param activations The input activations of the image.
+	 * @return The image.
+	 */
+	public static InceptionV4InputImage of(String id, float[] activations) {
+		return new InceptionV4InputImage(id) {
+
+			@Override
+			public float[] getActivations() {
+				return activations;
+			}
+		};
+	}
+
+	/**
+	 * @param imagePath The path of the image file, which is also its id.
+	 * @param preprocessor The preprocessor producing the input activations.
+	 * @return The image, decoded on request.
+	 */
+	public static InceptionV4InputImage of(Path imagePath, InceptionV4ImagePreprocessor preprocessor) {
+		return new InceptionV4InputImage(imagePath.toString()) {
+
+			@Override
+			public float[] getActivations() throws IOException {
+				return preprocessor.preprocess(imagePath);
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the image files beneath a directory, in the order of their
+	 * paths. Only files with an extension readable by ImageIO are included, so
+	 * that other files such as READMEs or .DS_Store files are skipped.
+	 *
+	 * The directories are listed as the iteration reaches them, so only the
+	 * entries of the directories on the current path are held in memory.
+	 *
+	 * @param directory The directory.
+	 * @param preprocessor The preprocessor producing the input activations.
+	 * @return The images, decoded on request.
+	 * @throws IOException In the event that the directory cannot be listed.
+	 */
+	public static Iterator<InceptionV4InputImage> fromDirectory(Path directory,
+			InceptionV4ImagePreprocessor preprocessor) throws IOException {
+		Iterator<Path> imagePaths = new ImagePathIterator(directory);
+		return new Iterator<InceptionV4InputImage>() {
+
+			@Override
+			public boolean hasNext() {
+				return imagePaths.hasNext();
+			}
+
+			@Override
+			public InceptionV4InputImage next() {
+				return of(imagePaths.next(), preprocessor);
+			}
+		};
+	}
+
+	/**
+	 * @param path The path of a file.
+	 * @return Whether the file has an extension readable by ImageIO.
+	 */
+	static boolean isImageFile(Path path) {
+		String fileName = path.getFileName().toString();
+		int extensionIndex = fileName.lastIndexOf('.');
+		if (extensionIndex <= 0) {
+			return false;
+		}
+		String extension = fileName.substring(extensionIndex + 1).toLowerCase(Locale.ROOT);
+		return Arrays.asList(ImageIO.getReaderFileSuffixes()).contains(extension);
+	}
+
+	/**
+	 * Walks a directory tree depth first, listing each directory in the order
+	 * of the paths of its entries. A directory sorts as its path followed by a
+	 * separator, so that the image files are produced in the order of their
+	 * full paths.
+	 */
+	private static class ImagePathIterator implements Iterator<Path> {
+
+		private final Deque<Iterator<Path>> directories = new ArrayDeque<>();
+		private Path next;
+
+		ImagePathIterator(Path directory) throws IOException {
+			directories.push(list(directory));
+		}
+
+		private static Iterator<Path> list(Path directory) throws IOException {
+			String separator = directory.getFileSystem().getSeparator();
+			SortedMap<String, Path> entries = new TreeMap<>();
+			try (Stream<Path> paths = Files.list(directory)) {
+				paths.forEach(path -> entries.put(Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+						? path.toString() + separator : path.toString(), path));
+			}
+			return entries.values().iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !directories.isEmpty()) {
+				Iterator<Path> entries = directories.peek();
+				if (!entries.hasNext()) {
+					directories.pop();
+					continue;
+				}
+				Path path = entries.next();
+				if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					try {
+						directories.push(list(path));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				} else if (Files.isRegularFile(path) && isImageFile(path)) {
+					next = path;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public Path next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Path path = next;
+			next = null;
+			return path;
+		}
+	}
+}
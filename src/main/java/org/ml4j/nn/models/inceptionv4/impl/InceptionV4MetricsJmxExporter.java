@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4MetricsSink;
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4ForwardPropagationMetrics.ComponentMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics sink which aggregates forward propagations and registers an MXBean
+ * for each component the first time it is recorded, under
+ * org.ml4j.nn.models.inceptionv4:type=ForwardPropagation,component=&lt;name&gt;.
+ */
+public class InceptionV4MetricsJmxExporter implements InceptionV4MetricsSink, AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4MetricsJmxExporter.class);
+
+	public static final String DOMAIN = "org.ml4j.nn.models.inceptionv4";
+
+	private final InceptionV4ForwardPropagationMetrics metrics;
+	private final MBeanServer mbeanServer;
+	private final Set<String> recordedComponents;
+	private final List<ObjectName> registeredObjectNames;
+
+	public InceptionV4MetricsJmxExporter(InceptionV4ForwardPropagationMetrics metrics, MBeanServer mbeanServer) {
+		this.metrics = metrics;
+		this.mbeanServer = mbeanServer;
+		this.recordedComponents = ConcurrentHashMap.newKeySet();
+		this.registeredObjectNames = new CopyOnWriteArrayList<>();
+	}
+
+	public InceptionV4MetricsJmxExporter() {
+		this(new InceptionV4ForwardPropagationMetrics(), ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public InceptionV4ForwardPropagationMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void recordForwardPropagation(String componentName, long wallTimeNanos, long allocatedBytes,
+			int inputFeatures, int outputFeatures, int exampleCount) {
+		metrics.recordForwardPropagation(componentName, wallTimeNanos, allocatedBytes, inputFeatures,
+				outputFeatures, exampleCount);
+		if (recordedComponents.add(componentName)) {
+			register(componentName);
+		}
+	}
+
+	private void register(String componentName) {
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=ForwardPropagation,component="
+					+ ObjectName.quote(componentName));
+			mbeanServer.registerMBean(new ComponentMetricsMXBeanImpl(metrics.getComponentMetrics(componentName)),
+					objectName);
+			registeredObjectNames.add(objectName);
+		} catch (JMException e) {
+			LOGGER.warn("Unable to register forward propagation metrics of component:{}", componentName, e);
+		}
+	}
+
+	/**
+	 * Unregister the MXBeans of every recorded component.
+	 */
+	@Override
+	public void close() {
+		for (ObjectName objectName : registeredObjectNames) {
+			try {
+				mbeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn("Unable to unregister forward propagation metrics:{}", objectName, e);
+			}
+		}
+		registeredObjectNames.clear();
+	}
+
+	private static class ComponentMetricsMXBeanImpl implements InceptionV4ComponentMetricsMXBean {
+
+		private final ComponentMetrics component;
+
+		ComponentMetricsMXBeanImpl(ComponentMetrics component) {
+			this.component = component;
+		}
+
+		@Override
+		public long getForwardPropagationCount() {
+			return component.getWallTimeNanos().getCount();
+		}
+
+		@Override
+		public double getMeanWallTimeMillis() {
+			return component.getWallTimeNanos().getMean() / 1e6;
+		}
+
+		@Override
+		public double getP50WallTimeMillis() {
+			return component.getWallTimeNanos().getPercentile(50) / 1e6;
+		}
+
+		@Override
+		public double getP95WallTimeMillis() {
+			return component.getWallTimeNanos().getPercentile(95) / 1e6;
+		}
+
+		@Override
+		public double getP99WallTimeMillis() {
+			return component.getWallTimeNanos().getPercentile(99) / 1e6;
+		}
+
+		@Override
+		public double getMaxWallTimeMillis() {
+			return component.getWallTimeNanos().getMax() / 1e6;
+		}
+
+		@Override
+		public double getMeanAllocatedBytes() {
+			return component.getAllocatedBytes().getMean();
+		}
+
+		@Override
+		public long getMaxAllocatedBytes() {
+			return component.getAllocatedBytes().getMax();
+		}
+
+		@Override
+		public double getMeanExampleCount() {
+			return component.getExampleCounts().getMean();
+		}
+
+		@Override
+		public int getInputFeatures() {
+			return component.getInputFeatures();
+		}
+
+		@Override
+		public int getOutputFeatures() {
+			return component.getOutputFeatures();
+		}
+	}
+}
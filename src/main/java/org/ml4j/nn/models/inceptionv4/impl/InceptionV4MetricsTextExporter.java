@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4ForwardPropagationMetrics.ComponentMetrics;
+
+/**
+ * Writes forward propagation metrics as plain text, one line per component.
+ */
+public final class InceptionV4MetricsTextExporter {
+
+	private InceptionV4MetricsTextExporter() {
+	}
+
+	/**
+	 * @param metrics The metrics.
+	 * @return The metrics as plain text.
+	 */
+	public static String export(InceptionV4ForwardPropagationMetrics metrics) {
+		StringBuilder text = new StringBuilder();
+		try {
+			export(metrics, text);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @param metrics The metrics.
+	 * @param destination The destination of the plain text.
+	 * @throws IOException In the event that the text cannot be written.
+	 */
+	public static void export(InceptionV4ForwardPropagationMetrics metrics, Appendable destination)
+			throws IOException {
+		for (String componentName : metrics.getComponentNames()) {
+			ComponentMetrics component = metrics.getComponentMetrics(componentName);
+			Histogram wallTime = component.getWallTimeNanos();
+			Histogram allocated = component.getAllocatedBytes();
+			destination.append(String.format(
+					"%s count=%d wallTimeMs[mean=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f]"
+							+ " allocatedBytes[mean=%.0f max=%d] examples[mean=%.1f] features=%d->%d%n",
+					componentName, wallTime.getCount(), wallTime.getMean() / 1e6, wallTime.getPercentile(50) / 1e6,
+					wallTime.getPercentile(95) / 1e6, wallTime.getPercentile(99) / 1e6, wallTime.getMax() / 1e6,
+					allocated.getMean(), allocated.getMax(), component.getExampleCounts().getMean(),
+					component.getInputFeatures(), component.getOutputFeatures()));
+		}
+	}
+}
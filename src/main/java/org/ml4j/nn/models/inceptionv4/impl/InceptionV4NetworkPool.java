@@ -0,0 +1,299 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of Inception V4 Networks for multi-threaded inference, each
+ * network being used by at most one thread at a time.
+ *
+ * Networks are constructed on demand up to the maximum size, and idle
+ * networks beyond the minimum size are discarded once they have been idle
+ * for longer than the idle timeout, as networks are borrowed and returned.
+ * When every network is borrowed and the
+ * pool is at its maximum size, borrowers wait up to their timeout for a
+ * network to be returned.
+ *
+ * The pools created by {@link #createInferencePool} build every network from
+ * a single CachingInceptionV4WeightsLoader, so the networks share one copy of
+ * the weight matrices.
+ */
+public class InceptionV4NetworkPool implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4NetworkPool.class);
+
+	private final Callable<SupervisedFeedForwardNeuralNetwork> networkConstructor;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutNanos;
+	private final Semaphore permits;
+	private final Deque<IdleNetwork> idleNetworks;
+	private final Set<SupervisedFeedForwardNeuralNetwork> borrowedNetworks;
+	private int size;
+	private boolean closed;
+
+	/**
+	 * @param networkConstructor Constructs the pooled networks.
+	 * @param minSize The number of networks constructed up front and always retained.
+	 * @param maxSize The maximum number of networks.
+	 * @param idleTimeout The time after which an idle network beyond the minimum size is discarded.
+	 * @param unit The unit of the idle timeout.
+	 * @throws IOException In the event that the initial networks cannot be constructed.
+	 */
+	public InceptionV4NetworkPool(Callable<SupervisedFeedForwardNeuralNetwork> networkConstructor, int minSize,
+			int maxSize, long idleTimeout, TimeUnit unit) throws IOException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize >= 1");
+		}
+		this.networkConstructor = networkConstructor;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+		this.permits = new Semaphore(maxSize, true);
+		this.idleNetworks = new ArrayDeque<>();
+		this.borrowedNetworks = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < minSize; i++) {
+			idleNetworks.push(new IdleNetwork(construct()));
+			size++;
+		}
+	}
+
+	/**
+	 * Create a pool of networks for inference, sharing a single copy of the
+	 * weights.
+	 *
+	 * @param sessionFactory The session factory.
+	 * @param weightsLoader The source of the pretrained weights.
+	 * @param labels The labels.
+	 * @param context The context the networks are used with.
+	 * @param minSize The number of networks constructed up front and always retained.
+	 * @param maxSize The maximum number of networks.
+	 * @param idleTimeout The time after which an idle network beyond the minimum size is discarded.
+	 * @param unit The unit of the idle timeout.
+	 * @return The pool.
+	 * @throws IOException In the event that the initial networks cannot be constructed.
+	 */
+	public static InceptionV4NetworkPool createInferencePool(DefaultSessionFactory sessionFactory,
+			InceptionV4WeightsLoader weightsLoader, InceptionV4Labels labels, FeedForwardNeuralNetworkContext context,
+			int minSize, int maxSize, long idleTimeout, TimeUnit unit) throws IOException {
+		// Cache the weights, so that every network shares the same matrices
+		InceptionV4WeightsLoader sharedWeightsLoader = new CachingInceptionV4WeightsLoader(weightsLoader,
+				CachingInceptionV4WeightsLoader.EvictionPolicy.NEVER);
+		DefaultInceptionV4Factory factory = new DefaultInceptionV4Factory(sessionFactory, sharedWeightsLoader,
+				labels);
+		return new InceptionV4NetworkPool(() -> factory.createInceptionV4(context), minSize, maxSize, idleTimeout,
+				unit);
+	}
+
+	/**
+	 * Borrow a network, constructing a new network if none is idle and the pool
+	 * is below its maximum size. Networks which have been idle for longer than
+	 * the idle timeout are discarded first.
+	 *
+	 * @param timeout The maximum time to wait for a network to be returned.
+	 * @param unit The unit of the timeout.
+	 * @return The borrowed network, which must be returned to the pool.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws TimeoutException If no network became available within the timeout.
+	 * @throws IOException In the event that a new network cannot be constructed.
+	 */
+	public SupervisedFeedForwardNeuralNetwork borrow(long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException, IOException {
+		if (!permits.tryAcquire(timeout, unit)) {
+			throw new TimeoutException("No Inception V4 Network became available within " + timeout + " " + unit);
+		}
+		boolean borrowed = false;
+		try {
+			synchronized (this) {
+				if (closed) {
+					throw new IllegalStateException("The network pool has been closed");
+				}
+				evictIdleNetworks();
+				IdleNetwork idleNetwork = idleNetworks.poll();
+				if (idleNetwork != null) {
+					borrowedNetworks.add(idleNetwork.network);
+					borrowed = true;
+					return idleNetwork.network;
+				}
+				size++;
+			}
+			try {
+				SupervisedFeedForwardNeuralNetwork network = construct();
+				synchronized (this) {
+					borrowedNetworks.add(network);
+				}
+				borrowed = true;
+				LOGGER.debug("Grew Inception V4 Network pool to {} networks", size);
+				return network;
+			} finally {
+				if (!borrowed) {
+					synchronized (this) {
+						size--;
+					}
+				}
+			}
+		} finally {
+			if (!borrowed) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Borrow a network for the duration of a try-with-resources block.
+	 *
+	 * @param timeout The maximum time to wait for a network to be returned.
+	 * @param unit The unit of the timeout.
+	 * @return The lease of the borrowed network, returning the network when closed.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws TimeoutException If no network became available within the timeout.
+	 * @throws IOException In the event that a new network cannot be constructed.
+	 */
+	public Lease lease(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException, IOException {
+		return new Lease(borrow(timeout, unit));
+	}
+
+	/**
+	 * Return a borrowed network to the pool, discarding any networks which have
+	 * been idle for longer than the idle timeout.
+	 *
+	 * @param network The borrowed network.
+	 * @throws IllegalArgumentException If the network is not borrowed from this
+	 *                                  pool, or has already been returned.
+	 */
+	public void giveBack(SupervisedFeedForwardNeuralNetwork network) {
+		synchronized (this) {
+			if (!borrowedNetworks.remove(network)) {
+				throw new IllegalArgumentException(
+						"The network was not borrowed from this pool, or has already been returned");
+			}
+			if (closed) {
+				size--;
+			} else {
+				idleNetworks.push(new IdleNetwork(network));
+				evictIdleNetworks();
+			}
+		}
+		permits.release();
+	}
+
+	private void evictIdleNetworks() {
+		long now = System.nanoTime();
+		// The most recently returned networks are at the head, so evict from the tail
+		Iterator<IdleNetwork> oldestFirst = idleNetworks.descendingIterator();
+		while (size > minSize && oldestFirst.hasNext()) {
+			if (now - oldestFirst.next().idleSinceNanos <= idleTimeoutNanos) {
+				break;
+			}
+			oldestFirst.remove();
+			size--;
+			LOGGER.debug("Shrank Inception V4 Network pool to {} networks", size);
+		}
+	}
+
+	private SupervisedFeedForwardNeuralNetwork construct() throws IOException {
+		try {
+			return networkConstructor.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return The number of networks, whether idle or borrowed.
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public synchronized int getIdleCount() {
+		return idleNetworks.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Discard the idle networks - borrowed networks are discarded as they are returned.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		size -= idleNetworks.size();
+		idleNetworks.clear();
+	}
+
+	/**
+	 * A borrowed network, returned to the pool when the lease is closed.
+	 */
+	public class Lease implements AutoCloseable {
+
+		private SupervisedFeedForwardNeuralNetwork network;
+
+		Lease(SupervisedFeedForwardNeuralNetwork network) {
+			this.network = network;
+		}
+
+		public SupervisedFeedForwardNeuralNetwork getNetwork() {
+			if (network == null) {
+				throw new IllegalStateException("The lease has been closed");
+			}
+			return network;
+		}
+
+		@Override
+		public void close() {
+			if (network != null) {
+				giveBack(network);
+				network = null;
+			}
+		}
+	}
+
+	private static class IdleNetwork {
+
+		private final SupervisedFeedForwardNeuralNetwork network;
+		private final long idleSinceNanos;
+
+		IdleNetwork(SupervisedFeedForwardNeuralNetwork network) {
+			this.network = network;
+			this.idleSinceNanos = System.nanoTime();
+		}
+	}
+}
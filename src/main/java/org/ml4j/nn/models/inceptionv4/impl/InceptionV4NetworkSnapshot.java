@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshots a fully constructed Inception V4 Network - its component graph
+ * together with its already laid out weight matrices - to a single file, and
+ * restores it without the InceptionV4Definition or a weights loader.
+ *
+ * A snapshot is a short header followed by the Java serialization of the
+ * network. It is restored from a single read-only memory mapping of the
+ * file, so the restore cost is that of deserializing the weight arrays.
+ *
+ * The header holds a key identifying what the network was built from - see
+ * {@link #createKey(InceptionV4WeightsManifest)} - and a snapshot is only
+ * restored for the same key. A snapshot with a different key, like one which
+ * cannot be restored, is rebuilt by restoreOrCreate.
+ */
+public final class InceptionV4NetworkSnapshot {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4NetworkSnapshot.class);
+
+	/**
+	 * "IV4S" when read as big-endian bytes.
+	 */
+	public static final int MAGIC = 0x49563453;
+
+	public static final int VERSION = 2;
+
+	private static final int HEADER_LENGTH = 10;
+
+	private InceptionV4NetworkSnapshot() {
+	}
+
+	/**
+	 * Create the key of the snapshots of networks built from a set of weights
+	 * by the ml4j implementation on the class path.
+	 *
+	 * @param weightsManifest The manifest of the weights the network is built from.
+	 * @return The snapshot key, combining the checksum of the manifest and the
+	 *         implementation version of ml4j.
+	 */
+	public static String createKey(InceptionV4WeightsManifest weightsManifest) {
+		String ml4jVersion = DefaultSessionFactory.class.getPackage().getImplementationVersion();
+		return String.format("weights=%08x ml4j=%s", weightsManifest.getChecksum(),
+				ml4jVersion == null ? "unversioned" : ml4jVersion);
+	}
+
+	/**
+	 * Write a snapshot of a network, replacing any existing snapshot atomically.
+	 *
+	 * @param network The fully constructed network.
+	 * @param snapshotPath The path of the snapshot file.
+	 * @param snapshotKey The key identifying what the network was built from.
+	 * @throws IOException In the event that the snapshot cannot be written.
+	 */
+	public static void write(SupervisedFeedForwardNeuralNetwork network, Path snapshotPath, String snapshotKey)
+			throws IOException {
+		Path absolutePath = snapshotPath.toAbsolutePath();
+		Path temporaryPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(),
+				".tmp");
+		try {
+			try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temporaryPath), 1 << 20)) {
+				DataOutputStream header = new DataOutputStream(os);
+				header.writeInt(MAGIC);
+				header.writeInt(VERSION);
+				header.writeUTF(snapshotKey);
+				header.flush();
+				ObjectOutputStream oos = new ObjectOutputStream(os);
+				oos.writeObject(network);
+				oos.flush();
+			}
+			Files.move(temporaryPath, absolutePath, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+	}
+
+	/**
+	 * Restore a network from a snapshot.
+	 *
+	 * @param snapshotPath The path of the snapshot file.
+	 * @param classLoader The class loader resolving the classes of the network.
+	 * @param snapshotKey The key the snapshot must have been written with.
+	 * @return The restored network.
+	 * @throws IOException In the event that the snapshot cannot be read, has a
+	 *                     different key or was written by incompatible classes.
+	 */
+	public static SupervisedFeedForwardNeuralNetwork read(Path snapshotPath, ClassLoader classLoader,
+			String snapshotKey) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+			throw new IOException("Not an Inception V4 network snapshot:" + snapshotPath);
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported network snapshot version " + version + " in file:" + snapshotPath);
+		}
+		InputStream is = new ByteBufferInputStream(buffer);
+		String writtenKey = new DataInputStream(is).readUTF();
+		if (!writtenKey.equals(snapshotKey)) {
+			throw new IOException("Network snapshot " + snapshotPath + " has key " + writtenKey + " but " + snapshotKey
+					+ " is required");
+		}
+		try (ObjectInputStream ois = new ClassLoaderObjectInputStream(is, classLoader)) {
+			return (SupervisedFeedForwardNeuralNetwork) ois.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Unable to restore network snapshot:" + snapshotPath, e);
+		}
+	}
+
+	/**
+	 * Restore a network from its snapshot, or construct it and write the
+	 * snapshot if there is no usable snapshot with the key. A snapshot which
+	 * cannot be written, for example as the network is not serializable, is
+	 * logged and the constructed network is returned without it.
+	 *
+	 * @param snapshotPath The path of the snapshot file.
+	 * @param classLoader The class loader resolving the classes of the network.
+	 * @param snapshotKey The key identifying what the network is built from.
+	 * @param networkConstructor Constructs the network when it cannot be restored.
+	 * @return The network.
+	 * @throws IOException In the event that the network cannot be constructed.
+	 */
+	public static SupervisedFeedForwardNeuralNetwork restoreOrCreate(Path snapshotPath, ClassLoader classLoader,
+			String snapshotKey, Callable<SupervisedFeedForwardNeuralNetwork> networkConstructor) throws IOException {
+		if (Files.exists(snapshotPath)) {
+			try {
+				long start = System.nanoTime();
+				SupervisedFeedForwardNeuralNetwork network = read(snapshotPath, classLoader, snapshotKey);
+				LOGGER.info("Restored Inception V4 Network from snapshot {} in {} ms", snapshotPath,
+						(System.nanoTime() - start) / 1000000);
+				return network;
+			} catch (IOException e) {
+				LOGGER.warn("Unable to restore network snapshot {}, rebuilding the network", snapshotPath, e);
+			}
+		}
+		SupervisedFeedForwardNeuralNetwork network;
+		try {
+			network = networkConstructor.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		try {
+			write(network, snapshotPath, snapshotKey);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to write network snapshot {}", snapshotPath, e);
+		}
+		return network;
+	}
+
+	private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (classLoader == null) {
+				return super.resolveClass(desc);
+			}
+			try {
+				return Class.forName(desc.getName(), false, classLoader);
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
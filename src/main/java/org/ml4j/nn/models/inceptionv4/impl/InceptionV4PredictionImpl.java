@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4Prediction;
+
+/**
+ * Default implementation of a single Inception V4 class prediction.
+ */
+public class InceptionV4PredictionImpl implements InceptionV4Prediction {
+
+	private int labelIndex;
+	private String label;
+	private float score;
+
+	public InceptionV4PredictionImpl(int labelIndex, String label, float score) {
+		this.labelIndex = labelIndex;
+		this.label = label;
+		this.score = score;
+	}
+
+	@Override
+	public int getLabelIndex() {
+		return labelIndex;
+	}
+
+	@Override
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public float getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return label + " (" + labelIndex + "): " + score;
+	}
+}
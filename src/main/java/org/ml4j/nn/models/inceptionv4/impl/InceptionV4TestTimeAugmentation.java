@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Prediction;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+
+/**
+ * Test-time augmentation for an Inception V4 Network, averaging the
+ * predictions of a number of crops and mirror images of each image.
+ *
+ * For each crop scale, crops of that fraction of the width and height of the
+ * image are taken at the four corners and the centre, optionally together
+ * with their mirror images - a single scale with mirroring is the usual
+ * ten-crop evaluation. Every view of every image is preprocessed into a
+ * single batch, so that the views are propagated in one forward pass rather
+ * than one pass per view, and the scores of the views of each image are then
+ * averaged.
+ */
+public class InceptionV4TestTimeAugmentation {
+
+	private static final int CROP_POSITIONS = 5;
+
+	private SupervisedFeedForwardNeuralNetwork network;
+	private FeedForwardNeuralNetworkContext context;
+	private MatrixFactory matrixFactory;
+	private InceptionV4Labels labels;
+	private float[] cropFractions;
+	private boolean mirror;
+	private InceptionV4ImagePreprocessor preprocessor;
+
+	/**
+	 * @param network The Inception V4 Network, as created by an InceptionV4Factory.
+	 * @param context The prediction context of the network.
+	 * @param matrixFactory The matrix factory.
+	 * @param labels The labels of the network outputs.
+	 * @param cropFractions The fraction of the width and height of the image
+	 *                      retained by the crops at each scale, in (0, 1].
+	 * @param mirror Whether to also propagate the mirror image of each crop.
+	 */
+	public InceptionV4TestTimeAugmentation(SupervisedFeedForwardNeuralNetwork network,
+			FeedForwardNeuralNetworkContext context, MatrixFactory matrixFactory, InceptionV4Labels labels,
+			float[] cropFractions, boolean mirror) {
+		if (cropFractions.length == 0) {
+			throw new IllegalArgumentException("At least one crop fraction is required");
+		}
+		for (float cropFraction : cropFractions) {
+			if (cropFraction <= 0 || cropFraction > 1) {
+				throw new IllegalArgumentException("Crop fractions must be in (0, 1] but was " + cropFraction);
+			}
+		}
+		this.network = network;
+		this.context = context;
+		this.matrixFactory = matrixFactory;
+		this.labels = labels;
+		this.cropFractions = Arrays.copyOf(cropFractions, cropFractions.length);
+		this.mirror = mirror;
+		this.preprocessor = new InceptionV4ImagePreprocessor();
+	}
+
+	/**
+	 * Create the ten-crop augmentation - the corner and centre crops retaining
+	 * the Inception central fraction of the image, and their mirror images.
+	 *
+	 * @param network The Inception V4 Network, as created by an InceptionV4Factory.
+	 * @param context The prediction context of the network.
+	 * @param matrixFactory The matrix factory.
+	 * @param labels The labels of the network outputs.
+	 * @return The ten-crop augmentation.
+	 */
+	public static InceptionV4TestTimeAugmentation createTenCrop(SupervisedFeedForwardNeuralNetwork network,
+			FeedForwardNeuralNetworkContext context, MatrixFactory matrixFactory, InceptionV4Labels labels) {
+		return new InceptionV4TestTimeAugmentation(network, context, matrixFactory, labels,
+				new float[] { InceptionV4ImagePreprocessor.INCEPTION_CENTRAL_FRACTION }, true);
+	}
+
+	/**
+	 * @return The number of views propagated for each image.
+	 */
+	public int getViewCount() {
+		return cropFractions.length * CROP_POSITIONS * (mirror ? 2 : 1);
+	}
+
+	/**
+	 * Preprocess every view of the images into a single feature-major batch,
+	 * the views of each image being consecutive examples.
+	 *
+	 * @param images The images.
+	 * @return The batch of getViewCount() examples per image.
+	 */
+	public float[] createBatch(List<BufferedImage> images) {
+		int viewCount = getViewCount();
+		int batchSize = images.size() * viewCount;
+		float[] batch = InceptionV4ImagePreprocessor.createBatchBuffer(batchSize);
+		IntStream.range(0, batchSize).parallel().forEach(exampleIndex -> {
+			BufferedImage image = images.get(exampleIndex / viewCount);
+			int view = exampleIndex % viewCount;
+			boolean mirrored = mirror && view % 2 == 1;
+			int crop = mirror ? view / 2 : view;
+			float cropFraction = cropFractions[crop / CROP_POSITIONS];
+			int cropWidth = Math.max(1, Math.round(image.getWidth() * cropFraction));
+			int cropHeight = Math.max(1, Math.round(image.getHeight() * cropFraction));
+			int right = image.getWidth() - cropWidth;
+			int bottom = image.getHeight() - cropHeight;
+			int cropX;
+			int cropY;
+			switch (crop % CROP_POSITIONS) {
+			case 0:
+				cropX = right / 2;
+				cropY = bottom / 2;
+				break;
+			case 1:
+				cropX = 0;
+				cropY = 0;
+				break;
+			case 2:
+				cropX = right;
+				cropY = 0;
+				break;
+			case 3:
+				cropX = 0;
+				cropY = bottom;
+				break;
+			default:
+				cropX = right;
+				cropY = bottom;
+				break;
+			}
+			preprocessor.preprocess(image, cropX, cropY, cropWidth, cropHeight, mirrored, batch, exampleIndex,
+					batchSize);
+		});
+		return batch;
+	}
+
+	/**
+	 * Propagate every view of the images in a single forward pass and average
+	 * the scores of the views of each image.
+	 *
+	 * @param images The images.
+	 * @return The averaged example-major scores, where the score of class c for
+	 *         image i is at index i * classCount + c, or no scores if there are
+	 *         no images.
+	 */
+	public float[] getScores(List<BufferedImage> images) {
+		if (images.isEmpty()) {
+			return new float[0];
+		}
+		int viewCount = getViewCount();
+		int batchSize = images.size() * viewCount;
+		NeuronsActivation inputActivations = InceptionV4Activations.createInputActivations(matrixFactory,
+				InceptionV4Activations.INPUT_NEURONS, createBatch(images), batchSize);
+		float[] viewScores = InceptionV4Activations.getExampleMajorActivations(
+				network.forwardPropagate(inputActivations, context).getOutput(), matrixFactory, null);
+		int classCount = viewScores.length / batchSize;
+		float[] scores = new float[images.size() * classCount];
+		for (int exampleIndex = 0; exampleIndex < batchSize; exampleIndex++) {
+			int offset = exampleIndex / viewCount * classCount;
+			for (int c = 0, i = exampleIndex * classCount; c < classCount; c++, i++) {
+				scores[offset + c] += viewScores[i];
+			}
+		}
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] /= viewCount;
+		}
+		return scores;
+	}
+
+	/**
+	 * Classify images by the averaged scores of their views.
+	 *
+	 * @param images The images.
+	 * @param topK The number of predictions returned for each image.
+	 * @return The top predictions of each image.
+	 */
+	public List<List<InceptionV4Prediction>> classify(List<BufferedImage> images, int topK) {
+		if (images.isEmpty()) {
+			return new ArrayList<>();
+		}
+		float[] scores = getScores(images);
+		int imageCount = images.size();
+		InceptionV4TopKSelector topKSelector = new InceptionV4TopKSelector(topK);
+		int[] topIndices = new int[imageCount * topK];
+		float[] topScores = new float[imageCount * topK];
+		String[] topLabels = new String[imageCount * topK];
+		topKSelector.select(scores, imageCount, scores.length / imageCount, topIndices, topScores);
+		InceptionV4TopKSelector.resolveLabels(topIndices, labels, topLabels);
+		List<List<InceptionV4Prediction>> predictions = new ArrayList<>(imageCount);
+		for (int imageIndex = 0; imageIndex < imageCount; imageIndex++) {
+			List<InceptionV4Prediction> imagePredictions = new ArrayList<>(topK);
+			for (int i = imageIndex * topK; i < (imageIndex + 1) * topK; i++) {
+				imagePredictions.add(new InceptionV4PredictionImpl(topIndices[i], topLabels[i], topScores[i]));
+			}
+			predictions.add(imagePredictions);
+		}
+		return predictions;
+	}
+}
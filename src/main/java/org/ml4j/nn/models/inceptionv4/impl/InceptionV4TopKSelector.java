@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+
+/**
+ * Selects the k highest scoring classes of each example of a batch of network
+ * output activations, using a fixed-size primitive min-heap per row.
+ *
+ * A selector allocates nothing after construction, and is therefore not safe
+ * for concurrent use - each thread should use its own selector.
+ */
+public class InceptionV4TopKSelector {
+
+	private final int k;
+	private final int[] heapIndices;
+	private final float[] heapScores;
+
+	/**
+	 * @param k The number of classes selected for each example.
+	 */
+	public InceptionV4TopKSelector(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be positive");
+		}
+		this.k = k;
+		this.heapIndices = new int[k];
+		this.heapScores = new float[k];
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Select the top k classes of every example of a batch.
+	 *
+	 * @param scores The example-major scores, where the score of class c for
+	 *               example e is at index e * classCount + c.
+	 * @param exampleCount The number of examples.
+	 * @param classCount The number of classes, which must be at least k.
+	 * @param topIndices Populated with the class indices of example e, in
+	 *                   descending order of score, at indices e * k to e * k + k - 1.
+	 * @param topScores Populated with the corresponding scores.
+	 */
+	public void select(float[] scores, int exampleCount, int classCount, int[] topIndices, float[] topScores) {
+		for (int exampleIndex = 0; exampleIndex < exampleCount; exampleIndex++) {
+			selectRow(scores, exampleIndex * classCount, classCount, topIndices, topScores, exampleIndex * k);
+		}
+	}
+
+	/**
+	 * Select the top k classes of a single example.
+	 *
+	 * @param scores The scores.
+	 * @param offset The index of the first score of the example.
+	 * @param classCount The number of classes, which must be at least k.
+	 * @param topIndices Populated with the k class indices, in descending order of score.
+	 * @param topScores Populated with the corresponding scores.
+	 * @param outputOffset The index at which the results are written.
+	 */
+	public void selectRow(float[] scores, int offset, int classCount, int[] topIndices, float[] topScores,
+			int outputOffset) {
+		if (classCount < k) {
+			throw new IllegalArgumentException("Cannot select top " + k + " of " + classCount + " classes");
+		}
+		for (int i = 0; i < k; i++) {
+			heapIndices[i] = i;
+			heapScores[i] = scores[offset + i];
+		}
+		for (int i = k / 2 - 1; i >= 0; i--) {
+			siftDown(i, k);
+		}
+		for (int classIndex = k; classIndex < classCount; classIndex++) {
+			float score = scores[offset + classIndex];
+			if (score > heapScores[0]) {
+				heapIndices[0] = classIndex;
+				heapScores[0] = score;
+				siftDown(0, k);
+			}
+		}
+		// Repeatedly remove the lowest score, filling the output from the end
+		for (int size = k; size > 0; size--) {
+			topIndices[outputOffset + size - 1] = heapIndices[0];
+			topScores[outputOffset + size - 1] = heapScores[0];
+			heapIndices[0] = heapIndices[size - 1];
+			heapScores[0] = heapScores[size - 1];
+			siftDown(0, size - 1);
+		}
+	}
+
+	/**
+	 * Resolve the labels of selected class indices.
+	 *
+	 * @param topIndices The selected class indices.
+	 * @param labels The labels.
+	 * @param topLabels Populated with the label of each selected class index.
+	 */
+	public static void resolveLabels(int[] topIndices, InceptionV4Labels labels, String[] topLabels) {
+		labels.getLabels(topIndices, topLabels);
+	}
+
+	/**
+	 * Resolve the labels of the first selected class indices, such as those
+	 * of a partially filled batch.
+	 *
+	 * @param topIndices The selected class indices.
+	 * @param count The number of selected class indices to resolve.
+	 * @param labels The labels.
+	 * @param topLabels Populated with the label of each of the first count class indices.
+	 */
+	public static void resolveLabels(int[] topIndices, int count, InceptionV4Labels labels, String[] topLabels) {
+		labels.getLabels(topIndices, count, topLabels);
+	}
+
+	private void siftDown(int index, int size) {
+		int parent = index;
+		while (true) {
+			int smallest = parent;
+			int left = 2 * parent + 1;
+			int right = left + 1;
+			if (left < size && isLower(left, smallest)) {
+				smallest = left;
+			}
+			if (right < size && isLower(right, smallest)) {
+				smallest = right;
+			}
+			if (smallest == parent) {
+				return;
+			}
+			int swapIndex = heapIndices[parent];
+			float swapScore = heapScores[parent];
+			heapIndices[parent] = heapIndices[smallest];
+			heapScores[parent] = heapScores[smallest];
+			heapIndices[smallest] = swapIndex;
+			heapScores[smallest] = swapScore;
+			parent = smallest;
+		}
+	}
+
+	private boolean isLower(int first, int second) {
+		// Among equal scores the higher class index is considered lower, so that lower indices are retained
+		return heapScores[first] < heapScores[second]
+				|| (heapScores[first] == heapScores[second] && heapIndices[first] > heapIndices[second]);
+	}
+}
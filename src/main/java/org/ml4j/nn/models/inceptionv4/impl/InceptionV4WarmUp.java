@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Primes a freshly built Inception V4 Network by propagating synthetic
+ * batches at each of the batch sizes it will serve, until the latency of the
+ * most recent passes has stabilised.
+ *
+ * The first passes through a new network pay for JIT compilation and for lazy
+ * allocations within the matrix backend - an instance should only be put
+ * into service once the returned report shows it has stabilised.
+ */
+public class InceptionV4WarmUp {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4WarmUp.class);
+
+	public static final int DEFAULT_MIN_PASSES = 5;
+
+	public static final int DEFAULT_MAX_PASSES = 50;
+
+	public static final int DEFAULT_WINDOW = 5;
+
+	public static final double DEFAULT_TOLERANCE = 0.1;
+
+	private MatrixFactory matrixFactory;
+	private int[] batchSizes;
+	private int minPasses;
+	private int maxPasses;
+	private int window;
+	private double tolerance;
+	private LongSupplier nanoClock;
+
+	/**
+	 * @param matrixFactory The matrix factory.
+	 * @param batchSizes The batch sizes of the deployment.
+	 * @param minPasses The minimum number of passes at each batch size.
+	 * @param maxPasses The maximum number of passes at each batch size.
+	 * @param window The number of most recent passes whose latencies must agree.
+	 * @param tolerance The maximum spread of the latencies within the window,
+	 *                  relative to their median.
+	 */
+	public InceptionV4WarmUp(MatrixFactory matrixFactory, int[] batchSizes, int minPasses, int maxPasses, int window,
+			double tolerance) {
+		this(matrixFactory, batchSizes, minPasses, maxPasses, window, tolerance, System::nanoTime);
+	}
+
+	InceptionV4WarmUp(MatrixFactory matrixFactory, int[] batchSizes, int minPasses, int maxPasses, int window,
+			double tolerance, LongSupplier nanoClock) {
+		// An empty set of batch sizes would report a network as stabilised without a single pass
+		if (batchSizes.length == 0 || Arrays.stream(batchSizes).anyMatch(batchSize -> batchSize < 1)) {
+			throw new IllegalArgumentException("At least one batch size is required, and every batch size must be positive");
+		}
+		if (window < 1 || maxPasses < Math.max(minPasses, window)) {
+			throw new IllegalArgumentException("maxPasses must be at least minPasses and window, and window positive");
+		}
+		if (!(tolerance > 0)) {
+			throw new IllegalArgumentException("tolerance must be positive but was " + tolerance);
+		}
+		this.matrixFactory = matrixFactory;
+		this.batchSizes = Arrays.copyOf(batchSizes, batchSizes.length);
+		this.minPasses = minPasses;
+		this.maxPasses = maxPasses;
+		this.window = window;
+		this.tolerance = tolerance;
+		this.nanoClock = nanoClock;
+	}
+
+	public InceptionV4WarmUp(MatrixFactory matrixFactory, int... batchSizes) {
+		this(matrixFactory, batchSizes, DEFAULT_MIN_PASSES, DEFAULT_MAX_PASSES, DEFAULT_WINDOW, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Propagate synthetic batches through the network at each batch size in turn.
+	 *
+	 * @param network The network to warm up.
+	 * @param context The context the network will be used with.
+	 * @return The warm up report.
+	 */
+	public Report warmUp(SupervisedFeedForwardNeuralNetwork network, FeedForwardNeuralNetworkContext context) {
+		Random random = new Random(0);
+		List<BatchSizeResult> results = new ArrayList<>();
+		for (int batchSize : batchSizes) {
+			float[] batch = new float[InceptionV4Activations.INPUT_FEATURE_COUNT * batchSize];
+			for (int i = 0; i < batch.length; i++) {
+				batch[i] = random.nextFloat() * 2 - 1;
+			}
+			long[] latencies = new long[maxPasses];
+			int passes = 0;
+			boolean stabilised = false;
+			while (passes < maxPasses && !stabilised) {
+				NeuronsActivation input = InceptionV4Activations.createInputActivations(matrixFactory,
+						InceptionV4Activations.INPUT_NEURONS, batch, batchSize);
+				long start = nanoClock.getAsLong();
+				network.forwardPropagate(input, context).getOutput();
+				latencies[passes++] = nanoClock.getAsLong() - start;
+				stabilised = passes >= minPasses && passes >= window && isStable(latencies, passes);
+			}
+			BatchSizeResult result = new BatchSizeResult(batchSize, passes, latencies[0],
+					median(latencies, passes), stabilised);
+			LOGGER.info("Inception V4 warm up: {}", result);
+			results.add(result);
+		}
+		return new Report(results);
+	}
+
+	private boolean isStable(long[] latencies, int passes) {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = passes - window; i < passes; i++) {
+			min = Math.min(min, latencies[i]);
+			max = Math.max(max, latencies[i]);
+		}
+		return max - min <= tolerance * median(latencies, passes);
+	}
+
+	private long median(long[] latencies, int passes) {
+		int from = Math.max(0, passes - window);
+		long[] recent = Arrays.copyOfRange(latencies, from, passes);
+		Arrays.sort(recent);
+		return recent[recent.length / 2];
+	}
+
+	/**
+	 * The outcome of warming up a network at one batch size.
+	 */
+	public static class BatchSizeResult {
+
+		private final int batchSize;
+		private final int passes;
+		private final long firstPassNanos;
+		private final long steadyStateNanos;
+		private final boolean stabilised;
+
+		BatchSizeResult(int batchSize, int passes, long firstPassNanos, long steadyStateNanos, boolean stabilised) {
+			this.batchSize = batchSize;
+			this.passes = passes;
+			this.firstPassNanos = firstPassNanos;
+			this.steadyStateNanos = steadyStateNanos;
+			this.stabilised = stabilised;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public int getPasses() {
+			return passes;
+		}
+
+		public long getFirstPassNanos() {
+			return firstPassNanos;
+		}
+
+		/**
+		 * @return The median latency of the most recent passes.
+		 */
+		public long getSteadyStateNanos() {
+			return steadyStateNanos;
+		}
+
+		public boolean isStabilised() {
+			return stabilised;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("batchSize=%d passes=%d firstPass=%.1fms steadyState=%.1fms stabilised=%s",
+					batchSize, passes, firstPassNanos / 1e6, steadyStateNanos / 1e6, stabilised);
+		}
+	}
+
+	/**
+	 * The outcome of warming up a network at every batch size.
+	 */
+	public static class Report {
+
+		private final List<BatchSizeResult> results;
+
+		Report(List<BatchSizeResult> results) {
+			this.results = Collections.unmodifiableList(results);
+		}
+
+		public List<BatchSizeResult> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return Whether the latency stabilised at every batch size.
+		 */
+		public boolean isStabilised() {
+			return results.stream().allMatch(BatchSizeResult::isStabilised);
+		}
+
+		@Override
+		public String toString() {
+			return results.toString();
+		}
+	}
+}
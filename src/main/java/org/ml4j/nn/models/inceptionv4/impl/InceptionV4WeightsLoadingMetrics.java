@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4WeightsLoadingListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener accumulating the tensors loaded during the construction of a
+ * network, and logging a single summary once construction completes.
+ *
+ * Notifications are forwarded to any added listeners, for example to alert
+ * on slow cold starts.
+ */
+public class InceptionV4WeightsLoadingMetrics implements InceptionV4WeightsLoadingListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4WeightsLoadingMetrics.class);
+
+	private final List<InceptionV4WeightsLoadingListener> listeners;
+
+	private int tensorCount;
+	private long bytesRead;
+	private long decodeNanos;
+	private long matrixConstructionNanos;
+	private long peakUsedMemory;
+	private String slowestTensorName;
+	private long slowestTensorNanos;
+
+	public InceptionV4WeightsLoadingMetrics() {
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * @param listener A listener to forward notifications to.
+	 */
+	public void addListener(InceptionV4WeightsLoadingListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Clear the accumulated metrics, before constructing another network.
+	 */
+	public synchronized void reset() {
+		tensorCount = 0;
+		bytesRead = 0;
+		decodeNanos = 0;
+		matrixConstructionNanos = 0;
+		peakUsedMemory = 0;
+		slowestTensorName = null;
+		slowestTensorNanos = 0;
+	}
+
+	@Override
+	public void onTensorLoaded(String tensorName, long tensorBytesRead, long tensorDecodeNanos,
+			long tensorMatrixConstructionNanos) {
+		Runtime runtime = Runtime.getRuntime();
+		long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+		synchronized (this) {
+			tensorCount++;
+			bytesRead += tensorBytesRead;
+			decodeNanos += tensorDecodeNanos;
+			matrixConstructionNanos += tensorMatrixConstructionNanos;
+			peakUsedMemory = Math.max(peakUsedMemory, usedMemory);
+			if (tensorDecodeNanos + tensorMatrixConstructionNanos > slowestTensorNanos) {
+				slowestTensorName = tensorName;
+				slowestTensorNanos = tensorDecodeNanos + tensorMatrixConstructionNanos;
+			}
+		}
+		for (InceptionV4WeightsLoadingListener listener : listeners) {
+			listener.onTensorLoaded(tensorName, tensorBytesRead, tensorDecodeNanos, tensorMatrixConstructionNanos);
+		}
+	}
+
+	@Override
+	public void onNetworkConstructed(String networkName, long constructionNanos) {
+		LOGGER.info("Constructed {} in {} ms, loading {}", networkName, constructionNanos / 1000000, this);
+		for (InceptionV4WeightsLoadingListener listener : listeners) {
+			listener.onNetworkConstructed(networkName, constructionNanos);
+		}
+	}
+
+	public synchronized int getTensorCount() {
+		return tensorCount;
+	}
+
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	public synchronized long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	public synchronized long getMatrixConstructionNanos() {
+		return matrixConstructionNanos;
+	}
+
+	/**
+	 * @return The highest used heap memory sampled as the tensors were loaded.
+	 */
+	public synchronized long getPeakUsedMemory() {
+		return peakUsedMemory;
+	}
+
+	public synchronized String getSlowestTensorName() {
+		return slowestTensorName;
+	}
+
+	public synchronized long getSlowestTensorNanos() {
+		return slowestTensorNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"%d tensors (%d bytes): decode %d ms, matrix construction %d ms, peak used memory %d bytes,"
+						+ " slowest tensor %s (%d ms)",
+				tensorCount, bytesRead, decodeNanos / 1000000, matrixConstructionNanos / 1000000, peakUsedMemory,
+				slowestTensorName, slowestTensorNanos / 1000000);
+	}
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Lists every tensor of a weights store with its data type, shape, stored
+ * byte length and CRC32 checksum, so that a corrupt or truncated store is
+ * detected before any matrices are built from it.
+ *
+ * The manifest is a UTF-8 text file with a tab separated line per tensor:
+ *
+ * <pre>
+ * name dataType shape byteLength crc32
+ * conv2d_1_kernel0 FLOAT32 32x27 3456 9a3c01f2
+ * </pre>
+ *
+ * Verification checksums the tensors in parallel - CRC32 is hardware
+ * accelerated, so verifying the full pretrained weights takes a fraction of
+ * the time taken to build the network from them.
+ */
+public class InceptionV4WeightsManifest {
+
+	/**
+	 * The suffix appended to the path of a packed weights file to locate its manifest.
+	 */
+	public static final String PACKED_MANIFEST_SUFFIX = ".manifest";
+
+	/**
+	 * The name of the manifest file in the directory of serialized tensors,
+	 * whether on the file system or on the classpath.
+	 */
+	public static final String SERIALIZED_MANIFEST_FILE_NAME = "manifest.tsv";
+
+	/**
+	 * The data type recorded for a Java serialized float[] tensor.
+	 */
+	public static final String SERIALIZED_FLOAT32 = "SERIALIZED_FLOAT32";
+
+	private static final String HEADER = "# name\tdataType\tshape\tbyteLength\tcrc32";
+
+	private final Map<String, Entry> entries;
+
+	public InceptionV4WeightsManifest(Collection<Entry> entries) {
+		this.entries = new LinkedHashMap<>();
+		for (Entry entry : entries) {
+			this.entries.put(entry.getName(), entry);
+		}
+	}
+
+	/**
+	 * Create the manifest of a packed weights file.
+	 *
+	 * @param packedWeights The packed weights.
+	 * @return The manifest.
+	 */
+	public static InceptionV4WeightsManifest create(PackedInceptionV4Weights packedWeights) {
+		return new InceptionV4WeightsManifest(getPackedTensors(packedWeights).parallelStream()
+				.map(tensor -> new Entry(tensor.getName(), tensor.getDataType().name(), tensor.getShape(),
+						tensor.getByteLength(), checksum(packedWeights.getData(tensor))))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Create the manifest of a directory of serialized float[] tensors.
+	 *
+	 * @param tensorDirectory The directory of serialized tensors.
+	 * @return The manifest.
+	 * @throws IOException In the event that the directory cannot be read.
+	 */
+	public static InceptionV4WeightsManifest create(Path tensorDirectory) throws IOException {
+		List<Path> tensorPaths;
+		try (Stream<Path> paths = Files.list(tensorDirectory)) {
+			tensorPaths = paths.filter(path -> path.getFileName().toString()
+					.endsWith(InceptionV4WeightsResources.SERIALIZED_EXTENSION)).sorted()
+					.collect(Collectors.toList());
+		}
+		try {
+			return new InceptionV4WeightsManifest(
+					tensorPaths.parallelStream().map(InceptionV4WeightsManifest::createSerializedEntry)
+							.collect(Collectors.toList()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Create the manifest of the serialized float[] tensors visible to a class
+	 * loader, such as those packaged in the inception-v4-weights jars.
+	 *
+	 * @param classLoader The class loader providing the tensors.
+	 * @return The manifest.
+	 * @throws IOException In the event that the tensors cannot be read.
+	 */
+	public static InceptionV4WeightsManifest create(ClassLoader classLoader) throws IOException {
+		List<String> tensorNames = InceptionV4WeightsResources.getSerializedTensorNames(classLoader);
+		try {
+			return new InceptionV4WeightsManifest(tensorNames.parallelStream()
+					.map(name -> createSerializedEntry(classLoader, name)).collect(Collectors.toList()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static Entry createSerializedEntry(Path tensorPath) {
+		String fileName = tensorPath.getFileName().toString();
+		String name = fileName.substring(0,
+				fileName.length() - InceptionV4WeightsResources.SERIALIZED_EXTENSION.length());
+		try (FileChannel channel = FileChannel.open(tensorPath, StandardOpenOption.READ)) {
+			return createSerializedEntry(name, channel.map(MapMode.READ_ONLY, 0, channel.size()), tensorPath);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Entry createSerializedEntry(ClassLoader classLoader, String name) {
+		String resource = InceptionV4WeightsResources.getSerializedTensorDirectory() + "/" + name
+				+ InceptionV4WeightsResources.SERIALIZED_EXTENSION;
+		try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+			if (inputStream == null) {
+				throw new IOException("Weights resource not found:" + resource);
+			}
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1 << 16];
+			for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+				data.write(buffer, 0, read);
+			}
+			return createSerializedEntry(name, ByteBuffer.wrap(data.toByteArray()), Paths.get(resource));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Entry createSerializedEntry(String name, ByteBuffer data, Path tensorPath) throws IOException {
+		int length = FileSystemInceptionV4WeightsLoaderImpl.parseHeader(data.duplicate(), tensorPath);
+		return new Entry(name, SERIALIZED_FLOAT32, new int[] { length }, data.remaining(), checksum(data));
+	}
+
+	/**
+	 * Read a manifest file.
+	 *
+	 * @param path The path of the manifest.
+	 * @return The manifest.
+	 * @throws IOException In the event that the manifest cannot be read or is malformed.
+	 */
+	public static InceptionV4WeightsManifest read(Path path) throws IOException {
+		return read(Files.readAllLines(path, StandardCharsets.UTF_8), path.toString());
+	}
+
+	/**
+	 * Read a manifest resource, such as one alongside the serialized tensors
+	 * on the classpath.
+	 *
+	 * @param url The location of the manifest.
+	 * @return The manifest.
+	 * @throws IOException In the event that the manifest cannot be read or is malformed.
+	 */
+	public static InceptionV4WeightsManifest read(URL url) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+			return read(reader.lines().collect(Collectors.toList()), url.toString());
+		}
+	}
+
+	private static InceptionV4WeightsManifest read(List<String> lines, String location) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		int lineNumber = 0;
+		for (String line : lines) {
+			lineNumber++;
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\t");
+			try {
+				if (fields.length != 5) {
+					throw new IllegalArgumentException("expected 5 fields but found " + fields.length);
+				}
+				String[] dimensions = fields[2].split("x");
+				int[] shape = new int[dimensions.length];
+				for (int i = 0; i < shape.length; i++) {
+					shape[i] = Integer.parseInt(dimensions[i]);
+				}
+				entries.add(new Entry(fields[0], fields[1], shape, Long.parseLong(fields[3]),
+						Long.parseLong(fields[4], 16)));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed line " + lineNumber + " of weights manifest " + location + ": "
+						+ e.getMessage(), e);
+			}
+		}
+		return new InceptionV4WeightsManifest(entries);
+	}
+
+	/**
+	 * @param path The path to write the manifest to.
+	 * @throws IOException In the event that the manifest cannot be written.
+	 */
+	public void write(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Entry entry : entries.values()) {
+				writer.write(formatEntry(entry));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * @return The CRC32 of the entries of the manifest, in name order, which
+	 *         identifies the set of weights the manifest describes.
+	 */
+	public long getChecksum() {
+		CRC32 checksum = new CRC32();
+		entries.values().stream().sorted((first, second) -> first.getName().compareTo(second.getName()))
+				.forEach(entry -> checksum.update((formatEntry(entry) + "\n").getBytes(StandardCharsets.UTF_8)));
+		return checksum.getValue();
+	}
+
+	private static String formatEntry(Entry entry) {
+		return entry.getName() + "\t" + entry.getDataType() + "\t" + formatShape(entry.getShape()) + "\t"
+				+ entry.getByteLength() + "\t" + Long.toHexString(entry.getChecksum());
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * @param name The name of the tensor.
+	 * @return The entry of the tensor, or null if the tensor is not listed.
+	 */
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Verify that a packed weights file holds exactly the listed tensors,
+	 * checksumming the tensors in parallel.
+	 *
+	 * @param packedWeights The packed weights.
+	 * @throws IOException Describing every tensor which is missing, unlisted or
+	 *                     does not match its entry.
+	 */
+	public void verify(PackedInceptionV4Weights packedWeights) throws IOException {
+		checkEntries(create(packedWeights).getEntries(), "packed weights");
+	}
+
+	/**
+	 * Verify that a directory of serialized tensors holds exactly the listed
+	 * tensors, checksumming the tensors in parallel.
+	 *
+	 * @param tensorDirectory The directory of serialized tensors.
+	 * @throws IOException Describing every tensor which is missing, unlisted or
+	 *                     does not match its entry.
+	 */
+	public void verify(Path tensorDirectory) throws IOException {
+		checkEntries(create(tensorDirectory).getEntries(), tensorDirectory.toString());
+	}
+
+	/**
+	 * Verify that the serialized tensors visible to a class loader are exactly
+	 * the listed tensors, checksumming the tensors in parallel.
+	 *
+	 * @param classLoader The class loader providing the tensors.
+	 * @throws IOException Describing every tensor which is missing, unlisted or
+	 *                     does not match its entry.
+	 */
+	public void verify(ClassLoader classLoader) throws IOException {
+		checkEntries(create(classLoader).getEntries(), "classpath " + InceptionV4WeightsResources.WEIGHTS_PATH);
+	}
+
+	private void checkEntries(Collection<Entry> actualEntries, String store) throws IOException {
+		List<String> failures = new ArrayList<>();
+		Map<String, Entry> unlisted = new LinkedHashMap<>();
+		for (Entry actual : actualEntries) {
+			unlisted.put(actual.getName(), actual);
+		}
+		for (Entry expected : entries.values()) {
+			Entry actual = unlisted.remove(expected.getName());
+			if (actual == null) {
+				failures.add(expected.getName() + " is missing");
+			} else if (!expected.getDataType().equals(actual.getDataType())) {
+				failures.add(expected.getName() + " has data type " + actual.getDataType() + " but "
+						+ expected.getDataType() + " is listed");
+			} else if (!Arrays.equals(expected.getShape(), actual.getShape())) {
+				failures.add(expected.getName() + " has shape " + formatShape(actual.getShape()) + " but "
+						+ formatShape(expected.getShape()) + " is listed");
+			} else if (expected.getByteLength() != actual.getByteLength()) {
+				failures.add(expected.getName() + " has " + actual.getByteLength() + " bytes but "
+						+ expected.getByteLength() + " are listed");
+			} else if (expected.getChecksum() != actual.getChecksum()) {
+				failures.add(expected.getName() + " has checksum " + Long.toHexString(actual.getChecksum())
+						+ " but " + Long.toHexString(expected.getChecksum()) + " is listed");
+			}
+		}
+		for (String name : unlisted.keySet()) {
+			failures.add(name + " is not listed");
+		}
+		if (!failures.isEmpty()) {
+			throw new IOException("Weights store " + store + " does not match its manifest: "
+					+ String.join(", ", failures));
+		}
+	}
+
+	/**
+	 * Check the checksum of the stored bytes of a tensor, computed as the
+	 * tensor is read, against its listed checksum.
+	 *
+	 * @param name The name of the tensor.
+	 * @param checksum The CRC32 of the stored bytes of the tensor.
+	 * @throws IOException In the event that the tensor is not listed or its
+	 *                     checksum does not match.
+	 */
+	public void checkChecksum(String name, long checksum) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			throw new IOException("Tensor " + name + " is not listed in the weights manifest");
+		}
+		if (entry.getChecksum() != checksum) {
+			throw new IOException("Tensor " + name + " has checksum " + Long.toHexString(checksum) + " but "
+					+ Long.toHexString(entry.getChecksum()) + " is listed");
+		}
+	}
+
+	/**
+	 * Check that the shape requested for a tensor agrees with its listed shape.
+	 *
+	 * @param name The name of the tensor.
+	 * @param rows The number of rows requested.
+	 * @param columns The number of columns requested.
+	 */
+	public void checkShape(String name, int rows, int columns) {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			throw new IllegalArgumentException("Tensor " + name + " is not listed in the weights manifest");
+		}
+		int[] shape = entry.getShape();
+		boolean matches = shape.length == 2 ? shape[0] == rows && shape[1] == columns
+				: entry.getElementCount() == (long) rows * columns;
+		if (!matches) {
+			throw new IllegalStateException("Tensor " + name + " has shape " + formatShape(shape)
+					+ " but a " + rows + " x " + columns + " matrix was requested");
+		}
+	}
+
+	/**
+	 * Write the manifest of a packed weights file, or of a directory of
+	 * serialized tensors, to the location its loader reads it from.
+	 *
+	 * Usage: InceptionV4WeightsManifest &lt;packedWeightsFile|serializedTensorDirectory&gt;
+	 *
+	 * @param args The command line arguments.
+	 * @throws IOException In the event that the manifest cannot be created.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			throw new IllegalArgumentException(
+					"Usage: InceptionV4WeightsManifest <packedWeightsFile|serializedTensorDirectory>");
+		}
+		Path path = Paths.get(args[0]);
+		if (Files.isDirectory(path)) {
+			create(path).write(path.resolve(SERIALIZED_MANIFEST_FILE_NAME));
+		} else {
+			PackedInceptionV4WeightsConverter.writeManifest(path);
+		}
+	}
+
+	private static List<PackedInceptionV4Weights.Tensor> getPackedTensors(PackedInceptionV4Weights packedWeights) {
+		List<PackedInceptionV4Weights.Tensor> tensors = new ArrayList<>();
+		for (String name : packedWeights.getTensorNames()) {
+			tensors.add(packedWeights.getTensor(name));
+			PackedInceptionV4Weights.Tensor scales = packedWeights
+					.getTensor(name + PackedInceptionV4Weights.SCALES_SUFFIX);
+			if (scales != null) {
+				tensors.add(scales);
+			}
+		}
+		return tensors;
+	}
+
+	private static long checksum(ByteBuffer data) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(data);
+		return crc32.getValue();
+	}
+
+	private static String formatShape(int[] shape) {
+		return Arrays.stream(shape).mapToObj(Integer::toString).collect(Collectors.joining("x"));
+	}
+
+	/**
+	 * The listing of a single tensor.
+	 */
+	public static class Entry {
+
+		private final String name;
+		private final String dataType;
+		private final int[] shape;
+		private final long byteLength;
+		private final long checksum;
+
+		public Entry(String name, String dataType, int[] shape, long byteLength, long checksum) {
+			this.name = Objects.requireNonNull(name);
+			this.dataType = Objects.requireNonNull(dataType);
+			this.shape = Arrays.copyOf(shape, shape.length);
+			this.byteLength = byteLength;
+			this.checksum = checksum;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getDataType() {
+			return dataType;
+		}
+
+		public int[] getShape() {
+			return Arrays.copyOf(shape, shape.length);
+		}
+
+		public long getByteLength() {
+			return byteLength;
+		}
+
+		/**
+		 * @return The CRC32 of the stored bytes of the tensor.
+		 */
+		public long getChecksum() {
+			return checksum;
+		}
+
+		public long getElementCount() {
+			long elementCount = 1;
+			for (int dimension : shape) {
+				elementCount *= dimension;
+			}
+			return elementCount;
+		}
+	}
+}
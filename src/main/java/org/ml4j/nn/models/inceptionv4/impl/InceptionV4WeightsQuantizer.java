@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Post-training int8 quantisation of the pretrained Inception V4 weights.
+ *
+ * The pretrained network is built once from the source loader, recording the
+ * shape of every tensor it requests. Each convolution kernel is then written
+ * to a packed weights file as int8 with a symmetric scale per output channel,
+ * and every other tensor as float32. Finally a network built from the packed
+ * file is compared with the pretrained network over a calibration set.
+ *
+ * The int8 kernels are dequantised as they are loaded, so the saving is in
+ * the size of the weights file and its mapping rather than in the matrices.
+ */
+public class InceptionV4WeightsQuantizer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InceptionV4WeightsQuantizer.class);
+
+	private DefaultSessionFactory sessionFactory;
+	private AbstractInceptionV4WeightsLoader sourceWeightsLoader;
+	private InceptionV4Labels labels;
+	private MatrixFactory matrixFactory;
+
+	public InceptionV4WeightsQuantizer(DefaultSessionFactory sessionFactory,
+			AbstractInceptionV4WeightsLoader sourceWeightsLoader, InceptionV4Labels labels,
+			MatrixFactory matrixFactory) {
+		this.sessionFactory = sessionFactory;
+		this.sourceWeightsLoader = sourceWeightsLoader;
+		this.labels = labels;
+		this.matrixFactory = matrixFactory;
+	}
+
+	public InceptionV4WeightsQuantizer(DefaultSessionFactory sessionFactory, MatrixFactory matrixFactory,
+			ClassLoader classLoader) throws IOException {
+		this(sessionFactory, new PretrainedInceptionV4WeightsLoaderImpl(classLoader, matrixFactory),
+				new DefaultInceptionV4Labels(classLoader), matrixFactory);
+	}
+
+	/**
+	 * Quantise the pretrained weights and measure the effect on accuracy.
+	 *
+	 * @param outputPath The path of the packed weights file to write.
+	 * @param context The prediction context used for both networks.
+	 * @param calibrationImages The calibration images.
+	 * @param expectedLabelIndexOfId The true label index of each image id, or
+	 *                               null if the calibration images are unlabelled.
+	 * @param batchSize The number of images propagated together.
+	 * @return The comparison of the quantised network with the pretrained network.
+	 * @throws IOException In the event that the weights cannot be written or an
+	 *                     image cannot be read.
+	 */
+	public InceptionV4AccuracyComparison.Report quantize(Path outputPath, FeedForwardNeuralNetworkContext context,
+			Iterator<InceptionV4InputImage> calibrationImages, ToIntFunction<String> expectedLabelIndexOfId,
+			int batchSize) throws IOException {
+
+		ShapeRecordingInceptionV4WeightsLoader recordingLoader = new ShapeRecordingInceptionV4WeightsLoader(
+				sourceWeightsLoader);
+		SupervisedFeedForwardNeuralNetwork referenceNetwork = createNetwork(recordingLoader, context);
+
+		writeQuantizedWeights(outputPath, recordingLoader);
+		PackedInceptionV4WeightsConverter.writeManifest(outputPath);
+
+		SupervisedFeedForwardNeuralNetwork quantizedNetwork = createNetwork(
+				new PackedInceptionV4WeightsLoaderImpl(outputPath, matrixFactory), context);
+
+		InceptionV4AccuracyComparison.Report report = new InceptionV4AccuracyComparison(matrixFactory, batchSize)
+				.compare(referenceNetwork, context, quantizedNetwork, context, calibrationImages,
+						expectedLabelIndexOfId);
+		LOGGER.info("Int8 Inception V4 weights compared with float32: {}", report);
+		return report;
+	}
+
+	/**
+	 * Build the pretrained Inception V4 Network from a weights loader.
+	 */
+	SupervisedFeedForwardNeuralNetwork createNetwork(InceptionV4WeightsLoader weightsLoader,
+			FeedForwardNeuralNetworkContext context) throws IOException {
+		return new DefaultInceptionV4Factory(sessionFactory, weightsLoader, labels).createInceptionV4(context);
+	}
+
+	private void writeQuantizedWeights(Path outputPath, ShapeRecordingInceptionV4WeightsLoader recordingLoader)
+			throws IOException {
+		long float32Bytes = 0;
+		long packedBytes = 0;
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(outputPath)) {
+			for (Map.Entry<String, int[]> tensorShape : recordingLoader.getTensorShapes().entrySet()) {
+				String name = tensorShape.getKey();
+				int rows = tensorShape.getValue()[0];
+				int columns = tensorShape.getValue()[1];
+				float[] values = sourceWeightsLoader.loadWeights(name);
+				float32Bytes += values.length * 4L;
+				if (recordingLoader.getConvolutionKernelNames().contains(name)) {
+					writer.writeQuantizedTensor(name, rows, columns, values);
+					packedBytes += values.length + rows * 4L;
+				} else {
+					writer.writeTensor(name, new int[] { rows, columns }, values);
+					packedBytes += values.length * 4L;
+				}
+			}
+			writer.commit();
+		}
+		LOGGER.info("Quantised {} Inception V4 convolution kernels, reducing weights from {} to {} bytes",
+				recordingLoader.getConvolutionKernelNames().size(), float32Bytes, packedBytes);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Locates the serialized pretrained Inception V4 tensors provided by the
+ * inception-v4-weights jars.
+ */
+final class InceptionV4WeightsResources {
+
+	static final String WEIGHTS_PATH = "inceptionv4javaweights";
+
+	static final String SERIALIZED_EXTENSION = ".ser";
+
+	private InceptionV4WeightsResources() {
+	}
+
+	/**
+	 * @return The path of the directory containing the serialized float[] tensors.
+	 */
+	static String getSerializedTensorDirectory() {
+		long uid = ObjectStreamClass.lookup(float[].class).getSerialVersionUID();
+		return WEIGHTS_PATH + "/" + float[].class.getName() + "/" + uid;
+	}
+
+	/**
+	 * List the names of all serialized tensors visible to the class loader,
+	 * whether they are packaged in jars or in exploded directories.
+	 *
+	 * @param classLoader The class loader providing the weights.
+	 * @return The sorted names of the tensors.
+	 * @throws IOException In the event that the resources cannot be listed.
+	 */
+	static List<String> getSerializedTensorNames(ClassLoader classLoader) throws IOException {
+		String directory = getSerializedTensorDirectory();
+		SortedSet<String> tensorNames = new TreeSet<>();
+		Enumeration<URL> urls = classLoader.getResources(directory);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			if ("file".equals(url.getProtocol())) {
+				addFileTensorNames(url, tensorNames);
+			} else if ("jar".equals(url.getProtocol())) {
+				addJarTensorNames(url, directory + "/", tensorNames);
+			} else {
+				throw new IOException("Unsupported weights location:" + url);
+			}
+		}
+		return new ArrayList<>(tensorNames);
+	}
+
+	private static void addFileTensorNames(URL url, SortedSet<String> tensorNames) throws IOException {
+		File[] files;
+		try {
+			files = new File(url.toURI()).listFiles();
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+		if (files != null) {
+			for (File file : files) {
+				String fileName = file.getName();
+				if (file.isFile() && fileName.endsWith(SERIALIZED_EXTENSION)) {
+					tensorNames.add(fileName.substring(0, fileName.length() - SERIALIZED_EXTENSION.length()));
+				}
+			}
+		}
+	}
+
+	private static void addJarTensorNames(URL url, String prefix, SortedSet<String> tensorNames) throws IOException {
+		URLConnection connection = url.openConnection();
+		connection.setUseCaches(false);
+		try (JarFile jarFile = ((JarURLConnection) connection).getJarFile()) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				String entryName = entries.nextElement().getName();
+				if (entryName.startsWith(prefix) && entryName.endsWith(SERIALIZED_EXTENSION)
+						&& entryName.indexOf('/', prefix.length()) == -1) {
+					tensorNames.add(entryName.substring(prefix.length(),
+							entryName.length() - SERIALIZED_EXTENSION.length()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.axons.BiasVector;
+import org.ml4j.nn.axons.WeightsMatrix;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Factory;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4MetricsSink;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+
+/**
+ * Factory decorator which instruments the forward propagations of every
+ * network it creates, reporting each under the name of the network.
+ *
+ * The networks are built within ml4j sessions which expose no hooks into
+ * their individual blocks - to time the backbone and tail separately,
+ * compose the networks from createInceptionV4WithoutTail and
+ * createInceptionV4Tail. With a null metrics sink the networks are returned
+ * uninstrumented, at no cost.
+ */
+public class InstrumentedInceptionV4Factory implements InceptionV4Factory {
+
+	private InceptionV4Factory factory;
+	private InceptionV4MetricsSink metricsSink;
+
+	/**
+	 * @param factory The factory creating the networks.
+	 * @param metricsSink The metrics sink, or null to disable instrumentation.
+	 */
+	public InstrumentedInceptionV4Factory(InceptionV4Factory factory, InceptionV4MetricsSink metricsSink) {
+		this.factory = factory;
+		this.metricsSink = metricsSink;
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4(FeedForwardNeuralNetworkContext trainingContext)
+			throws IOException {
+		return InstrumentedInceptionV4Network.instrument(factory.createInceptionV4(trainingContext), "inceptionV4",
+				metricsSink);
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4(FeedForwardNeuralNetworkContext trainingContext,
+			float regularisationLambda, float dropoutKeepProbability) throws IOException {
+		return InstrumentedInceptionV4Network.instrument(
+				factory.createInceptionV4(trainingContext, regularisationLambda, dropoutKeepProbability),
+				"inceptionV4WithRegularisation", metricsSink);
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4WithCustomTail(
+			FeedForwardNeuralNetworkContext trainingContext, int outputNeurons, WeightsMatrix weights,
+			BiasVector bias, float regularisationLambda, float dropoutKeepProbability) throws IOException {
+		return InstrumentedInceptionV4Network.instrument(factory.createInceptionV4WithCustomTail(trainingContext,
+				outputNeurons, weights, bias, regularisationLambda, dropoutKeepProbability),
+				"inceptionV4WithCustomTail", metricsSink);
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4Tail(FeedForwardNeuralNetworkContext trainingContext,
+			int outputNeuronCount, WeightsMatrix weights, BiasVector biases, float regularisationLambda,
+			float dropoutKeepProbability) throws IOException {
+		return InstrumentedInceptionV4Network.instrument(factory.createInceptionV4Tail(trainingContext,
+				outputNeuronCount, weights, biases, regularisationLambda, dropoutKeepProbability),
+				"inceptionV4Tail", metricsSink);
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork createInceptionV4WithoutTail(
+			FeedForwardNeuralNetworkContext trainingContext) throws IOException {
+		return InstrumentedInceptionV4Network.instrument(factory.createInceptionV4WithoutTail(trainingContext),
+				"inceptionV4WithoutTail", metricsSink);
+	}
+
+	@Override
+	public InceptionV4Labels createInceptionV4Labels() throws IOException {
+		return factory.createInceptionV4Labels();
+	}
+}
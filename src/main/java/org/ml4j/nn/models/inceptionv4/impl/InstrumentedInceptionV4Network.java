@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.ForwardPropagation;
+import org.ml4j.nn.models.inceptionv4.InceptionV4MetricsSink;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+
+/**
+ * A SupervisedFeedForwardNeuralNetwork which delegates to a network,
+ * reporting the wall time, the bytes allocated by the propagating thread and
+ * the activation sizes of every forward propagation to a metrics sink.
+ *
+ * Every other method is passed straight through to the network. An
+ * instrumented network serializes as the network itself, so that snapshots
+ * of it restore the uninstrumented network.
+ */
+final class InstrumentedInceptionV4Network implements SupervisedFeedForwardNeuralNetwork {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	private static final boolean ALLOCATION_MEASURABLE = isAllocationMeasurable();
+
+	private final SupervisedFeedForwardNeuralNetwork network;
+	private final String componentName;
+	private final transient InceptionV4MetricsSink metricsSink;
+
+	private InstrumentedInceptionV4Network(SupervisedFeedForwardNeuralNetwork network, String componentName,
+			InceptionV4MetricsSink metricsSink) {
+		this.network = network;
+		this.componentName = componentName;
+		this.metricsSink = metricsSink;
+	}
+
+	/**
+	 * @param network The network to instrument.
+	 * @param componentName The name the network is reported under.
+	 * @param metricsSink The metrics sink, or null to disable instrumentation.
+	 * @return The instrumented network, or the network itself if instrumentation is disabled.
+	 */
+	static SupervisedFeedForwardNeuralNetwork instrument(SupervisedFeedForwardNeuralNetwork network,
+			String componentName, InceptionV4MetricsSink metricsSink) {
+		if (metricsSink == null) {
+			return network;
+		}
+		return new InstrumentedInceptionV4Network(network, componentName, metricsSink);
+	}
+
+	@Override
+	public ForwardPropagation forwardPropagate(NeuronsActivation inputActivation,
+			FeedForwardNeuralNetworkContext context) {
+		long startAllocatedBytes = getAllocatedBytes();
+		long start = System.nanoTime();
+		ForwardPropagation forwardPropagation = network.forwardPropagate(inputActivation, context);
+		long wallTimeNanos = System.nanoTime() - start;
+		long allocatedBytes = ALLOCATION_MEASURABLE ? getAllocatedBytes() - startAllocatedBytes : -1;
+		NeuronsActivation output = forwardPropagation.getOutput();
+		metricsSink.recordForwardPropagation(componentName, wallTimeNanos, allocatedBytes,
+				inputActivation.getFeatureCount(), output.getFeatureCount(), inputActivation.getExampleCount());
+		return forwardPropagation;
+	}
+
+	@Override
+	public void train(NeuronsActivation trainingDataActivations, NeuronsActivation trainingLabelActivations,
+			FeedForwardNeuralNetworkContext trainingContext) {
+		network.train(trainingDataActivations, trainingLabelActivations, trainingContext);
+	}
+
+	@Override
+	public float getClassificationAccuracy(NeuronsActivation inputActivations,
+			NeuronsActivation desiredClassificationActivations, FeedForwardNeuralNetworkContext context) {
+		return network.getClassificationAccuracy(inputActivations, desiredClassificationActivations, context);
+	}
+
+	@Override
+	public float getAverageCost(NeuronsActivation inputActivations, NeuronsActivation desiredOutputActivations,
+			FeedForwardNeuralNetworkContext context) {
+		return network.getAverageCost(inputActivations, desiredOutputActivations, context);
+	}
+
+	@Override
+	public FeedForwardNeuralNetworkContext getLastEpochTrainingContext() {
+		return network.getLastEpochTrainingContext();
+	}
+
+	@Override
+	public SupervisedFeedForwardNeuralNetwork dup() {
+		return instrument(network.dup(), componentName, metricsSink);
+	}
+
+	private Object writeReplace() {
+		return network;
+	}
+
+	private static boolean isAllocationMeasurable() {
+		if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+			return threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled();
+		}
+		return false;
+	}
+
+	private static long getAllocatedBytes() {
+		if (!ALLOCATION_MEASURABLE) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
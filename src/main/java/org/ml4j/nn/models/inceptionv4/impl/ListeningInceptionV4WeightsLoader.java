@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.Collection;
+
+import org.ml4j.nn.models.inceptionv4.InceptionV4WeightsLoadingListener;
+
+/**
+ * Delegates to a source loader, reporting the tensors loaded through it to a
+ * listener of its own, so that concurrent network builds sharing the source
+ * loader can each collect their own metrics without modifying the source.
+ */
+class ListeningInceptionV4WeightsLoader extends AbstractInceptionV4WeightsLoader {
+
+	private static final long serialVersionUID = 1L;
+
+	private AbstractInceptionV4WeightsLoader sourceWeightsLoader;
+
+	ListeningInceptionV4WeightsLoader(AbstractInceptionV4WeightsLoader sourceWeightsLoader,
+			InceptionV4WeightsLoadingListener weightsLoadingListener) {
+		super(sourceWeightsLoader.matrixFactory);
+		this.sourceWeightsLoader = sourceWeightsLoader;
+		setWeightsLoadingListener(weightsLoadingListener);
+	}
+
+	@Override
+	protected float[] loadWeights(String name) {
+		return sourceWeightsLoader.loadWeights(name);
+	}
+
+	@Override
+	protected float[] loadWeights(String name, int expectedLength) {
+		return sourceWeightsLoader.loadWeights(name, expectedLength);
+	}
+
+	@Override
+	public Collection<String> getTensorNames() {
+		return sourceWeightsLoader.getTensorNames();
+	}
+
+	@Override
+	protected InceptionV4WeightsManifest getManifest() {
+		return sourceWeightsLoader.getManifest();
+	}
+
+	@Override
+	protected long getStoredByteLength(String name, float[] values) {
+		return sourceWeightsLoader.getStoredByteLength(name, values);
+	}
+}
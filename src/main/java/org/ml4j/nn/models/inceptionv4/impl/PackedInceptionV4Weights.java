@@ -0,0 +1,297 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only view of a packed Inception V4 weights file, memory-mapped in
+ * its entirety.
+ *
+ * The packed file is little-endian and laid out as a fixed size header, the
+ * tensor data (each tensor aligned to {@link #ALIGNMENT} bytes) and finally
+ * the tensor index:
+ *
+ * <pre>
+ * header : int magic, int version, int tensorCount, int reserved, long indexOffset
+ * index  : per tensor - short nameLength, byte[] utf8Name, byte dataType, byte rank,
+ *          int[rank] shape, long dataOffset, long byteLength
+ * </pre>
+ *
+ * An {@link PackedTensorDataType#INT8} tensor of shape [rows, columns] is
+ * accompanied by a float tensor of its per-row scales, named with the
+ * {@link #SCALES_SUFFIX}, and is dequantised as it is read.
+ */
+public class PackedInceptionV4Weights {
+
+	/**
+	 * "IV4W" when read as little-endian bytes.
+	 */
+	public static final int MAGIC = 0x57345649;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_LENGTH = 24;
+
+	public static final int ALIGNMENT = 64;
+
+	public static final String SCALES_SUFFIX = ".scales";
+
+	private final Path path;
+	private final ByteBuffer buffer;
+	private final Map<String, Tensor> tensorsByName;
+
+	private PackedInceptionV4Weights(Path path, ByteBuffer buffer) throws IOException {
+		this.path = path;
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.tensorsByName = readIndex();
+	}
+
+	/**
+	 * Memory-map a packed weights file.
+	 *
+	 * @param path The path of the packed weights file.
+	 * @return The packed weights.
+	 * @throws IOException In the event that the file cannot be mapped or is not a
+	 *                     valid packed weights file.
+	 */
+	public static PackedInceptionV4Weights open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Packed weights files are limited to " + Integer.MAX_VALUE
+						+ " bytes but " + path + " has " + channel.size());
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			return new PackedInceptionV4Weights(path, buffer);
+		}
+	}
+
+	private Map<String, Tensor> readIndex() throws IOException {
+		if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a packed Inception V4 weights file:" + path);
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported packed weights version " + version + " in file:" + path);
+		}
+		int tensorCount = buffer.getInt(8);
+		long indexOffset = buffer.getLong(16);
+		if (tensorCount < 0) {
+			throw new IOException("Negative tensor count " + tensorCount + " in file:" + path);
+		}
+		if (indexOffset < HEADER_LENGTH || indexOffset > buffer.capacity()) {
+			throw new IOException("Index offset " + indexOffset + " is outside file:" + path);
+		}
+		ByteBuffer index = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		index.position((int) indexOffset);
+		Map<String, Tensor> tensors = new LinkedHashMap<>();
+		try {
+			for (int i = 0; i < tensorCount; i++) {
+				// The name length and rank are written unsigned
+				int nameLength = Short.toUnsignedInt(index.getShort());
+				if (nameLength > index.remaining()) {
+					throw new IOException("Tensor name of " + nameLength + " bytes extends beyond the index of file:"
+							+ path);
+				}
+				byte[] nameBytes = new byte[nameLength];
+				index.get(nameBytes);
+				String name = new String(nameBytes, StandardCharsets.UTF_8);
+				PackedTensorDataType dataType = PackedTensorDataType.fromId(index.get());
+				int rank = Byte.toUnsignedInt(index.get());
+				if (rank * 4L + 16 > index.remaining()) {
+					throw new IOException("Tensor " + name + " of rank " + rank
+							+ " extends beyond the index of file:" + path);
+				}
+				int[] shape = new int[rank];
+				long elementCount = 1;
+				for (int d = 0; d < shape.length; d++) {
+					shape[d] = index.getInt();
+					if (shape[d] < 0) {
+						throw new IOException("Tensor " + name + " has negative dimension " + shape[d] + " in file:"
+								+ path);
+					}
+					// Saturate rather than overflow, as no valid tensor has more than Integer.MAX_VALUE elements
+					elementCount = Math.min(elementCount * shape[d], Integer.MAX_VALUE + 1L);
+				}
+				long dataOffset = index.getLong();
+				long byteLength = index.getLong();
+				if (dataOffset < HEADER_LENGTH || byteLength < 0 || dataOffset + byteLength > indexOffset) {
+					throw new IOException("Tensor " + name + " extends beyond the data region of file:" + path);
+				}
+				if (elementCount > Integer.MAX_VALUE
+						|| elementCount * dataType.getBytesPerElement() != byteLength) {
+					throw new IOException("Tensor " + name + " has " + byteLength + " bytes which does not match its "
+							+ Arrays.toString(shape) + " " + dataType + " shape in file:" + path);
+				}
+				tensors.put(name, new Tensor(name, dataType, shape, dataOffset, byteLength));
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Malformed index in packed weights file:" + path, e);
+		}
+		return tensors;
+	}
+
+	/**
+	 * @return The names of the tensors in this file, in the order they were
+	 *         written, excluding the scales of quantised tensors.
+	 */
+	public Set<String> getTensorNames() {
+		Set<String> tensorNames = new LinkedHashSet<>(tensorsByName.keySet());
+		tensorNames.removeIf(name -> name.endsWith(SCALES_SUFFIX));
+		return Collections.unmodifiableSet(tensorNames);
+	}
+
+	/**
+	 * @param name The name of the tensor.
+	 * @return The index entry of the tensor, or null if there is no such tensor.
+	 */
+	public Tensor getTensor(String name) {
+		return tensorsByName.get(name);
+	}
+
+	/**
+	 * Read the named tensor into a new array.
+	 *
+	 * @param name The name of the tensor.
+	 * @return The values of the tensor.
+	 */
+	public float[] readTensor(String name) {
+		float[] values = new float[getRequiredTensor(name).getElementCount()];
+		readTensor(name, values);
+		return values;
+	}
+
+	/**
+	 * Read the named tensor directly from the mapped file into the destination
+	 * array.
+	 *
+	 * @param name The name of the tensor.
+	 * @param destination The array to populate, of length at least the element count of the tensor.
+	 */
+	public void readTensor(String name, float[] destination) {
+		Tensor tensor = getRequiredTensor(name);
+		if (destination.length < tensor.getElementCount()) {
+			throw new IllegalArgumentException("Tensor " + name + " has " + tensor.getElementCount()
+					+ " values which do not fit in an array of length " + destination.length);
+		}
+		tensor.getDataType().decode(getData(tensor), destination, 0, tensor.getElementCount());
+		if (tensor.getDataType() == PackedTensorDataType.INT8) {
+			dequantise(tensor, destination);
+		}
+	}
+
+	private void dequantise(Tensor tensor, float[] values) {
+		Tensor scalesTensor = getRequiredTensor(tensor.getName() + SCALES_SUFFIX);
+		int rows = tensor.getShape()[0];
+		if (scalesTensor.getElementCount() != rows) {
+			throw new IllegalStateException("Tensor " + tensor.getName() + " has " + rows + " rows but "
+					+ scalesTensor.getElementCount() + " scales in packed weights:" + path);
+		}
+		FloatBuffer scales = getData(scalesTensor).asFloatBuffer();
+		int columns = tensor.getElementCount() / rows;
+		for (int row = 0; row < rows; row++) {
+			float scale = scales.get(row);
+			for (int i = row * columns; i < (row + 1) * columns; i++) {
+				values[i] *= scale;
+			}
+		}
+	}
+
+	/**
+	 * @param tensor The tensor.
+	 * @return A little-endian buffer positioned over the stored bytes of the tensor.
+	 */
+	protected ByteBuffer getData(Tensor tensor) {
+		ByteBuffer data = buffer.duplicate();
+		// Offsets were checked to lie within the mapped file when the index was read
+		data.position(Math.toIntExact(tensor.getDataOffset()));
+		data.limit(Math.toIntExact(tensor.getDataOffset() + tensor.getByteLength()));
+		return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private Tensor getRequiredTensor(String name) {
+		Tensor tensor = tensorsByName.get(name);
+		if (tensor == null) {
+			throw new IllegalArgumentException("Tensor " + name + " not found in packed weights:" + path);
+		}
+		return tensor;
+	}
+
+	/**
+	 * An entry in the index of a packed weights file.
+	 */
+	public static class Tensor {
+
+		private final String name;
+		private final PackedTensorDataType dataType;
+		private final int[] shape;
+		private final long dataOffset;
+		private final long byteLength;
+
+		public Tensor(String name, PackedTensorDataType dataType, int[] shape, long dataOffset, long byteLength) {
+			this.name = name;
+			this.dataType = dataType;
+			this.shape = shape;
+			this.dataOffset = dataOffset;
+			this.byteLength = byteLength;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public PackedTensorDataType getDataType() {
+			return dataType;
+		}
+
+		public int[] getShape() {
+			return Arrays.copyOf(shape, shape.length);
+		}
+
+		public long getDataOffset() {
+			return dataOffset;
+		}
+
+		public long getByteLength() {
+			return byteLength;
+		}
+
+		public int getElementCount() {
+			int elementCount = 1;
+			for (int dimension : shape) {
+				elementCount *= dimension;
+			}
+			return elementCount;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a packed Inception V4 weights file from the serialized tensors in the
+ * inception-v4-weights jars.
+ *
+ * Usage: PackedInceptionV4WeightsConverter &lt;outputFile&gt; [FLOAT32|FLOAT16|BFLOAT16]
+ */
+public class PackedInceptionV4WeightsConverter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PackedInceptionV4WeightsConverter.class);
+
+	private ClassLoader classLoader;
+
+	public PackedInceptionV4WeightsConverter(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Convert every serialized tensor visible to the class loader, as float32.
+	 *
+	 * @param outputPath The path of the packed weights file to write.
+	 * @return The number of tensors written.
+	 * @throws IOException In the event that the tensors cannot be read or written.
+	 */
+	public int convert(Path outputPath) throws IOException {
+		return convert(outputPath, PackedTensorDataType.FLOAT32);
+	}
+
+	/**
+	 * Convert every serialized tensor visible to the class loader, storing the
+	 * values in the given data type.
+	 *
+	 * The serialized tensors carry no shape information, so each is recorded
+	 * with a single dimension of its element count.
+	 *
+	 * @param outputPath The path of the packed weights file to write.
+	 * @param dataType The data type in which the values are stored.
+	 * @return The number of tensors written.
+	 * @throws IOException In the event that the tensors cannot be read or written.
+	 */
+	public int convert(Path outputPath, PackedTensorDataType dataType) throws IOException {
+		return convert(outputPath, dataType, Collections.emptyMap());
+	}
+
+	/**
+	 * Convert every serialized tensor visible to the class loader, storing the
+	 * values in the given data type.
+	 *
+	 * The pretrained network is built once to record the [rows, columns] shape
+	 * in which it reads each tensor, so that the manifest checks the shape of
+	 * every tensor rather than only its element count. Any tensor the network
+	 * does not read is recorded with a single dimension of its element count.
+	 *
+	 * @param outputPath The path of the packed weights file to write.
+	 * @param dataType The data type in which the values are stored.
+	 * @param sessionFactory The session factory building the pretrained network.
+	 * @param context The context of the pretrained network.
+	 * @return The number of tensors written.
+	 * @throws IOException In the event that the tensors cannot be read or written.
+	 */
+	public int convert(Path outputPath, PackedTensorDataType dataType, DefaultSessionFactory sessionFactory,
+			FeedForwardNeuralNetworkContext context) throws IOException {
+		ShapeRecordingInceptionV4WeightsLoader recordingLoader = new ShapeRecordingInceptionV4WeightsLoader(
+				new PretrainedInceptionV4WeightsLoaderImpl(classLoader, context.getMatrixFactory()));
+		new DefaultInceptionV4Factory(sessionFactory, recordingLoader, new DefaultInceptionV4Labels(classLoader))
+				.createInceptionV4(context);
+		return convert(outputPath, dataType, recordingLoader.getTensorShapes());
+	}
+
+	private int convert(Path outputPath, PackedTensorDataType dataType, Map<String, int[]> tensorShapes)
+			throws IOException {
+		List<String> tensorNames = InceptionV4WeightsResources.getSerializedTensorNames(classLoader);
+		if (tensorNames.isEmpty()) {
+			throw new IOException("No serialized Inception V4 weights found on the classpath");
+		}
+		PretrainedInceptionV4WeightsLoaderImpl serializedLoader = new PretrainedInceptionV4WeightsLoaderImpl(
+				classLoader, null);
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(outputPath)) {
+			for (String tensorName : tensorNames) {
+				float[] values = serializedLoader.loadWeights(tensorName);
+				int[] shape = tensorShapes.get(tensorName);
+				writer.writeTensor(tensorName, shape == null ? new int[] { values.length } : shape, values, dataType);
+			}
+			writer.commit();
+		}
+		writeManifest(outputPath);
+		LOGGER.info("Packed {} Inception V4 tensors as {} into {}", tensorNames.size(), dataType, outputPath);
+		return tensorNames.size();
+	}
+
+	/**
+	 * Write the manifest of a packed weights file alongside it, where it is
+	 * found and verified by the PackedInceptionV4WeightsLoaderImpl.
+	 *
+	 * @param packedWeightsPath The path of the packed weights file.
+	 * @throws IOException In the event that the manifest cannot be written.
+	 */
+	public static void writeManifest(Path packedWeightsPath) throws IOException {
+		InceptionV4WeightsManifest.create(PackedInceptionV4Weights.open(packedWeightsPath))
+				.write(Paths.get(packedWeightsPath + InceptionV4WeightsManifest.PACKED_MANIFEST_SUFFIX));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			throw new IllegalArgumentException(
+					"Usage: PackedInceptionV4WeightsConverter <outputFile> [FLOAT32|FLOAT16|BFLOAT16]");
+		}
+		PackedTensorDataType dataType = args.length == 2 ? PackedTensorDataType.valueOf(args[1])
+				: PackedTensorDataType.FLOAT32;
+		new PackedInceptionV4WeightsConverter(PackedInceptionV4WeightsConverter.class.getClassLoader())
+				.convert(Paths.get(args[0]), dataType);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+import org.ml4j.MatrixFactory;
+
+/**
+ * Weights loader for the pretrained Inception V4 tensors held in a single
+ * memory-mapped packed weights file.
+ *
+ * Tensor values are read from the mapping straight into the array handed to
+ * the MatrixFactory, without Java deserialization or an intermediate copy.
+ */
+public class PackedInceptionV4WeightsLoaderImpl extends AbstractInceptionV4WeightsLoader {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private String packedWeightsPath;
+	private transient PackedInceptionV4Weights packedWeights;
+
+	public PackedInceptionV4WeightsLoaderImpl(Path packedWeightsPath, MatrixFactory matrixFactory) {
+		super(matrixFactory);
+		this.packedWeightsPath = packedWeightsPath.toString();
+	}
+
+	public static PackedInceptionV4WeightsLoaderImpl getLoader(MatrixFactory matrixFactory, Path packedWeightsPath) {
+		return new PackedInceptionV4WeightsLoaderImpl(packedWeightsPath, matrixFactory);
+	}
+
+	/**
+	 * @return The packed weights, mapped on first use. If the packed file has a
+	 *         manifest alongside it, every tensor is verified against the manifest
+	 *         when the file is mapped.
+	 */
+	public synchronized PackedInceptionV4Weights getPackedWeights() {
+		if (packedWeights == null) {
+			try {
+				PackedInceptionV4Weights weights = PackedInceptionV4Weights.open(Paths.get(packedWeightsPath));
+				Path manifestPath = Paths.get(packedWeightsPath + InceptionV4WeightsManifest.PACKED_MANIFEST_SUFFIX);
+				if (Files.exists(manifestPath)) {
+					InceptionV4WeightsManifest manifest = InceptionV4WeightsManifest.read(manifestPath);
+					manifest.verify(weights);
+					setManifest(manifest);
+				}
+				packedWeights = weights;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return packedWeights;
+	}
+
+	@Override
+	protected float[] loadWeights(String name) {
+		return getPackedWeights().readTensor(name);
+	}
+
+	@Override
+	public Collection<String> getTensorNames() {
+		return getPackedWeights().getTensorNames();
+	}
+
+	@Override
+	protected long getStoredByteLength(String name, float[] values) {
+		PackedInceptionV4Weights.Tensor scales = getPackedWeights()
+				.getTensor(name + PackedInceptionV4Weights.SCALES_SUFFIX);
+		return getPackedWeights().getTensor(name).getByteLength() + (scales == null ? 0 : scales.getByteLength());
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ml4j.nn.models.inceptionv4.impl.PackedInceptionV4Weights.Tensor;
+
+/**
+ * Writes tensors to a packed Inception V4 weights file, in the format read by
+ * {@link PackedInceptionV4Weights}.
+ *
+ * Tensor data is streamed to a temporary file alongside the packed weights
+ * file as each tensor is written. The index and header are only written by
+ * {@link #commit()}, which then atomically moves the complete file into
+ * place - closing the writer without committing, such as when a conversion
+ * fails part way, discards the temporary file and leaves no packed weights
+ * file behind.
+ */
+public class PackedInceptionV4WeightsWriter implements Closeable {
+
+	private final Path path;
+	private final Path temporaryPath;
+	private final FileChannel channel;
+	private final List<Tensor> tensors;
+	private final Set<String> tensorNames;
+	private long position;
+	private boolean committed;
+
+	public PackedInceptionV4WeightsWriter(Path path) throws IOException {
+		this.path = path.toAbsolutePath();
+		this.temporaryPath = Files.createTempFile(this.path.getParent(), this.path.getFileName().toString(), ".tmp");
+		this.channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.tensors = new ArrayList<>();
+		this.tensorNames = new HashSet<>();
+		this.position = align(PackedInceptionV4Weights.HEADER_LENGTH);
+	}
+
+	/**
+	 * Write a tensor of 32-bit floats.
+	 *
+	 * @param name The name of the tensor.
+	 * @param shape The shape of the tensor.
+	 * @param values The values of the tensor, in row-by-row order.
+	 * @throws IOException In the event that the tensor cannot be written.
+	 */
+	public void writeTensor(String name, int[] shape, float[] values) throws IOException {
+		writeTensor(name, shape, values, PackedTensorDataType.FLOAT32);
+	}
+
+	/**
+	 * Write a tensor, encoding its values in the given data type.
+	 *
+	 * @param name The name of the tensor.
+	 * @param shape The shape of the tensor.
+	 * @param values The values of the tensor, in row-by-row order.
+	 * @param dataType The data type in which the values are stored.
+	 * @throws IOException In the event that the tensor cannot be written.
+	 */
+	public void writeTensor(String name, int[] shape, float[] values, PackedTensorDataType dataType) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(values.length * dataType.getBytesPerElement())
+				.order(ByteOrder.LITTLE_ENDIAN);
+		dataType.encode(values, 0, values.length, data);
+		data.flip();
+		writeTensor(name, dataType, shape, data);
+	}
+
+	/**
+	 * Write a matrix quantised to {@link PackedTensorDataType#INT8} with a
+	 * symmetric scale per row, so that each output channel of a convolution
+	 * kernel uses the full 8-bit range. The scales are written as a companion
+	 * float tensor.
+	 *
+	 * @param name The name of the tensor.
+	 * @param rows The number of rows, such as the output depth of a convolution kernel.
+	 * @param columns The number of columns.
+	 * @param values The values of the matrix, in row-by-row order.
+	 * @throws IOException In the event that the tensor cannot be written.
+	 */
+	public void writeQuantizedTensor(String name, int rows, int columns, float[] values) throws IOException {
+		if (values.length != rows * columns) {
+			throw new IllegalArgumentException("Tensor " + name + " has " + values.length
+					+ " values which does not match " + rows + " x " + columns);
+		}
+		float[] scales = new float[rows];
+		float[] scaled = new float[values.length];
+		for (int row = 0; row < rows; row++) {
+			float maxAbs = 0;
+			for (int i = row * columns; i < (row + 1) * columns; i++) {
+				maxAbs = Math.max(maxAbs, Math.abs(values[i]));
+			}
+			scales[row] = maxAbs == 0 ? 1 : maxAbs / 127;
+			for (int i = row * columns; i < (row + 1) * columns; i++) {
+				scaled[i] = values[i] / scales[row];
+			}
+		}
+		writeTensor(name, new int[] { rows, columns }, scaled, PackedTensorDataType.INT8);
+		writeTensor(name + PackedInceptionV4Weights.SCALES_SUFFIX, new int[] { rows }, scales);
+	}
+
+	/**
+	 * Write a tensor whose values have already been encoded in the given data type.
+	 *
+	 * @param name The name of the tensor.
+	 * @param dataType The data type of the encoded values.
+	 * @param shape The shape of the tensor.
+	 * @param data The encoded little-endian values of the tensor.
+	 * @throws IOException In the event that the tensor cannot be written.
+	 */
+	public void writeTensor(String name, PackedTensorDataType dataType, int[] shape, ByteBuffer data) throws IOException {
+		if (!tensorNames.add(name)) {
+			throw new IllegalArgumentException("Tensor " + name + " has already been written");
+		}
+		Tensor tensor = new Tensor(name, dataType, shape, position, data.remaining());
+		if ((long) tensor.getElementCount() * dataType.getBytesPerElement() != tensor.getByteLength()) {
+			throw new IllegalArgumentException("Tensor " + name + " has " + tensor.getByteLength()
+					+ " bytes which does not match its shape and data type");
+		}
+		writeFully(data, position);
+		tensors.add(tensor);
+		position = align(position + tensor.getByteLength());
+	}
+
+	/**
+	 * Write the index and header, and atomically move the complete file to the
+	 * path of the packed weights file.
+	 *
+	 * @throws IOException In the event that the file cannot be completed.
+	 */
+	public void commit() throws IOException {
+		if (committed) {
+			throw new IllegalStateException("Packed weights have already been committed to:" + path);
+		}
+		try {
+			writeIndex();
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		committed = true;
+	}
+
+	/**
+	 * Close the writer, discarding the written tensors unless they have been committed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+	}
+
+	private void writeIndex() throws IOException {
+		long indexOffset = position;
+		for (Tensor tensor : tensors) {
+			byte[] nameBytes = tensor.getName().getBytes(StandardCharsets.UTF_8);
+			int[] shape = tensor.getShape();
+			// The index holds the name length and rank as unsigned 16 and 8 bit values
+			if (nameBytes.length > 0xffff || shape.length > 0xff) {
+				throw new IOException("Tensor " + tensor.getName() + " has a name or rank too long for the index");
+			}
+			ByteBuffer entry = ByteBuffer.allocate(2 + nameBytes.length + 2 + 4 * shape.length + 16)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			entry.putShort((short) nameBytes.length);
+			entry.put(nameBytes);
+			entry.put(tensor.getDataType().getId());
+			entry.put((byte) shape.length);
+			for (int dimension : shape) {
+				entry.putInt(dimension);
+			}
+			entry.putLong(tensor.getDataOffset());
+			entry.putLong(tensor.getByteLength());
+			entry.flip();
+			position += writeFully(entry, position);
+		}
+		ByteBuffer header = ByteBuffer.allocate(PackedInceptionV4Weights.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(PackedInceptionV4Weights.MAGIC);
+		header.putInt(PackedInceptionV4Weights.VERSION);
+		header.putInt(tensors.size());
+		header.putInt(0);
+		header.putLong(indexOffset);
+		header.flip();
+		writeFully(header, 0);
+	}
+
+	private int writeFully(ByteBuffer data, long offset) throws IOException {
+		int written = 0;
+		while (data.hasRemaining()) {
+			written += channel.write(data, offset + written);
+		}
+		return written;
+	}
+
+	private static long align(long offset) {
+		long alignment = PackedInceptionV4Weights.ALIGNMENT;
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+}
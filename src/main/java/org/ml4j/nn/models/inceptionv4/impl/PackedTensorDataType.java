@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The storage types of the tensors within a packed Inception V4 weights file.
+ */
+public enum PackedTensorDataType {
+
+	/**
+	 * 32-bit IEEE 754 floating point values.
+	 */
+	FLOAT32(0, 4) {
+
+		@Override
+		public void decode(ByteBuffer source, float[] destination, int offset, int length) {
+			source.asFloatBuffer().get(destination, offset, length);
+			source.position(source.position() + length * 4);
+		}
+
+		@Override
+		public void encode(float[] source, int offset, int length, ByteBuffer destination) {
+			destination.asFloatBuffer().put(source, offset, length);
+			destination.position(destination.position() + length * 4);
+		}
+	},
+
+	/**
+	 * 16-bit IEEE 754 half precision floating point values.
+	 */
+	FLOAT16(1, 2) {
+
+		@Override
+		public void decode(ByteBuffer source, float[] destination, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				destination[i] = HalfPrecision.halfToFloat(source.getShort());
+			}
+		}
+
+		@Override
+		public void encode(float[] source, int offset, int length, ByteBuffer destination) {
+			for (int i = offset; i < offset + length; i++) {
+				destination.putShort(HalfPrecision.floatToHalf(source[i]));
+			}
+		}
+	},
+
+	/**
+	 * 16-bit bfloat16 values - the upper half of a 32-bit float, keeping its
+	 * full exponent range with an 8-bit significand.
+	 */
+	BFLOAT16(2, 2) {
+
+		@Override
+		public void decode(ByteBuffer source, float[] destination, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				destination[i] = Float.intBitsToFloat((source.getShort() & 0xffff) << 16);
+			}
+		}
+
+		@Override
+		public void encode(float[] source, int offset, int length, ByteBuffer destination) {
+			for (int i = offset; i < offset + length; i++) {
+				int bits = Float.floatToRawIntBits(source[i]);
+				if (Float.isNaN(source[i])) {
+					destination.putShort((short) ((bits >>> 16) | 0x40));
+				} else {
+					// Round half to even on the discarded lower 16 bits
+					destination.putShort((short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16));
+				}
+			}
+		}
+	},
+
+	/**
+	 * Signed 8-bit integers in the range [-127, 127]. The values are stored
+	 * pre-divided by a per-row scale, held in a companion {@link #FLOAT32}
+	 * tensor, and decode to the unscaled integers.
+	 */
+	INT8(3, 1) {
+
+		@Override
+		public void decode(ByteBuffer source, float[] destination, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				destination[i] = source.get();
+			}
+		}
+
+		@Override
+		public void encode(float[] source, int offset, int length, ByteBuffer destination) {
+			for (int i = offset; i < offset + length; i++) {
+				destination.put((byte) Math.max(-127, Math.min(127, Math.round(source[i]))));
+			}
+		}
+	};
+
+	private final byte id;
+	private final int bytesPerElement;
+
+	private PackedTensorDataType(int id, int bytesPerElement) {
+		this.id = (byte) id;
+		this.bytesPerElement = bytesPerElement;
+	}
+
+	/**
+	 * @return The identifier of this data type within the packed file index.
+	 */
+	public byte getId() {
+		return id;
+	}
+
+	/**
+	 * @return The number of bytes used to store each element.
+	 */
+	public int getBytesPerElement() {
+		return bytesPerElement;
+	}
+
+	/**
+	 * Widen encoded values to floats.
+	 *
+	 * Every data type leaves the source positioned after the last value read,
+	 * so that consecutive runs of values can be decoded from the same buffer.
+	 *
+	 * @param source The little-endian encoded values, read from, and advanced past, its current position.
+	 * @param destination The array to populate.
+	 * @param offset The index of the first value to populate.
+	 * @param length The number of values to decode.
+	 */
+	public abstract void decode(ByteBuffer source, float[] destination, int offset, int length);
+
+	/**
+	 * Encode floats in this data type.
+	 *
+	 * Every data type leaves the destination positioned after the last value written.
+	 *
+	 * @param source The values to encode.
+	 * @param offset The index of the first value to encode.
+	 * @param length The number of values to encode.
+	 * @param destination The little-endian buffer written from, and advanced past, its current position.
+	 */
+	public abstract void encode(float[] source, int offset, int length, ByteBuffer destination);
+
+	/**
+	 * @param id The identifier of the data type within the packed file index.
+	 * @return The data type with the given identifier.
+	 */
+	public static PackedTensorDataType fromId(byte id) {
+		for (PackedTensorDataType dataType : values()) {
+			if (dataType.id == id) {
+				return dataType;
+			}
+		}
+		throw new IllegalArgumentException("Unknown packed tensor data type:" + id);
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.ml4j.MatrixFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Weights loader which reads and decodes a known set of tensors concurrently,
+ * on an executor owned by the caller, serving subsequent requests for those
+ * tensors from the completed reads.
+ *
+ * The tensors are prefetched once, when the loader is created. Each
+ * prefetched tensor is handed out once and then released - any further
+ * request for the same tensor, such as by a second network built from this
+ * loader, is loaded synchronously from the source loader. Tensors which no
+ * network requests, such as the tail weights of a network built without its
+ * tail, are held until {@link #close()} is called.
+ */
+public class PrefetchingInceptionV4WeightsLoader extends AbstractInceptionV4WeightsLoader implements Closeable {
+
+	/**
+	 * Default serialization id.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingInceptionV4WeightsLoader.class);
+
+	private AbstractInceptionV4WeightsLoader sourceWeightsLoader;
+	private transient Map<String, CompletableFuture<float[]>> prefetchedWeights;
+	private transient boolean closed;
+	private transient int readsInProgress;
+
+	/**
+	 * Start prefetching the named tensors from the source loader on the given executor.
+	 *
+	 * @param sourceWeightsLoader The loader the tensors are read from.
+	 * @param tensorNames The names of the tensors to prefetch.
+	 * @param executor The executor on which the tensors are read, which remains owned by the caller.
+	 */
+	public PrefetchingInceptionV4WeightsLoader(AbstractInceptionV4WeightsLoader sourceWeightsLoader,
+			Collection<String> tensorNames, Executor executor) {
+		super(sourceWeightsLoader.matrixFactory);
+		this.sourceWeightsLoader = sourceWeightsLoader;
+		this.prefetchedWeights = new ConcurrentHashMap<>();
+		for (String tensorName : tensorNames) {
+			prefetchedWeights.put(tensorName, CompletableFuture.supplyAsync(() -> prefetch(tensorName), executor));
+		}
+		LOGGER.debug("Prefetching {} Inception V4 tensors", tensorNames.size());
+	}
+
+	/**
+	 * Prefetch all the serialized pretrained tensors visible to the class loader.
+	 *
+	 * @param matrixFactory The matrix factory.
+	 * @param classLoader The class loader providing the inception-v4-weights jars.
+	 * @param executor The executor on which the tensors are read, which remains owned by the caller.
+	 * @return The prefetching loader.
+	 * @throws IOException In the event that the tensors cannot be listed.
+	 */
+	public static PrefetchingInceptionV4WeightsLoader getLoader(MatrixFactory matrixFactory,
+			ClassLoader classLoader, Executor executor) throws IOException {
+		return new PrefetchingInceptionV4WeightsLoader(new PretrainedInceptionV4WeightsLoaderImpl(classLoader,
+				matrixFactory), InceptionV4WeightsResources.getSerializedTensorNames(classLoader), executor);
+	}
+
+	/**
+	 * Prefetch all the tensors of a packed weights file.
+	 *
+	 * @param packedWeightsLoader The packed weights loader.
+	 * @param executor The executor on which the tensors are read, which remains owned by the caller.
+	 * @return The prefetching loader.
+	 */
+	public static PrefetchingInceptionV4WeightsLoader getLoader(PackedInceptionV4WeightsLoaderImpl packedWeightsLoader,
+			Executor executor) {
+		return new PrefetchingInceptionV4WeightsLoader(packedWeightsLoader,
+				packedWeightsLoader.getPackedWeights().getTensorNames(), executor);
+	}
+
+	/**
+	 * Read a tensor on the executor, unless the loader has been closed before
+	 * the read started. Where the source's manifest lists the tensor, its
+	 * element count is passed as the expected length so that the source checks
+	 * the stored size before decoding.
+	 */
+	private float[] prefetch(String tensorName) {
+		synchronized (this) {
+			if (closed) {
+				throw new CancellationException("Prefetching of " + tensorName + " was cancelled");
+			}
+			readsInProgress++;
+		}
+		try {
+			InceptionV4WeightsManifest manifest = sourceWeightsLoader.getManifest();
+			InceptionV4WeightsManifest.Entry entry = manifest == null ? null : manifest.getEntry(tensorName);
+			if (entry == null || entry.getElementCount() > Integer.MAX_VALUE) {
+				return sourceWeightsLoader.loadWeights(tensorName);
+			}
+			return sourceWeightsLoader.loadWeights(tensorName, (int) entry.getElementCount());
+		} finally {
+			synchronized (this) {
+				readsInProgress--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Block until every prefetched tensor has been read.
+	 */
+	public void awaitPrefetch() {
+		if (prefetchedWeights != null) {
+			CompletableFuture.allOf(prefetchedWeights.values().toArray(new CompletableFuture<?>[0])).join();
+		}
+	}
+
+	@Override
+	protected float[] loadWeights(String name) {
+		return loadWeights(name, -1);
+	}
+
+	/**
+	 * Serve a prefetched tensor, or load it from the source loader with the
+	 * expected length so that the source can check its stored size first. The
+	 * length of a prefetched tensor is checked against the request, and its
+	 * shape against the source's manifest, once it is handed out.
+	 */
+	@Override
+	protected float[] loadWeights(String name, int expectedLength) {
+		CompletableFuture<float[]> prefetched = prefetchedWeights == null ? null : prefetchedWeights.remove(name);
+		if (prefetched == null) {
+			return expectedLength < 0 ? sourceWeightsLoader.loadWeights(name)
+					: sourceWeightsLoader.loadWeights(name, expectedLength);
+		}
+		try {
+			return prefetched.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public Collection<String> getTensorNames() {
+		return sourceWeightsLoader.getTensorNames();
+	}
+
+	@Override
+	protected InceptionV4WeightsManifest getManifest() {
+		return sourceWeightsLoader.getManifest();
+	}
+
+	@Override
+	protected long getStoredByteLength(String name, float[] values) {
+		return sourceWeightsLoader.getStoredByteLength(name, values);
+	}
+
+	/**
+	 * Discard the prefetched tensors which have not been requested. Reads
+	 * which have not started are cancelled, and reads already in progress are
+	 * waited for, so that no prefetching occupies the executor once this
+	 * method returns - the executor is left running for its owner to shut down.
+	 */
+	@Override
+	public void close() {
+		if (prefetchedWeights == null) {
+			return;
+		}
+		synchronized (this) {
+			closed = true;
+		}
+		int released = 0;
+		for (String tensorName : new ArrayList<>(prefetchedWeights.keySet())) {
+			CompletableFuture<float[]> prefetched = prefetchedWeights.remove(tensorName);
+			if (prefetched != null) {
+				prefetched.cancel(false);
+				released++;
+			}
+		}
+		if (released > 0) {
+			LOGGER.debug("Released {} unused prefetched Inception V4 tensors", released);
+		}
+		synchronized (this) {
+			while (readsInProgress > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+}
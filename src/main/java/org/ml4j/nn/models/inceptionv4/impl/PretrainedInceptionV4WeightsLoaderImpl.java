@@ -16,37 +16,34 @@
 
 package org.ml4j.nn.models.inceptionv4.impl;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.ml4j.MatrixFactory;
-import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
-import org.ml4j.nn.axons.BiasFormatImpl;
-import org.ml4j.nn.axons.BiasVector;
-import org.ml4j.nn.axons.BiasVectorImpl;
-import org.ml4j.nn.axons.FeaturesVector;
-import org.ml4j.nn.axons.FeaturesVectorFormat;
-import org.ml4j.nn.axons.FeaturesVectorFormatImpl;
-import org.ml4j.nn.axons.FeaturesVectorImpl;
-import org.ml4j.nn.axons.FeaturesVectorOrientation;
-import org.ml4j.nn.axons.WeightsFormatImpl;
-import org.ml4j.nn.axons.WeightsMatrix;
-import org.ml4j.nn.axons.WeightsMatrixImpl;
-import org.ml4j.nn.axons.WeightsMatrixOrientation;
-import org.ml4j.nn.neurons.format.features.Dimension;
-import org.ml4j.nn.neurons.format.features.DimensionScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Loads the pretrained weights serialized in the inception-v4-weights jars.
+ *
+ * If a manifest is found alongside the serialized tensors on the classpath,
+ * each tensor is checksummed as it is read and verified against it, and the
+ * shapes requested by the network are checked against it.
+ *
  * @author Michael Lavelle
  */
-public class PretrainedInceptionV4WeightsLoaderImpl implements InceptionV4WeightsLoader {
+public class PretrainedInceptionV4WeightsLoaderImpl extends AbstractInceptionV4WeightsLoader {
 
 	/**
 	 * Default serialization id.
@@ -55,14 +52,26 @@ public class PretrainedInceptionV4WeightsLoaderImpl implements InceptionV4Weight
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultInceptionV4Factory.class);
 
-	private MatrixFactory matrixFactory;
 	private ClassLoader classLoader;
 	private long uid;
+	private transient FileSystemInceptionV4WeightsLoaderImpl fileSystemWeightsLoader;
+	private transient volatile boolean manifestRead;
 
 	public PretrainedInceptionV4WeightsLoaderImpl(ClassLoader classLoader, MatrixFactory matrixFactory) {
+		super(matrixFactory);
 		this.uid = ObjectStreamClass.lookup(float[].class).getSerialVersionUID();
 		this.classLoader = classLoader;
-		this.matrixFactory = matrixFactory;
+	}
+
+	/**
+	 * Without a class loader the weights are read from the inceptionv4javaweights
+	 * directory relative to the working directory.
+	 */
+	private synchronized FileSystemInceptionV4WeightsLoaderImpl getFileSystemWeightsLoader() {
+		if (fileSystemWeightsLoader == null) {
+			fileSystemWeightsLoader = new FileSystemInceptionV4WeightsLoaderImpl(Paths.get(""), matrixFactory);
+		}
+		return fileSystemWeightsLoader;
 	}
 
 	public static PretrainedInceptionV4WeightsLoaderImpl getLoader(MatrixFactory matrixFactory,
@@ -70,44 +79,88 @@ public class PretrainedInceptionV4WeightsLoaderImpl implements InceptionV4Weight
 		return new PretrainedInceptionV4WeightsLoaderImpl(classLoader, matrixFactory);
 	}
 
-	private float[] deserializeWeights(String name) {
-		LOGGER.debug("Derializing weights:" + name);
+	@Override
+	protected float[] loadWeights(String name) {
+		LOGGER.debug("Deserializing weights:{}", name);
+		if (classLoader == null) {
+			return getFileSystemWeightsLoader().readTensor(name, -1);
+		}
+		InceptionV4WeightsManifest manifest = getManifest();
 		try {
+			if (manifest != null) {
+				return deserializeVerified(name, manifest);
+			}
 			return deserialize(float[].class, "inceptionv4javaweights", uid, name);
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
 		} catch (IOException e) {
-			throw new RuntimeException(e);
+			throw new UncheckedIOException(e);
 		}
 	}
 
-	public WeightsMatrix getDenseLayerWeights(String name, int rows, int columns) {
-		float[] weights = deserializeWeights(name);
-		return new WeightsMatrixImpl(matrixFactory.createMatrixFromRowsByRowsArray(rows, columns, weights),
-				new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_FEATURE), 
-						Arrays.asList(Dimension.OUTPUT_FEATURE), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+	/**
+	 * @return The manifest alongside the serialized tensors on the classpath,
+	 *         read on first use, or null if there is none.
+	 */
+	@Override
+	protected InceptionV4WeightsManifest getManifest() {
+		if (classLoader == null) {
+			return getFileSystemWeightsLoader().getManifest();
+		}
+		if (!manifestRead) {
+			synchronized (this) {
+				if (!manifestRead) {
+					URL manifestUrl = classLoader.getResource(InceptionV4WeightsResources.getSerializedTensorDirectory()
+							+ "/" + InceptionV4WeightsManifest.SERIALIZED_MANIFEST_FILE_NAME);
+					if (manifestUrl != null) {
+						try {
+							setManifest(InceptionV4WeightsManifest.read(manifestUrl));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+					manifestRead = true;
+				}
+			}
+		}
+		return super.getManifest();
 	}
 
-	public WeightsMatrix getConvolutionalLayerWeights(String name, int width, int height, int inputDepth, int outputDepth) {
-		float[] weights = deserializeWeights(name);
-		boolean oneByOneConvolution = width == 1 && height == 1;
-		if (oneByOneConvolution) {
-			return new WeightsMatrixImpl(matrixFactory.createMatrixFromRowsByRowsArray(outputDepth, width * height * inputDepth, weights),
-					new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_DEPTH), 
-							Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
-		} else {
-			return new WeightsMatrixImpl(matrixFactory.createMatrixFromRowsByRowsArray(outputDepth, width * height * inputDepth, weights),
-					new WeightsFormatImpl(Arrays.asList(Dimension.INPUT_DEPTH, Dimension.FILTER_HEIGHT, Dimension.FILTER_WIDTH), 
-							Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+	/**
+	 * Deserialize a tensor, checksumming every stored byte as it is read and
+	 * verifying the checksum against the manifest.
+	 */
+	private float[] deserializeVerified(String name, InceptionV4WeightsManifest manifest)
+			throws IOException, ClassNotFoundException {
+		String resource = InceptionV4WeightsResources.getSerializedTensorDirectory() + "/" + name
+				+ InceptionV4WeightsResources.SERIALIZED_EXTENSION;
+		try (InputStream is = classLoader.getResourceAsStream(resource)) {
+			if (is == null) {
+				throw new IOException("Weights resource not found:" + resource);
+			}
+			CheckedInputStream checkedInputStream = new CheckedInputStream(is, new CRC32());
+			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(checkedInputStream, 1 << 16));
+			float[] values = (float[]) ois.readObject();
+			// Any bytes after the array are part of the stored tensor and its checksum
+			byte[] buffer = new byte[1 << 12];
+			while (checkedInputStream.read(buffer) != -1) {
+				continue;
+			}
+			manifest.checkChecksum(name, checkedInputStream.getChecksum().getValue());
+			return values;
 		}
 	}
 
-	public WeightsMatrix getBatchNormLayerWeights(String name, int inputDepth) {
-		float[] weights = deserializeWeights(name);
-		return new WeightsMatrixImpl(matrixFactory.createMatrixFromRowsByRowsArray(inputDepth, 1, weights),
-				new WeightsFormatImpl(Arrays.asList(
-						Dimension.INPUT_DEPTH), 
-						Arrays.asList(Dimension.OUTPUT_DEPTH), WeightsMatrixOrientation.ROWS_SPAN_OUTPUT_DIMENSIONS));
+	@Override
+	public Collection<String> getTensorNames() {
+		if (classLoader == null) {
+			return getFileSystemWeightsLoader().getTensorNames();
+		}
+		try {
+			return InceptionV4WeightsResources.getSerializedTensorNames(classLoader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -130,33 +183,4 @@ public class PretrainedInceptionV4WeightsLoaderImpl implements InceptionV4Weight
 
 		}
 	}
-
-	@Override
-	public BiasVector getDenseLayerBiases(String name, int rows, int columns) {
-		float[] weights = deserializeWeights(name);
-		return new BiasVectorImpl(matrixFactory.createMatrixFromRowsByRowsArray(rows, columns, weights),
-				FeaturesVectorFormat.DEFAULT_BIAS_FORMAT);
-	}
-
-	@Override
-	public BiasVector getBatchNormLayerBiases(String name, int outputDepth) {
-		float[] weights = deserializeWeights(name);
-		return new BiasVectorImpl(matrixFactory.createMatrixFromRowsByRowsArray(outputDepth, 1, weights),
-				new BiasFormatImpl(Dimension.OUTPUT_DEPTH, FeaturesVectorOrientation.COLUMN_VECTOR));
-	}
-
-	@Override
-	public FeaturesVector getBatchNormLayerMean(String name, int outputDepth) {
-		float[] weights = deserializeWeights(name);
-		return new FeaturesVectorImpl(matrixFactory.createMatrixFromRowsByRowsArray(outputDepth, 1, weights), new FeaturesVectorFormatImpl(Arrays.asList(Dimension.OUTPUT_DEPTH),
-				FeaturesVectorOrientation.COLUMN_VECTOR, DimensionScope.OUTPUT));
-	}
-
-	@Override
-	public FeaturesVector getBatchNormLayerVariance(String name, int outputDepth) {
-		float[] weights = deserializeWeights(name);
-		return new FeaturesVectorImpl( matrixFactory.createMatrixFromRowsByRowsArray(outputDepth, 1, weights), new FeaturesVectorFormatImpl(Arrays.asList(Dimension.OUTPUT_DEPTH),
-				FeaturesVectorOrientation.COLUMN_VECTOR, DimensionScope.OUTPUT));
-	}
-	
 }
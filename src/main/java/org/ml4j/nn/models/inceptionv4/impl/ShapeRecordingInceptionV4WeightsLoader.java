@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.ml4j.Matrix;
+import org.ml4j.nn.axons.WeightsMatrix;
+
+/**
+ * Delegates to a source loader, recording the shape of every requested
+ * tensor and which of them are convolution kernels, so that the tensors can
+ * be rewritten with the shapes the network reads them in.
+ */
+class ShapeRecordingInceptionV4WeightsLoader extends AbstractInceptionV4WeightsLoader {
+
+	private static final long serialVersionUID = 1L;
+
+	private AbstractInceptionV4WeightsLoader sourceWeightsLoader;
+	private Map<String, int[]> tensorShapes;
+	private Set<String> convolutionKernelNames;
+
+	ShapeRecordingInceptionV4WeightsLoader(AbstractInceptionV4WeightsLoader sourceWeightsLoader) {
+		super(sourceWeightsLoader.matrixFactory);
+		this.sourceWeightsLoader = sourceWeightsLoader;
+		this.tensorShapes = new LinkedHashMap<>();
+		this.convolutionKernelNames = new HashSet<>();
+	}
+
+	/**
+	 * @return The [rows, columns] shape of each requested tensor, in the order requested.
+	 */
+	synchronized Map<String, int[]> getTensorShapes() {
+		return tensorShapes;
+	}
+
+	synchronized Set<String> getConvolutionKernelNames() {
+		return convolutionKernelNames;
+	}
+
+	@Override
+	protected float[] loadWeights(String name) {
+		return sourceWeightsLoader.loadWeights(name);
+	}
+
+	@Override
+	protected synchronized Matrix createMatrix(String name, int rows, int columns) {
+		tensorShapes.put(name, new int[] { rows, columns });
+		return super.createMatrix(name, rows, columns);
+	}
+
+	@Override
+	public WeightsMatrix getConvolutionalLayerWeights(String name, int width, int height, int inputDepth,
+			int outputDepth) {
+		synchronized (this) {
+			convolutionKernelNames.add(name);
+		}
+		return super.getConvolutionalLayerWeights(name, width, height, inputDepth, outputDepth);
+	}
+}
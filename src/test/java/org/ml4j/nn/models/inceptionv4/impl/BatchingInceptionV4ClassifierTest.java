@@ -0,0 +1,94 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Prediction;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mockito;
+
+public class BatchingInceptionV4ClassifierTest {
+
+	private MatrixFactory matrixFactory;
+
+	private FeedForwardNeuralNetworkContext context;
+
+	private SupervisedFeedForwardNeuralNetwork network;
+
+	@Before
+	public void setUp() {
+		matrixFactory = Mockito.mock(MatrixFactory.class);
+		Matrix inputMatrix = Mockito.mock(Matrix.class);
+		Mockito.when(inputMatrix.getRows()).thenReturn(InceptionV4Activations.INPUT_FEATURE_COUNT);
+		Mockito.when(inputMatrix.getColumns()).thenReturn(2);
+		Mockito.when(matrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenReturn(inputMatrix);
+		context = Mockito.mock(FeedForwardNeuralNetworkContext.class);
+		network = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class, Mockito.RETURNS_DEEP_STUBS);
+		NeuronsActivation scores = InceptionV4ActivationsTest.createScores(matrixFactory);
+		Mockito.when(network.forwardPropagate(Mockito.any(NeuronsActivation.class), Mockito.eq(context)).getOutput())
+				.thenReturn(scores);
+	}
+
+	@Test
+	public void testClassifyBatch() throws Exception {
+
+		try (BatchingInceptionV4Classifier classifier = new BatchingInceptionV4Classifier(network, context,
+				matrixFactory, labelIndex -> "label" + labelIndex, 2, 1, TimeUnit.MINUTES, 3, 2)) {
+			CompletableFuture<List<InceptionV4Prediction>> first = classifier
+					.classify(new float[InceptionV4Activations.INPUT_FEATURE_COUNT]);
+			CompletableFuture<List<InceptionV4Prediction>> second = classifier
+					.classify(new float[InceptionV4Activations.INPUT_FEATURE_COUNT]);
+
+			List<InceptionV4Prediction> firstPredictions = first.get(10, TimeUnit.SECONDS);
+			List<InceptionV4Prediction> secondPredictions = second.get(10, TimeUnit.SECONDS);
+
+			Assert.assertEquals(1, firstPredictions.get(0).getLabelIndex());
+			Assert.assertEquals("label1", firstPredictions.get(0).getLabel());
+			Assert.assertEquals(0.6f, firstPredictions.get(0).getScore(), 0f);
+			Assert.assertEquals(2, firstPredictions.get(1).getLabelIndex());
+			Assert.assertEquals(0, secondPredictions.get(0).getLabelIndex());
+			Assert.assertEquals(0.7f, secondPredictions.get(0).getScore(), 0f);
+			Assert.assertEquals(1, secondPredictions.get(1).getLabelIndex());
+		}
+	}
+
+	@Test
+	public void testOnlyLabelsOfBatchAreResolved() throws Exception {
+
+		AtomicInteger resolvedLabels = new AtomicInteger();
+		InceptionV4Labels labels = labelIndex -> {
+			resolvedLabels.incrementAndGet();
+			return "label" + labelIndex;
+		};
+
+		// The batch is propagated with 2 of its 4 slots filled once the delay expires
+		try (BatchingInceptionV4Classifier classifier = new BatchingInceptionV4Classifier(network, context,
+				matrixFactory, labels, 4, 200, TimeUnit.MILLISECONDS, 3, 2)) {
+			CompletableFuture<List<InceptionV4Prediction>> first = classifier
+					.classify(new float[InceptionV4Activations.INPUT_FEATURE_COUNT]);
+			CompletableFuture<List<InceptionV4Prediction>> second = classifier
+					.classify(new float[InceptionV4Activations.INPUT_FEATURE_COUNT]);
+
+			Assert.assertEquals("label1", first.get(10, TimeUnit.SECONDS).get(0).getLabel());
+			Assert.assertEquals("label0", second.get(10, TimeUnit.SECONDS).get(0).getLabel());
+			Assert.assertEquals(4, resolvedLabels.get());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopKGreaterThanClassCount() {
+		new BatchingInceptionV4Classifier(network, context, matrixFactory, labelIndex -> "label" + labelIndex, 2, 1,
+				TimeUnit.MINUTES, 3, 4);
+	}
+}
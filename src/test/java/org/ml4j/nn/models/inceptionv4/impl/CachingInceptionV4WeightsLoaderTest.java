@@ -0,0 +1,59 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.axons.WeightsMatrix;
+import org.ml4j.nn.models.inceptionv4.impl.CachingInceptionV4WeightsLoader.EvictionPolicy;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class CachingInceptionV4WeightsLoaderTest {
+
+	@Mock
+	private InceptionV4WeightsLoader mockWeightsLoader;
+
+	@Mock
+	private WeightsMatrix mockWeightsMatrix;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockWeightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 3, 3, 3, 32))
+				.thenReturn(mockWeightsMatrix);
+	}
+
+	@Test
+	public void testWeightsAreSharedBetweenNetworks() {
+
+		CachingInceptionV4WeightsLoader weightsLoader = new CachingInceptionV4WeightsLoader(mockWeightsLoader,
+				EvictionPolicy.NEVER);
+
+		WeightsMatrix first = weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 3, 3, 3, 32);
+		WeightsMatrix second = weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 3, 3, 3, 32);
+
+		Assert.assertSame(mockWeightsMatrix, first);
+		Assert.assertSame(first, second);
+		Mockito.verify(mockWeightsLoader, Mockito.times(1)).getConvolutionalLayerWeights("conv2d_1_kernel0", 3, 3, 3, 32);
+	}
+
+	@Test
+	public void testWeightsAreReleasedWithLastNetwork() {
+
+		CachingInceptionV4WeightsLoader weightsLoader = new CachingInceptionV4WeightsLoader(mockWeightsLoader,
+				EvictionPolicy.ON_RELEASE);
+
+		weightsLoader.retain();
+		weightsLoader.retain();
+		weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 3, 3, 3, 32);
+		weightsLoader.release();
+
+		Assert.assertEquals(1, weightsLoader.getCachedTensorCount());
+
+		weightsLoader.release();
+
+		Assert.assertEquals(0, weightsLoader.getCachedTensorCount());
+	}
+}
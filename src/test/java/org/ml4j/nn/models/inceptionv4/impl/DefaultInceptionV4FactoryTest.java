@@ -0,0 +1,147 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.models.inceptionv4.InceptionV4WeightsLoadingListener;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class DefaultInceptionV4FactoryTest {
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private InceptionV4Labels mockLabels;
+
+	@Mock
+	private DefaultSessionFactory mockSessionFactory;
+
+	private InMemoryWeightsLoader weightsLoader;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		weightsLoader = new InMemoryWeightsLoader(mockMatrixFactory);
+		weightsLoader.tensors.put("batch_normalization_1_moving_mean0", new float[] { 0.5f, -0.5f });
+	}
+
+	@Test
+	public void testConcurrentBuildsReportTheirOwnMetrics() throws Exception {
+
+		InceptionV4WeightsLoadingListener mockSourceListener = Mockito.mock(InceptionV4WeightsLoadingListener.class);
+		weightsLoader.setWeightsLoadingListener(mockSourceListener);
+		InceptionV4WeightsLoadingListener mockFactoryListener = Mockito.mock(InceptionV4WeightsLoadingListener.class);
+		DefaultInceptionV4Factory factory = new DefaultInceptionV4Factory(mockSessionFactory, weightsLoader,
+				mockLabels);
+		factory.addWeightsLoadingListener(mockFactoryListener);
+
+		CyclicBarrier buildsInProgress = new CyclicBarrier(2);
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<SupervisedFeedForwardNeuralNetwork>> builds = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				builds.add(executorService.submit(() -> factory.buildWithWeights("inceptionV4", buildWeightsLoader -> {
+					// Load a tensor as the network definition would, once both builds are in progress
+					try {
+						buildsInProgress.await(10, TimeUnit.SECONDS);
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+					buildWeightsLoader.getBatchNormLayerMean("batch_normalization_1_moving_mean0", 2);
+					return Mockito.mock(SupervisedFeedForwardNeuralNetwork.class);
+				})));
+			}
+			for (Future<SupervisedFeedForwardNeuralNetwork> build : builds) {
+				Assert.assertNotNull(build.get());
+			}
+		} finally {
+			executorService.shutdown();
+		}
+
+		// The builds overlapped, but the metrics hold only the tensors of the last build
+		Assert.assertEquals(1, factory.getWeightsLoadingMetrics().getTensorCount());
+		Assert.assertEquals(8, factory.getWeightsLoadingMetrics().getBytesRead());
+		Mockito.verify(mockFactoryListener, Mockito.times(2)).onTensorLoaded(
+				Mockito.eq("batch_normalization_1_moving_mean0"), Mockito.eq(8L), Mockito.anyLong(),
+				Mockito.anyLong());
+		Mockito.verify(mockFactoryListener, Mockito.times(2)).onNetworkConstructed(Mockito.eq("inceptionV4"),
+				Mockito.anyLong());
+
+		// The listener of the factory's weights loader is left in place
+		Mockito.verifyZeroInteractions(mockSourceListener);
+		weightsLoader.getBatchNormLayerMean("batch_normalization_1_moving_mean0", 2);
+		Mockito.verify(mockSourceListener).onTensorLoaded(Mockito.eq("batch_normalization_1_moving_mean0"),
+				Mockito.eq(8L), Mockito.anyLong(), Mockito.anyLong());
+	}
+
+	@Test
+	public void testNoMetricsForOtherWeightsLoaders() {
+
+		DefaultInceptionV4Factory factory = new DefaultInceptionV4Factory(mockSessionFactory,
+				new DefaultUntrainedInceptionV4WeightsLoader(), mockLabels);
+
+		Assert.assertNull(factory.getWeightsLoadingMetrics());
+	}
+
+	@Test
+	public void testPrefetchedWeightsAreReadOnceAndReleasedOnClose() throws Exception {
+
+		weightsLoader.tensors.put("batch_normalization_1_moving_variance0", new float[] { 1f, 1f });
+		PrefetchingInceptionV4WeightsLoader prefetchingWeightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				weightsLoader, weightsLoader.tensors.keySet(), Runnable::run);
+		DefaultInceptionV4Factory factory = new DefaultInceptionV4Factory(mockSessionFactory,
+				prefetchingWeightsLoader, mockLabels);
+		Assert.assertEquals(2, weightsLoader.loadedNames.size());
+
+		for (int i = 0; i < 2; i++) {
+			factory.buildWithWeights("inceptionV4WithoutTail", buildWeightsLoader -> {
+				buildWeightsLoader.getBatchNormLayerMean("batch_normalization_1_moving_mean0", 2);
+				return Mockito.mock(SupervisedFeedForwardNeuralNetwork.class);
+			});
+		}
+
+		// Only the second build reads from the source, and nothing is prefetched again
+		Assert.assertEquals(3, weightsLoader.loadedNames.size());
+
+		// The unrequested tensor is held until the factory is closed
+		factory.close();
+		prefetchingWeightsLoader.loadWeights("batch_normalization_1_moving_variance0");
+		Assert.assertEquals(4, weightsLoader.loadedNames.size());
+	}
+
+	private static class InMemoryWeightsLoader extends AbstractInceptionV4WeightsLoader {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Map<String, float[]> tensors = new HashMap<>();
+
+		private final List<String> loadedNames = new ArrayList<>();
+
+		private InMemoryWeightsLoader(MatrixFactory matrixFactory) {
+			super(matrixFactory);
+		}
+
+		@Override
+		protected synchronized float[] loadWeights(String name) {
+			loadedNames.add(name);
+			return tensors.get(name);
+		}
+	}
+}
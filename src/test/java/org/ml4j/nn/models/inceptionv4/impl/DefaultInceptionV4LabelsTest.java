@@ -0,0 +1,52 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultInceptionV4LabelsTest {
+
+	private DefaultInceptionV4Labels labels;
+
+	@Before
+	public void setUp() throws IOException {
+		labels = new DefaultInceptionV4Labels(DefaultInceptionV4LabelsTest.class.getClassLoader());
+	}
+
+	@Test
+	public void testGetLabel() {
+		Assert.assertEquals("undetermined", labels.getLabel(0));
+		Assert.assertEquals("goldfish, Carassius auratus", labels.getLabel(2));
+	}
+
+	@Test
+	public void testGetLabels() {
+		Assert.assertArrayEquals(new String[] { "goldfish, Carassius auratus", "undetermined" },
+				labels.getLabels(new int[] { 2, 0 }));
+	}
+
+	@Test
+	public void testGetFirstLabels() {
+		String[] firstLabels = new String[3];
+		labels.getLabels(new int[] { 2, 0, -1 }, 2, firstLabels);
+		Assert.assertArrayEquals(new String[] { "goldfish, Carassius auratus", "undetermined", null }, firstLabels);
+	}
+
+	@Test
+	public void testGetEncodedLabel() {
+		Assert.assertArrayEquals("tench, Tinca tinca".getBytes(StandardCharsets.UTF_8), labels.getEncodedLabel(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetLabelOutOfRange() {
+		labels.getLabel(1001);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetLabelsOutOfRange() {
+		labels.getLabels(new int[] { 0, -1 });
+	}
+}
@@ -0,0 +1,102 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.axons.WeightsMatrix;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class FileSystemInceptionV4WeightsLoaderImplTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private Matrix mockMatrix;
+
+	private Path weightsRoot;
+
+	private Path tensorDirectory;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(),
+				Mockito.anyInt(), Mockito.any())).thenReturn(mockMatrix);
+
+		weightsRoot = temporaryFolder.getRoot().toPath();
+		tensorDirectory = Files.createDirectories(
+				weightsRoot.resolve(InceptionV4WeightsResources.getSerializedTensorDirectory()));
+		serialize("conv2d_1_kernel0", new float[] { 1f, -2f, 3.5f, 4f, 5f, 6f });
+	}
+
+	private void serialize(String name, float[] values) throws IOException {
+		try (OutputStream os = Files.newOutputStream(tensorDirectory.resolve(name + ".ser"));
+				ObjectOutputStream oos = new ObjectOutputStream(os)) {
+			oos.writeObject(values);
+		}
+	}
+
+	@Test
+	public void testGetConvolutionalLayerWeights() {
+
+		FileSystemInceptionV4WeightsLoaderImpl weightsLoader = new FileSystemInceptionV4WeightsLoaderImpl(
+				weightsRoot, mockMatrixFactory);
+
+		WeightsMatrix weightsMatrix = weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+
+		ArgumentCaptor<float[]> valuesCaptor = ArgumentCaptor.forClass(float[].class);
+		Mockito.verify(mockMatrixFactory).createMatrixFromRowsByRowsArray(Mockito.eq(2), Mockito.eq(3), valuesCaptor.capture());
+
+		Assert.assertArrayEquals(new float[] { 1f, -2f, 3.5f, 4f, 5f, 6f }, valuesCaptor.getValue(), 0f);
+		Assert.assertEquals(mockMatrix, weightsMatrix.getMatrix());
+	}
+
+	@Test
+	public void testGetTensorNames() throws IOException {
+
+		serialize("batch_normalization_1_beta0", new float[] { 0.5f, -1f });
+		Files.write(tensorDirectory.resolve("README"), new byte[] { 1 });
+
+		FileSystemInceptionV4WeightsLoaderImpl weightsLoader = new FileSystemInceptionV4WeightsLoaderImpl(
+				weightsRoot, mockMatrixFactory);
+
+		Assert.assertEquals(Arrays.asList("batch_normalization_1_beta0", "conv2d_1_kernel0"),
+				new ArrayList<>(weightsLoader.getTensorNames()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequestedShapeMismatch() {
+		new FileSystemInceptionV4WeightsLoaderImpl(weightsRoot, mockMatrixFactory)
+				.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 4, 2);
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void testTruncatedTensor() throws IOException {
+		Path tensorPath = tensorDirectory.resolve("conv2d_1_kernel0.ser");
+		byte[] bytes = Files.readAllBytes(tensorPath);
+		Files.write(tensorPath, Arrays.copyOf(bytes, bytes.length - 4));
+
+		new FileSystemInceptionV4WeightsLoaderImpl(weightsRoot, mockMatrixFactory)
+				.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+	}
+}
@@ -0,0 +1,14 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HalfPrecisionTest {
+
+	@Test
+	public void testHalfPrecisionRounding() {
+		Assert.assertEquals(1f, HalfPrecision.halfToFloat(HalfPrecision.floatToHalf(1.0002f)), 0f);
+		Assert.assertEquals(Float.POSITIVE_INFINITY, HalfPrecision.halfToFloat(HalfPrecision.floatToHalf(70000f)), 0f);
+		Assert.assertEquals(0x1p-24f, HalfPrecision.halfToFloat(HalfPrecision.floatToHalf(0x1p-24f)), 0f);
+	}
+}
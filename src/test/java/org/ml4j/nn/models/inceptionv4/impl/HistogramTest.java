@@ -0,0 +1,35 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testBucketBounds() {
+		for (long value : new long[] { 0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE }) {
+			int index = Histogram.bucketIndex(value);
+			Assert.assertTrue(Histogram.bucketLowerBound(index) <= value);
+			if (value < Long.MAX_VALUE) {
+				Assert.assertTrue(Histogram.bucketLowerBound(index + 1) > value);
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+
+		Histogram histogram = new Histogram();
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		histogram.record(-1);
+
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(500.5, histogram.getMean(), 0);
+		Assert.assertEquals(1000, histogram.getMax());
+		Assert.assertEquals(500, histogram.getPercentile(50), 500 * 0.125);
+		Assert.assertEquals(990, histogram.getPercentile(99), 990 * 0.125);
+		Assert.assertEquals(1000, histogram.getPercentile(100));
+	}
+}
@@ -0,0 +1,36 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.neurons.Neurons;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.NeuronsActivationImpl;
+import org.ml4j.nn.neurons.format.NeuronsActivationFormat;
+import org.mockito.Mockito;
+
+public class InceptionV4ActivationsTest {
+
+	/**
+	 * Create 3-class scores for 2 examples, with a row per class and a column per example.
+	 */
+	static NeuronsActivation createScores(MatrixFactory matrixFactory) {
+		Matrix scores = Mockito.mock(Matrix.class);
+		Mockito.when(scores.getRows()).thenReturn(3);
+		Mockito.when(scores.getColumns()).thenReturn(2);
+		Mockito.when(scores.getRowByRowArray()).thenReturn(new float[] { 0.1f, 0.7f, 0.6f, 0.2f, 0.3f, 0.1f });
+		return new NeuronsActivationImpl(new Neurons(3, false), scores, NeuronsActivationFormat.ROWS_SPAN_FEATURE_SET);
+	}
+
+	@Test
+	public void testGetExampleMajorActivations() {
+
+		MatrixFactory matrixFactory = Mockito.mock(MatrixFactory.class);
+
+		float[] exampleMajor = InceptionV4Activations.getExampleMajorActivations(createScores(matrixFactory),
+				matrixFactory, null);
+
+		Assert.assertArrayEquals(new float[] { 0.1f, 0.6f, 0.3f, 0.7f, 0.2f, 0.1f }, exampleMajor, 0f);
+	}
+}
@@ -0,0 +1,128 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class InceptionV4BottleneckTrainerTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private Matrix mockMatrix;
+
+	@Mock
+	private SupervisedFeedForwardNeuralNetwork mockTail;
+
+	@Mock
+	private FeedForwardNeuralNetworkContext mockTrainingContext;
+
+	@Mock
+	private FeedForwardNeuralNetworkContext mockMiniBatchContext;
+
+	private InceptionV4FeatureStore bottleneckFeatures;
+
+	private List<float[]> features;
+
+	private List<float[]> labels;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		features = new ArrayList<>();
+		labels = new ArrayList<>();
+		// Copy the values of each matrix, as the trainer reuses its mini-batch buffer
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenAnswer(invocation -> {
+					float[] values = (float[]) invocation.getArguments()[2];
+					((Integer) invocation.getArguments()[0] == 2 ? labels : features)
+							.add(Arrays.copyOf(values, values.length));
+					return mockMatrix;
+				});
+		Mockito.when(mockTrainingContext.dup()).thenReturn(mockMiniBatchContext);
+
+		// Three 1 x 1 x 1536 bottleneck feature maps, each filled with its record index
+		int featureCount = InceptionV4FeatureExtractor.FEATURE_DEPTH;
+		Path featuresPath = temporaryFolder.getRoot().toPath().resolve("bottleneck.features");
+		try (InceptionV4FeatureStoreWriter writer = InceptionV4FeatureStoreWriter.open(featuresPath,
+				PackedTensorDataType.FLOAT32, featureCount, 3)) {
+			for (String id : Arrays.asList("0.jpg", "1.jpg", "2.jpg")) {
+				float[] recordFeatures = new float[featureCount];
+				Arrays.fill(recordFeatures, Integer.parseInt(id.substring(0, 1)));
+				writer.write(id, recordFeatures, 0);
+			}
+		}
+		bottleneckFeatures = InceptionV4FeatureStore.open(featuresPath);
+	}
+
+	@Test
+	public void testTrainTailFromCachedFeatures() {
+
+		new InceptionV4BottleneckTrainer(mockMatrixFactory).trainTail(mockTail, mockTrainingContext,
+				bottleneckFeatures, id -> id.equals("2.jpg") ? 0 : 1, 2, 3, 2, 7L);
+
+		// Each mini-batch is trained for one epoch with a copy of the caller's context
+		Mockito.verify(mockMiniBatchContext).setTrainingEpochs(1);
+		Mockito.verify(mockMiniBatchContext).setTrainingMiniBatchSize(2);
+		Mockito.verify(mockTrainingContext).dup();
+		Mockito.verifyNoMoreInteractions(mockTrainingContext);
+		Mockito.verify(mockTail, Mockito.times(6)).train(Mockito.any(NeuronsActivation.class),
+				Mockito.any(NeuronsActivation.class), Mockito.eq(mockMiniBatchContext));
+
+		// Each epoch is a mini-batch of two records followed by a mini-batch of one
+		Assert.assertEquals(6, features.size());
+		Assert.assertEquals(6, labels.size());
+		List<List<Float>> epochOrders = new ArrayList<>();
+		for (int epoch = 0; epoch < 3; epoch++) {
+			List<Float> epochOrder = new ArrayList<>();
+			for (int batchIndex = epoch * 2; batchIndex < epoch * 2 + 2; batchIndex++) {
+				int size = batchIndex % 2 == 0 ? 2 : 1;
+				Assert.assertEquals(1536 * size, features.get(batchIndex).length);
+				// Each example keeps its features and its one-hot label together
+				for (int exampleIndex = 0; exampleIndex < size; exampleIndex++) {
+					float recordIndex = features.get(batchIndex)[exampleIndex];
+					Assert.assertEquals(recordIndex, features.get(batchIndex)[1535 * size + exampleIndex], 0f);
+					int labelIndex = recordIndex == 2f ? 0 : 1;
+					Assert.assertEquals(1f, labels.get(batchIndex)[labelIndex * size + exampleIndex], 0f);
+					Assert.assertEquals(0f, labels.get(batchIndex)[(1 - labelIndex) * size + exampleIndex], 0f);
+					epochOrder.add(recordIndex);
+				}
+			}
+			// Every record is visited once in each epoch
+			List<Float> recordIndices = new ArrayList<>(epochOrder);
+			Collections.sort(recordIndices);
+			Assert.assertEquals(Arrays.asList(0f, 1f, 2f), recordIndices);
+			epochOrders.add(epochOrder);
+		}
+		// The records are reshuffled each epoch
+		Assert.assertTrue(!epochOrders.get(0).equals(epochOrders.get(1))
+				|| !epochOrders.get(1).equals(epochOrders.get(2)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLabelIndexOutOfRange() {
+		new InceptionV4BottleneckTrainer(mockMatrixFactory).trainTail(mockTail, mockTrainingContext,
+				bottleneckFeatures, id -> 2, 2, 5, 2, 7L);
+	}
+}
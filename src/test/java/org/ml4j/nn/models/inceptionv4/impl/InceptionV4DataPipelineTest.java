@@ -0,0 +1,79 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InceptionV4DataPipelineTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path writeSolidImage(int red) throws IOException {
+		BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, red << 16 | 255 - red);
+			}
+		}
+		Path path = temporaryFolder.getRoot().toPath().resolve(red + ".png");
+		ImageIO.write(image, "png", path.toFile());
+		return path;
+	}
+
+	@Test
+	public void testBatchesEveryReadableImage() throws Exception {
+
+		List<Path> imagePaths = new ArrayList<>();
+		for (int red = 0; red < 11; red++) {
+			imagePaths.add(writeSolidImage(red * 10));
+		}
+		Path corrupt = temporaryFolder.newFile("corrupt.png").toPath();
+		Files.write(corrupt, new byte[] { 1, 2, 3 });
+		imagePaths.add(3, corrupt);
+
+		Set<Integer> labels = new HashSet<>();
+		try (InceptionV4DataPipeline pipeline = new InceptionV4DataPipeline(imagePaths.iterator(),
+				id -> id.equals(corrupt.toString()) ? -1
+						: Integer.parseInt(Paths.get(id).getFileName().toString().replace(".png", "")),
+				new InceptionV4ImagePreprocessor(), InceptionV4DataPipeline.randomHorizontalFlip(0.5), 4, 2, 2, 2, 3,
+				2)) {
+			int lastFeatureIndex = InceptionV4Activations.INPUT_FEATURE_COUNT - 1;
+			List<Integer> batchSizes = new ArrayList<>();
+			for (InceptionV4DataPipeline.Batch batch = pipeline.take(); batch != null; batch = pipeline.take()) {
+				try (InceptionV4DataPipeline.Batch used = batch) {
+					int[] labelIndices = batch.getLabelIndices();
+					for (int exampleIndex = 0; exampleIndex < batch.getSize(); exampleIndex++) {
+						// The first feature of each example is its red activation
+						Assert.assertEquals(labelIndices[exampleIndex] / 127.5f - 1f,
+								batch.getActivations()[exampleIndex], 1e-6f);
+						// and the last feature, in the last channel plane, its blue activation
+						Assert.assertEquals((255 - labelIndices[exampleIndex]) / 127.5f - 1f,
+								batch.getActivations()[lastFeatureIndex * batch.getSize() + exampleIndex], 1e-6f);
+						labels.add(labelIndices[exampleIndex]);
+					}
+					batchSizes.add(batch.getSize());
+				}
+			}
+			Assert.assertNull(pipeline.take());
+			Assert.assertEquals(3, batchSizes.size());
+			Assert.assertEquals(Integer.valueOf(3), batchSizes.get(2));
+			Assert.assertEquals(11, labels.size());
+			Assert.assertEquals(1, pipeline.getStageMetrics().get(1).getFailedCount());
+			Assert.assertEquals(11, pipeline.getStageMetrics().get(3).getProcessedCount());
+		}
+	}
+}
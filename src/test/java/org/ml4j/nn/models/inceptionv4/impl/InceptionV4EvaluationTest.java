@@ -0,0 +1,119 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.NeuronsActivationFeatureOrientation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mockito;
+
+public class InceptionV4EvaluationTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testListLabelledImages() throws IOException {
+
+		Path root = temporaryFolder.getRoot().toPath();
+		Path goldfish = Files.createDirectory(root.resolve("2"));
+		Path tench = Files.createDirectory(root.resolve("1"));
+		Files.createFile(goldfish.resolve("b.jpg"));
+		Files.createFile(goldfish.resolve("a.jpg"));
+		Files.createFile(goldfish.resolve("notes.txt"));
+		Files.createFile(tench.resolve("c.jpg"));
+		Files.createFile(root.resolve("README"));
+
+		Map<Path, Integer> labelledImages = InceptionV4Evaluation.listLabelledImages(root);
+
+		Assert.assertEquals(Arrays.asList(tench.resolve("c.jpg"), goldfish.resolve("a.jpg"), goldfish.resolve("b.jpg")),
+				new ArrayList<>(labelledImages.keySet()));
+		Assert.assertEquals(Arrays.asList(1, 2, 2), new ArrayList<>(labelledImages.values()));
+	}
+
+	@Test
+	public void testReportCountsTop1AndTop5() {
+
+		InceptionV4Evaluation.Report report = new InceptionV4Evaluation.Report();
+		int[] topIndices = new int[] { 7, 3, 9, 1, 4, 2, 8, 6, 5, 0 };
+
+		report.add(topIndices, 0, 7);
+		report.add(topIndices, 0, 4);
+		report.add(topIndices, 5, 0);
+		report.add(topIndices, 5, 9);
+
+		Assert.assertEquals(4, report.getImageCount());
+		Assert.assertEquals(0.25, report.getTop1Accuracy(), 0);
+		Assert.assertEquals(0.75, report.getTop5Accuracy(), 0);
+	}
+
+	@Test
+	public void testEvaluate() throws Exception {
+
+		Path root = temporaryFolder.getRoot().toPath();
+		writeImage(Files.createDirectory(root.resolve("0")).resolve("a.png"));
+		writeImage(root.resolve("0").resolve("b.png"));
+		writeImage(Files.createDirectory(root.resolve("1")).resolve("c.png"));
+		writeImage(Files.createDirectory(root.resolve("2")).resolve("d.png"));
+
+		MatrixFactory mockMatrixFactory = Mockito.mock(MatrixFactory.class);
+		Matrix inputMatrix = Mockito.mock(Matrix.class);
+		Mockito.when(inputMatrix.getRows()).thenReturn(InceptionV4Activations.INPUT_FEATURE_COUNT);
+		Mockito.when(inputMatrix.getColumns()).thenReturn(2);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenReturn(inputMatrix);
+		FeedForwardNeuralNetworkContext mockContext = Mockito.mock(FeedForwardNeuralNetworkContext.class);
+		Mockito.when(mockContext.getMatrixFactory()).thenReturn(mockMatrixFactory);
+
+		// Every example ranks the six classes 0, 5, 4, 3, 2, 1
+		Matrix scores = Mockito.mock(Matrix.class);
+		Mockito.when(scores.getRows()).thenReturn(6);
+		Mockito.when(scores.getColumns()).thenReturn(2);
+		Mockito.when(scores.getRowByRowArray()).thenReturn(
+				new float[] { 0.9f, 0.9f, 0.01f, 0.01f, 0.02f, 0.02f, 0.03f, 0.03f, 0.04f, 0.04f, 0.05f, 0.05f });
+		NeuronsActivation outputActivations = Mockito.mock(NeuronsActivation.class);
+		Mockito.when(outputActivations.getActivations(mockMatrixFactory)).thenReturn(scores);
+		Mockito.when(outputActivations.getFeatureCount()).thenReturn(6);
+		Mockito.when(outputActivations.getFeatureOrientation())
+				.thenReturn(NeuronsActivationFeatureOrientation.ROWS_SPAN_FEATURE_SET);
+		SupervisedFeedForwardNeuralNetwork mockNetwork = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+				Mockito.RETURNS_DEEP_STUBS);
+		Mockito.when(mockNetwork.forwardPropagate(Mockito.any(NeuronsActivation.class), Mockito.eq(mockContext))
+				.getOutput()).thenReturn(outputActivations);
+
+		InceptionV4Evaluation.Report report;
+		try (InceptionV4NetworkPool networkPool = new InceptionV4NetworkPool(() -> mockNetwork, 1, 1, 1,
+				TimeUnit.MINUTES)) {
+			report = new InceptionV4Evaluation(networkPool, mockContext, 2).evaluate(
+					InceptionV4Evaluation.listLabelledImages(root), new InceptionV4ImagePreprocessor(), 2, 2);
+		}
+
+		// Both images of class 0 are top-1 correct and the image of class 2 is
+		// top-5 correct, but class 1 is ranked last
+		Assert.assertEquals(4, report.getImageCount());
+		Assert.assertEquals(0.5, report.getTop1Accuracy(), 0);
+		Assert.assertEquals(0.75, report.getTop5Accuracy(), 0);
+		Assert.assertEquals(2, report.getBatchLatencyNanos().getCount());
+		Assert.assertTrue(report.getPeakHeapBytes() > 0);
+	}
+
+	private static void writeImage(Path path) throws IOException {
+		ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR), "png", path.toFile());
+	}
+}
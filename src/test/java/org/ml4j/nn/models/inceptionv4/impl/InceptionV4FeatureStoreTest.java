@@ -0,0 +1,94 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InceptionV4FeatureStoreTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testResumeAfterPartialRecord() throws IOException {
+
+		Path featuresPath = temporaryFolder.getRoot().toPath().resolve("embeddings.features");
+
+		try (InceptionV4FeatureStoreWriter writer = InceptionV4FeatureStoreWriter.open(featuresPath,
+				PackedTensorDataType.FLOAT16, 3, 2)) {
+			writer.write("a.jpg", new float[] { 0.5f, -1.25f, 3f, 1f, 2f, 4f }, 0);
+			writer.write("b.jpg", new float[] { 0.5f, -1.25f, 3f, 1f, 2f, 4f }, 3);
+		}
+
+		// Simulate a batch interrupted part way through writing its features
+		Files.write(featuresPath, new byte[] { 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+
+		try (InceptionV4FeatureStoreWriter writer = InceptionV4FeatureStoreWriter.open(featuresPath,
+				PackedTensorDataType.FLOAT16, 3, 2)) {
+			Assert.assertEquals(2, writer.getCommittedRecordCount());
+			writer.write("c.jpg", new float[] { -0.25f, 0f, 65504f }, 0);
+		}
+
+		InceptionV4FeatureStore featureStore = InceptionV4FeatureStore.open(featuresPath);
+
+		Assert.assertEquals(3, featureStore.getRecordCount());
+		Assert.assertEquals(3, featureStore.getFeatureCount());
+		Assert.assertEquals(Arrays.asList("a.jpg", "b.jpg", "c.jpg"), featureStore.getIds());
+		Assert.assertEquals("b.jpg", featureStore.getId(1));
+
+		float[] features = new float[3];
+		featureStore.readFeatures(1, features, 0);
+		Assert.assertArrayEquals(new float[] { 1f, 2f, 4f }, features, 0f);
+		featureStore.readFeatures(2, features, 0);
+		Assert.assertArrayEquals(new float[] { -0.25f, 0f, 65504f }, features, 0f);
+	}
+
+	@Test
+	public void testIdsAreDecodedOnRequest() throws IOException {
+
+		Path featuresPath = temporaryFolder.getRoot().toPath().resolve("embeddings.features");
+
+		try (InceptionV4FeatureStoreWriter writer = InceptionV4FeatureStoreWriter.open(featuresPath,
+				PackedTensorDataType.FLOAT32, 1, 3)) {
+			writer.write("caf\u00e9.jpg", new float[] { 1f }, 0);
+			writer.write("", new float[] { 2f }, 0);
+			writer.write("\u732b.png", new float[] { 3f }, 0);
+		}
+
+		InceptionV4FeatureStore featureStore = InceptionV4FeatureStore.open(featuresPath);
+
+		Assert.assertEquals("\u732b.png", featureStore.getId(2));
+		Assert.assertEquals("", featureStore.getId(1));
+		Assert.assertEquals("caf\u00e9.jpg", featureStore.getId(0));
+		Assert.assertEquals(3, featureStore.getIds().size());
+		try {
+			featureStore.getId(3);
+			Assert.fail("Expected the record index to be out of range");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testStoreWithFewerIdsThanRecordsIsRejected() throws IOException {
+
+		Path featuresPath = temporaryFolder.getRoot().toPath().resolve("embeddings.features");
+
+		try (InceptionV4FeatureStoreWriter writer = InceptionV4FeatureStoreWriter.open(featuresPath,
+				PackedTensorDataType.FLOAT32, 1, 2)) {
+			writer.write("a.jpg", new float[] { 1f }, 0);
+			writer.write("b.jpg", new float[] { 2f }, 0);
+		}
+		Files.write(InceptionV4FeatureStore.getIdsPath(featuresPath), "a.jpg\n".getBytes(StandardCharsets.UTF_8));
+
+		InceptionV4FeatureStore.open(featuresPath);
+	}
+}
@@ -0,0 +1,93 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InceptionV4ImagePreprocessorTest {
+
+	private static BufferedImage createGradient(int imageType) {
+		BufferedImage image = new BufferedImage(640, 480, imageType);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, 0xff000000 | (x * 255 / 639) << 16 | (y * 255 / 479) << 8 | ((x + y) & 0xff));
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void testSolidColour() {
+
+		BufferedImage image = new BufferedImage(50, 80, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, 0xff0080);
+			}
+		}
+
+		float[] activations = new InceptionV4ImagePreprocessor(InceptionV4ImagePreprocessor.INCEPTION_CENTRAL_FRACTION)
+				.preprocess(image);
+
+		int planeSize = InceptionV4ImagePreprocessor.IMAGE_SIZE * InceptionV4ImagePreprocessor.IMAGE_SIZE;
+		Assert.assertEquals(planeSize * 3, activations.length);
+		for (int i = 0; i < planeSize; i++) {
+			Assert.assertEquals(1f, activations[i], 0f);
+			Assert.assertEquals(-1f, activations[planeSize + i], 0f);
+			Assert.assertEquals(128 / 127.5f - 1f, activations[2 * planeSize + i], 0f);
+		}
+	}
+
+	@Test
+	public void testRasterLayoutsAgree() {
+
+		InceptionV4ImagePreprocessor preprocessor = new InceptionV4ImagePreprocessor(0.875f);
+		float[] expected = preprocessor.preprocess(createGradient(BufferedImage.TYPE_INT_RGB));
+
+		Assert.assertArrayEquals(expected, preprocessor.preprocess(createGradient(BufferedImage.TYPE_3BYTE_BGR)), 0f);
+		Assert.assertArrayEquals(expected, preprocessor.preprocess(createGradient(BufferedImage.TYPE_INT_ARGB)), 0f);
+		Assert.assertArrayEquals(expected, preprocessor.preprocess(createGradient(BufferedImage.TYPE_USHORT_565_RGB)),
+				2 / 127.5f * 8);
+	}
+
+	@Test
+	public void testPreprocessImagesIntoBatch() {
+
+		InceptionV4ImagePreprocessor preprocessor = new InceptionV4ImagePreprocessor();
+		BufferedImage gradient = createGradient(BufferedImage.TYPE_3BYTE_BGR);
+		BufferedImage subimage = gradient.getSubimage(10, 20, 300, 200);
+		float[] batch = InceptionV4ImagePreprocessor.createBatchBuffer(3);
+
+		preprocessor.preprocessImages(Arrays.asList(gradient, subimage), batch, 3);
+
+		float[] first = preprocessor.preprocess(gradient);
+		float[] second = preprocessor.preprocess(subimage);
+		for (int feature = 0; feature < first.length; feature++) {
+			Assert.assertEquals(first[feature], batch[feature * 3], 0f);
+			Assert.assertEquals(second[feature], batch[feature * 3 + 1], 0f);
+			Assert.assertEquals(0f, batch[feature * 3 + 2], 0f);
+		}
+	}
+
+	@Test
+	public void testMirroredRegion() {
+
+		InceptionV4ImagePreprocessor preprocessor = new InceptionV4ImagePreprocessor(0.875f);
+		BufferedImage gradient = createGradient(BufferedImage.TYPE_3BYTE_BGR);
+		int cropWidth = Math.round(gradient.getWidth() * 0.875f);
+		int cropHeight = Math.round(gradient.getHeight() * 0.875f);
+		float[] batch = InceptionV4ImagePreprocessor.createBatchBuffer(2);
+
+		preprocessor.preprocess(gradient, (gradient.getWidth() - cropWidth) / 2,
+				(gradient.getHeight() - cropHeight) / 2, cropWidth, cropHeight, true, batch, 1, 2);
+
+		float[] expected = preprocessor.preprocess(gradient);
+		int size = InceptionV4ImagePreprocessor.IMAGE_SIZE;
+		for (int feature = 0; feature < expected.length; feature++) {
+			int mirroredFeature = feature - feature % size + size - 1 - feature % size;
+			Assert.assertEquals(expected[feature], batch[mirroredFeature * 2 + 1], 0f);
+		}
+	}
+}
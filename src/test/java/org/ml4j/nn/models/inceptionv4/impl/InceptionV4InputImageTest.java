@@ -0,0 +1,59 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InceptionV4InputImageTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testFromDirectorySkipsFilesWhichAreNotImages() throws IOException {
+
+		Path directory = temporaryFolder.getRoot().toPath();
+		Path nested = Files.createDirectories(directory.resolve("nested"));
+		for (Path file : Arrays.asList(directory.resolve("b.jpg"), directory.resolve("README"),
+				directory.resolve(".DS_Store"), directory.resolve("notes.txt"), nested.resolve("a.PNG"))) {
+			Files.write(file, new byte[] { 1 });
+		}
+
+		List<String> ids = new ArrayList<>();
+		Iterator<InceptionV4InputImage> images = InceptionV4InputImage.fromDirectory(directory, null);
+		images.forEachRemaining(image -> ids.add(directory.relativize(directory.resolve(image.getId())).toString()));
+
+		Assert.assertEquals(Arrays.asList("b.jpg", nested.getFileName() + "/a.PNG"), ids);
+	}
+
+	@Test
+	public void testFromDirectoryIteratesInPathOrder() throws IOException {
+
+		Path directory = temporaryFolder.getRoot().toPath();
+		Path nested = Files.createDirectories(directory.resolve("a"));
+		Path deeper = Files.createDirectories(nested.resolve("b"));
+		for (Path file : Arrays.asList(directory.resolve("a.jpg"), directory.resolve("c.jpg"), nested.resolve("z.jpg"),
+				deeper.resolve("a.jpg"))) {
+			Files.write(file, new byte[] { 1 });
+		}
+
+		List<String> ids = new ArrayList<>();
+		InceptionV4InputImage.fromDirectory(directory, null).forEachRemaining(image -> ids.add(image.getId()));
+
+		// The same order as sorting the full paths, with a.jpg before the files of directory a
+		List<String> sortedIds = new ArrayList<>(ids);
+		sortedIds.sort(null);
+		Assert.assertEquals(sortedIds, ids);
+		Assert.assertEquals(Arrays.asList(directory.resolve("a.jpg").toString(), deeper.resolve("a.jpg").toString(),
+				nested.resolve("z.jpg").toString(), directory.resolve("c.jpg").toString()), ids);
+	}
+}
@@ -0,0 +1,55 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InceptionV4MetricsJmxExporterTest {
+
+	private MBeanServer mbeanServer;
+
+	private InceptionV4MetricsJmxExporter exporter;
+
+	@Before
+	public void setUp() {
+		mbeanServer = MBeanServerFactory.newMBeanServer();
+		exporter = new InceptionV4MetricsJmxExporter(new InceptionV4ForwardPropagationMetrics(), mbeanServer);
+	}
+
+	@Test
+	public void testRegistersEachComponentOnce() throws JMException {
+
+		exporter.recordForwardPropagation("inceptionV4WithoutTail", 2000000, 1024, 268203, 98304, 8);
+		exporter.recordForwardPropagation("inceptionV4WithoutTail", 4000000, 2048, 268203, 98304, 8);
+		exporter.recordForwardPropagation("inceptionV4Tail", 1000000, 512, 98304, 1001, 8);
+
+		ObjectName queryName = new ObjectName(InceptionV4MetricsJmxExporter.DOMAIN + ":type=ForwardPropagation,*");
+		Assert.assertEquals(2, mbeanServer.queryNames(queryName, null).size());
+
+		ObjectName withoutTail = new ObjectName(InceptionV4MetricsJmxExporter.DOMAIN
+				+ ":type=ForwardPropagation,component=" + ObjectName.quote("inceptionV4WithoutTail"));
+		Assert.assertEquals(2L, mbeanServer.getAttribute(withoutTail, "ForwardPropagationCount"));
+		Assert.assertEquals(3.0, (Double) mbeanServer.getAttribute(withoutTail, "MeanWallTimeMillis"), 0);
+		Assert.assertEquals(268203, mbeanServer.getAttribute(withoutTail, "InputFeatures"));
+		Assert.assertEquals(98304, mbeanServer.getAttribute(withoutTail, "OutputFeatures"));
+	}
+
+	@Test
+	public void testCloseUnregistersComponents() throws JMException {
+
+		exporter.recordForwardPropagation("inceptionV4", 2000000, 1024, 268203, 1001, 8);
+		ObjectName queryName = new ObjectName(InceptionV4MetricsJmxExporter.DOMAIN + ":type=ForwardPropagation,*");
+		Assert.assertEquals(1, mbeanServer.queryNames(queryName, null).size());
+
+		exporter.close();
+
+		Assert.assertTrue(mbeanServer.queryNames(queryName, null).isEmpty());
+		// The metrics themselves are retained
+		Assert.assertEquals(1, exporter.getMetrics().getComponentMetrics("inceptionV4").getWallTimeNanos().getCount());
+	}
+}
@@ -0,0 +1,150 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mockito;
+
+public class InceptionV4NetworkPoolTest {
+
+	private final AtomicInteger constructedCount = new AtomicInteger();
+
+	private SupervisedFeedForwardNeuralNetwork constructNetwork() {
+		constructedCount.incrementAndGet();
+		return Mockito.mock(SupervisedFeedForwardNeuralNetwork.class);
+	}
+
+	@Test
+	public void testBorrowGrowsToMaxSize() throws Exception {
+
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(this::constructNetwork, 1, 2, 1,
+				TimeUnit.MINUTES)) {
+
+			Assert.assertEquals(1, constructedCount.get());
+
+			SupervisedFeedForwardNeuralNetwork first = pool.borrow(1, TimeUnit.SECONDS);
+			SupervisedFeedForwardNeuralNetwork second = pool.borrow(1, TimeUnit.SECONDS);
+
+			Assert.assertNotSame(first, second);
+			Assert.assertEquals(2, pool.getSize());
+			Assert.assertEquals(2, constructedCount.get());
+
+			try {
+				pool.borrow(10, TimeUnit.MILLISECONDS);
+				Assert.fail("Expected the borrow to time out");
+			} catch (TimeoutException e) {
+				// Expected
+			}
+
+			pool.giveBack(second);
+			Assert.assertSame(second, pool.borrow(1, TimeUnit.SECONDS));
+			Assert.assertEquals(2, constructedCount.get());
+		}
+	}
+
+	@Test
+	public void testIdleNetworksShrinkToMinSize() throws Exception {
+
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(this::constructNetwork, 1, 3, 0,
+				TimeUnit.NANOSECONDS)) {
+
+			SupervisedFeedForwardNeuralNetwork first = pool.borrow(1, TimeUnit.SECONDS);
+			SupervisedFeedForwardNeuralNetwork second = pool.borrow(1, TimeUnit.SECONDS);
+			Assert.assertEquals(2, pool.getSize());
+
+			Thread.sleep(1);
+			pool.giveBack(first);
+			Thread.sleep(1);
+			pool.giveBack(second);
+
+			Assert.assertEquals(1, pool.getSize());
+			Assert.assertEquals(1, pool.getIdleCount());
+		}
+	}
+
+	@Test
+	public void testFailedConstructionReleasesPermit() throws Exception {
+
+		AtomicInteger attempts = new AtomicInteger();
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(() -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IOException("Unable to construct network");
+			}
+			return constructNetwork();
+		}, 0, 1, 1, TimeUnit.MINUTES)) {
+
+			try {
+				pool.borrow(1, TimeUnit.SECONDS);
+				Assert.fail("Expected the construction to fail");
+			} catch (IOException e) {
+				// Expected
+			}
+			Assert.assertEquals(0, pool.getSize());
+			Assert.assertNotNull(pool.borrow(10, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testIdleNetworksAreEvictedOnBorrow() throws Exception {
+
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(this::constructNetwork, 1, 3, 50,
+				TimeUnit.MILLISECONDS)) {
+
+			SupervisedFeedForwardNeuralNetwork first = pool.borrow(1, TimeUnit.SECONDS);
+			SupervisedFeedForwardNeuralNetwork second = pool.borrow(1, TimeUnit.SECONDS);
+			pool.giveBack(second);
+			pool.giveBack(first);
+			Assert.assertEquals(2, pool.getIdleCount());
+
+			Thread.sleep(100);
+
+			// The oldest idle network is discarded, leaving the minimum size
+			Assert.assertSame(first, pool.borrow(1, TimeUnit.SECONDS));
+			Assert.assertEquals(1, pool.getSize());
+			Assert.assertEquals(0, pool.getIdleCount());
+			Assert.assertEquals(2, constructedCount.get());
+		}
+	}
+
+	@Test
+	public void testNetworkCannotBeReturnedTwice() throws Exception {
+
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(this::constructNetwork, 0, 1, 1,
+				TimeUnit.MINUTES)) {
+
+			SupervisedFeedForwardNeuralNetwork network = pool.borrow(1, TimeUnit.SECONDS);
+			pool.giveBack(network);
+
+			try {
+				pool.giveBack(network);
+				Assert.fail("Expected the second return to be rejected");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+			Assert.assertEquals(1, pool.getIdleCount());
+
+			// The rejected return did not release a second permit
+			Assert.assertSame(network, pool.borrow(1, TimeUnit.SECONDS));
+			try {
+				pool.borrow(10, TimeUnit.MILLISECONDS);
+				Assert.fail("Expected the borrow to time out");
+			} catch (TimeoutException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNetworkNotFromPoolIsRejected() throws Exception {
+
+		try (InceptionV4NetworkPool pool = new InceptionV4NetworkPool(this::constructNetwork, 1, 1, 1,
+				TimeUnit.MINUTES)) {
+			pool.giveBack(Mockito.mock(SupervisedFeedForwardNeuralNetwork.class));
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mockito;
+import org.mockito.mock.SerializableMode;
+
+public class InceptionV4NetworkSnapshotTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final String SNAPSHOT_KEY = "weights=0000002a ml4j=2.0.0";
+
+	private Path snapshotPath;
+
+	@Before
+	public void setUp() {
+		snapshotPath = temporaryFolder.getRoot().toPath().resolve("inceptionv4.snapshot");
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+
+		SupervisedFeedForwardNeuralNetwork network = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+				Mockito.withSettings().serializable(SerializableMode.ACROSS_CLASSLOADERS));
+
+		InceptionV4NetworkSnapshot.write(network, snapshotPath, SNAPSHOT_KEY);
+
+		Assert.assertTrue(Files.exists(snapshotPath));
+		Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+		Assert.assertNotNull(InceptionV4NetworkSnapshot.read(snapshotPath, getClass().getClassLoader(), SNAPSHOT_KEY));
+	}
+
+	@Test
+	public void testRestoreOrCreateRestoresSnapshot() throws IOException {
+
+		AtomicInteger constructions = new AtomicInteger();
+		for (int i = 0; i < 2; i++) {
+			Assert.assertNotNull(InceptionV4NetworkSnapshot.restoreOrCreate(snapshotPath,
+					getClass().getClassLoader(), SNAPSHOT_KEY, () -> {
+						constructions.incrementAndGet();
+						return Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+								Mockito.withSettings().serializable(SerializableMode.ACROSS_CLASSLOADERS));
+					}));
+		}
+
+		// The second network is restored from the snapshot written by the first
+		Assert.assertEquals(1, constructions.get());
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadRejectsDifferentKey() throws IOException {
+
+		InceptionV4NetworkSnapshot.write(Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+				Mockito.withSettings().serializable(SerializableMode.ACROSS_CLASSLOADERS)), snapshotPath, SNAPSHOT_KEY);
+
+		InceptionV4NetworkSnapshot.read(snapshotPath, getClass().getClassLoader(), "weights=0000002b ml4j=2.0.0");
+	}
+
+	@Test
+	public void testRestoreOrCreateRebuildsSnapshotWithDifferentKey() throws IOException {
+
+		AtomicInteger constructions = new AtomicInteger();
+		for (String snapshotKey : new String[] { SNAPSHOT_KEY, "weights=0000002b ml4j=2.0.0" }) {
+			Assert.assertNotNull(InceptionV4NetworkSnapshot.restoreOrCreate(snapshotPath,
+					getClass().getClassLoader(), snapshotKey, () -> {
+						constructions.incrementAndGet();
+						return Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+								Mockito.withSettings().serializable(SerializableMode.ACROSS_CLASSLOADERS));
+					}));
+		}
+
+		// The snapshot of the other weights is rebuilt and replaced
+		Assert.assertEquals(2, constructions.get());
+		Assert.assertNotNull(InceptionV4NetworkSnapshot.read(snapshotPath, getClass().getClassLoader(),
+				"weights=0000002b ml4j=2.0.0"));
+	}
+
+	@Test
+	public void testKeyIdentifiesWeights() {
+
+		InceptionV4WeightsManifest.Entry kernel = new InceptionV4WeightsManifest.Entry("conv2d_1_kernel0",
+				InceptionV4WeightsManifest.SERIALIZED_FLOAT32, new int[] { 2, 3 }, 24, 1);
+		InceptionV4WeightsManifest.Entry bias = new InceptionV4WeightsManifest.Entry("dense_1_bias0",
+				InceptionV4WeightsManifest.SERIALIZED_FLOAT32, new int[] { 2 }, 8, 2);
+		InceptionV4WeightsManifest.Entry retrainedBias = new InceptionV4WeightsManifest.Entry("dense_1_bias0",
+				InceptionV4WeightsManifest.SERIALIZED_FLOAT32, new int[] { 2 }, 8, 3);
+
+		String snapshotKey = InceptionV4NetworkSnapshot.createKey(
+				new InceptionV4WeightsManifest(Arrays.asList(kernel, bias)));
+
+		Assert.assertEquals(snapshotKey, InceptionV4NetworkSnapshot.createKey(
+				new InceptionV4WeightsManifest(Arrays.asList(bias, kernel))));
+		Assert.assertFalse(snapshotKey.equals(InceptionV4NetworkSnapshot.createKey(
+				new InceptionV4WeightsManifest(Arrays.asList(kernel, retrainedBias)))));
+	}
+
+	@Test
+	public void testRestoreOrCreateReturnsNetworkWhichCannotBeWritten() throws IOException {
+
+		SupervisedFeedForwardNeuralNetwork network = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class);
+
+		Assert.assertSame(network, InceptionV4NetworkSnapshot.restoreOrCreate(snapshotPath,
+				getClass().getClassLoader(), SNAPSHOT_KEY, () -> network));
+
+		// Neither the snapshot nor its temporary file is left behind
+		Assert.assertEquals(0, temporaryFolder.getRoot().list().length);
+	}
+}
@@ -0,0 +1,119 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Prediction;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.NeuronsActivationFeatureOrientation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mockito;
+
+public class InceptionV4TestTimeAugmentationTest {
+
+	private MatrixFactory matrixFactory;
+
+	private FeedForwardNeuralNetworkContext context;
+
+	private SupervisedFeedForwardNeuralNetwork network;
+
+	private InceptionV4TestTimeAugmentation tenCrop;
+
+	private List<BufferedImage> images;
+
+	@Before
+	public void setUp() {
+		matrixFactory = Mockito.mock(MatrixFactory.class);
+		Mockito.when(matrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenAnswer(invocation -> createMatrix((Integer) invocation.getArguments()[0],
+						(Integer) invocation.getArguments()[1], (float[]) invocation.getArguments()[2]));
+		context = Mockito.mock(FeedForwardNeuralNetworkContext.class);
+		network = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class, Mockito.RETURNS_DEEP_STUBS);
+		tenCrop = InceptionV4TestTimeAugmentation.createTenCrop(network, context, matrixFactory,
+				labelIndex -> "label" + labelIndex);
+
+		// The left half of the first image is red, the second image is black
+		BufferedImage halfRed = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y = 0; y < halfRed.getHeight(); y++) {
+			for (int x = 0; x < halfRed.getWidth() / 2; x++) {
+				halfRed.setRGB(x, y, 0xff0000);
+			}
+		}
+		images = Arrays.asList(halfRed, new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+	}
+
+	private static Matrix createMatrix(int rows, int columns, float[] values) {
+		Matrix matrix = Mockito.mock(Matrix.class);
+		Mockito.when(matrix.getRows()).thenReturn(rows);
+		Mockito.when(matrix.getColumns()).thenReturn(columns);
+		Mockito.when(matrix.getRowByRowArray()).thenReturn(values);
+		return matrix;
+	}
+
+	@Test
+	public void testViewsOfEachImageAreConsecutive() {
+
+		float[] batch = tenCrop.createBatch(images);
+
+		int batchSize = 20;
+		int lastColumnOfFirstRow = InceptionV4ImagePreprocessor.IMAGE_SIZE - 1;
+		for (int exampleIndex = 0; exampleIndex < batchSize; exampleIndex++) {
+			float left = batch[exampleIndex];
+			float right = batch[lastColumnOfFirstRow * batchSize + exampleIndex];
+			if (exampleIndex >= 10) {
+				Assert.assertEquals(-1f, left, 1e-6f);
+				Assert.assertEquals(-1f, right, 1e-6f);
+			} else if (exampleIndex % 2 == 0) {
+				Assert.assertEquals(1f, left, 1e-6f);
+				Assert.assertEquals(-1f, right, 1e-6f);
+			} else {
+				// Each crop is followed by its mirror image
+				Assert.assertEquals(-1f, left, 1e-6f);
+				Assert.assertEquals(1f, right, 1e-6f);
+			}
+		}
+	}
+
+	@Test
+	public void testScoresOfViewsAreAveraged() {
+
+		// Three classes scored e, 7 and 20 - e for the example e of each view
+		float[] viewScores = new float[3 * 20];
+		for (int exampleIndex = 0; exampleIndex < 20; exampleIndex++) {
+			viewScores[exampleIndex] = exampleIndex;
+			viewScores[20 + exampleIndex] = 7;
+			viewScores[40 + exampleIndex] = 20 - exampleIndex;
+		}
+		NeuronsActivation outputActivations = Mockito.mock(NeuronsActivation.class);
+		Mockito.when(outputActivations.getActivations(matrixFactory)).thenReturn(createMatrix(3, 20, viewScores));
+		Mockito.when(outputActivations.getFeatureOrientation())
+				.thenReturn(NeuronsActivationFeatureOrientation.ROWS_SPAN_FEATURE_SET);
+		Mockito.when(network.forwardPropagate(Mockito.any(NeuronsActivation.class), Mockito.eq(context)).getOutput())
+				.thenReturn(outputActivations);
+
+		Assert.assertArrayEquals(new float[] { 4.5f, 7f, 15.5f, 14.5f, 7f, 5.5f }, tenCrop.getScores(images), 1e-6f);
+
+		List<List<InceptionV4Prediction>> predictions = tenCrop.classify(images, 1);
+		Assert.assertEquals(2, predictions.size());
+		Assert.assertEquals("label2", predictions.get(0).get(0).getLabel());
+		Assert.assertEquals(15.5f, predictions.get(0).get(0).getScore(), 1e-6f);
+		Assert.assertEquals("label0", predictions.get(1).get(0).getLabel());
+		Assert.assertEquals(14.5f, predictions.get(1).get(0).getScore(), 1e-6f);
+	}
+
+	@Test
+	public void testNoImages() {
+
+		Assert.assertEquals(0, tenCrop.getScores(Collections.emptyList()).length);
+		Assert.assertTrue(tenCrop.classify(Collections.emptyList(), 5).isEmpty());
+		Mockito.verifyZeroInteractions(network);
+	}
+}
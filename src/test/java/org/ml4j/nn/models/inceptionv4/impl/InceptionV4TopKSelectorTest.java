@@ -0,0 +1,44 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.mockito.Mockito;
+
+public class InceptionV4TopKSelectorTest {
+
+	@Test
+	public void testSelect() {
+
+		InceptionV4TopKSelector topKSelector = new InceptionV4TopKSelector(3);
+
+		float[] scores = new float[] {
+				0.1f, 0.5f, 0.05f, 0.2f, 0.15f,
+				0.3f, 0.0f, 0.3f, 0.1f, 0.3f };
+		int[] topIndices = new int[6];
+		float[] topScores = new float[6];
+
+		topKSelector.select(scores, 2, 5, topIndices, topScores);
+
+		Assert.assertArrayEquals(new int[] { 1, 3, 4, 0, 2, 4 }, topIndices);
+		Assert.assertArrayEquals(new float[] { 0.5f, 0.2f, 0.15f, 0.3f, 0.3f, 0.3f }, topScores, 0f);
+	}
+
+	@Test
+	public void testResolveLabelsOfPartialBatchInOneCall() {
+
+		InceptionV4Labels mockLabels = Mockito.mock(InceptionV4Labels.class);
+		int[] topIndices = new int[] { 1, 3, 0, 0 };
+		String[] topLabels = new String[4];
+
+		InceptionV4TopKSelector.resolveLabels(topIndices, 2, mockLabels, topLabels);
+
+		Mockito.verify(mockLabels).getLabels(topIndices, 2, topLabels);
+		Mockito.verifyNoMoreInteractions(mockLabels);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSelectMoreThanClassCount() {
+		new InceptionV4TopKSelector(5).selectRow(new float[3], 0, 3, new int[5], new float[5], 0);
+	}
+}
@@ -0,0 +1,133 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.ForwardPropagation;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class InceptionV4WarmUpTest {
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private Matrix mockInputMatrix;
+
+	@Mock
+	private SupervisedFeedForwardNeuralNetwork mockNetwork;
+
+	@Mock
+	private FeedForwardNeuralNetworkContext mockContext;
+
+	@Mock
+	private ForwardPropagation mockForwardPropagation;
+
+	private final AtomicLong nanoTime = new AtomicLong();
+
+	private final Deque<Long> passLatencies = new ArrayDeque<>();
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockInputMatrix.getRows()).thenReturn(InceptionV4Activations.INPUT_FEATURE_COUNT);
+		Mockito.when(mockInputMatrix.getColumns()).thenReturn(1);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenReturn(mockInputMatrix);
+		// Each pass takes the next latency, or 10ms once they run out
+		Mockito.when(mockNetwork.forwardPropagate(Mockito.any(NeuronsActivation.class), Mockito.eq(mockContext)))
+				.thenAnswer(invocation -> {
+					Long latency = passLatencies.poll();
+					nanoTime.addAndGet(latency == null ? 10_000_000L : latency);
+					return mockForwardPropagation;
+				});
+	}
+
+	private InceptionV4WarmUp createWarmUp(int[] batchSizes, int minPasses, int maxPasses, int window,
+			double tolerance) {
+		return new InceptionV4WarmUp(mockMatrixFactory, batchSizes, minPasses, maxPasses, window, tolerance,
+				nanoTime::get);
+	}
+
+	@Test
+	public void testStabilisesOnceLatenciesAgree() {
+
+		passLatencies.addAll(Arrays.asList(100_000_000L, 50_000_000L, 20_000_000L));
+
+		InceptionV4WarmUp.Report report = createWarmUp(new int[] { 1 }, 3, 20, 3, 0.1).warmUp(mockNetwork,
+				mockContext);
+
+		Assert.assertTrue(report.isStabilised());
+		InceptionV4WarmUp.BatchSizeResult result = report.getResults().get(0);
+		Assert.assertEquals(1, result.getBatchSize());
+		// The slow first passes are followed by three passes of 10ms
+		Assert.assertEquals(6, result.getPasses());
+		Assert.assertEquals(100_000_000L, result.getFirstPassNanos());
+		Assert.assertEquals(10_000_000L, result.getSteadyStateNanos());
+		Mockito.verify(mockNetwork, Mockito.times(6)).forwardPropagate(Mockito.any(NeuronsActivation.class),
+				Mockito.eq(mockContext));
+		Mockito.verify(mockForwardPropagation, Mockito.times(6)).getOutput();
+	}
+
+	@Test
+	public void testMinPassesAreAlwaysMade() {
+
+		InceptionV4WarmUp.Report report = createWarmUp(new int[] { 1 }, 5, 20, 2, 0.1).warmUp(mockNetwork,
+				mockContext);
+
+		Assert.assertTrue(report.isStabilised());
+		Assert.assertEquals(5, report.getResults().get(0).getPasses());
+	}
+
+	@Test
+	public void testStopsAtMaxPassesWithoutStabilising() {
+
+		for (int i = 0; i < 10; i++) {
+			passLatencies.add(i % 2 == 0 ? 10_000_000L : 20_000_000L);
+		}
+
+		InceptionV4WarmUp.Report report = createWarmUp(new int[] { 1, 2 }, 2, 5, 2, 0.1).warmUp(mockNetwork,
+				mockContext);
+
+		Assert.assertFalse(report.isStabilised());
+		Assert.assertEquals(2, report.getResults().size());
+		Assert.assertFalse(report.getResults().get(0).isStabilised());
+		Assert.assertEquals(5, report.getResults().get(0).getPasses());
+		Assert.assertEquals(1, report.getResults().get(0).getBatchSize());
+		Assert.assertFalse(report.getResults().get(1).isStabilised());
+		Assert.assertEquals(5, report.getResults().get(1).getPasses());
+		Assert.assertEquals(2, report.getResults().get(1).getBatchSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoBatchSizesAreRejected() {
+		createWarmUp(new int[0], 3, 20, 3, 0.1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveBatchSizeIsRejected() {
+		createWarmUp(new int[] { 1, 0 }, 3, 20, 3, 0.1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveToleranceIsRejected() {
+		createWarmUp(new int[] { 1 }, 3, 20, 3, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWindowLargerThanMaxPassesIsRejected() {
+		createWarmUp(new int[] { 1 }, 3, 4, 5, 0.1);
+	}
+}
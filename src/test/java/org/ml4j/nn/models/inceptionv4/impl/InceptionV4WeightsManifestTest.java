@@ -0,0 +1,160 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class InceptionV4WeightsManifestTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private Matrix mockMatrix;
+
+	private Path packedWeightsPath;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(),
+				Mockito.anyInt(), Mockito.any())).thenReturn(mockMatrix);
+
+		packedWeightsPath = temporaryFolder.newFile("inceptionv4.weights").toPath();
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(packedWeightsPath)) {
+			writer.writeTensor("conv2d_1_kernel0", new int[] { 2, 3 }, new float[] { 1f, 2f, 3f, 4f, 5f, 6f });
+			writer.writeTensor("batch_normalization_1_beta0", new int[] { 3 }, new float[] { -1f, 0.5f, 7f });
+			writer.commit();
+		}
+		PackedInceptionV4WeightsConverter.writeManifest(packedWeightsPath);
+	}
+
+	@Test
+	public void testReadManifest() throws IOException {
+
+		InceptionV4WeightsManifest manifest = InceptionV4WeightsManifest
+				.read(Paths.get(packedWeightsPath + InceptionV4WeightsManifest.PACKED_MANIFEST_SUFFIX));
+
+		Assert.assertEquals(2, manifest.getEntries().size());
+		InceptionV4WeightsManifest.Entry entry = manifest.getEntry("conv2d_1_kernel0");
+		Assert.assertEquals("FLOAT32", entry.getDataType());
+		Assert.assertArrayEquals(new int[] { 2, 3 }, entry.getShape());
+		Assert.assertEquals(24, entry.getByteLength());
+
+		manifest.verify(PackedInceptionV4Weights.open(packedWeightsPath));
+	}
+
+	@Test
+	public void testCorruptTensor() throws IOException {
+
+		long dataOffset = PackedInceptionV4Weights.open(packedWeightsPath).getTensor("conv2d_1_kernel0")
+				.getDataOffset();
+		try (FileChannel channel = FileChannel.open(packedWeightsPath, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), dataOffset + 5);
+		}
+
+		try {
+			new PackedInceptionV4WeightsLoaderImpl(packedWeightsPath, mockMatrixFactory)
+					.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+			Assert.fail("Expected the corrupt tensor to fail verification");
+		} catch (UncheckedIOException e) {
+			Assert.assertTrue(e.getMessage().contains("conv2d_1_kernel0 has checksum"));
+		}
+	}
+
+	@Test
+	public void testCorruptClasspathTensor() throws IOException {
+
+		Path classpathRoot = temporaryFolder.newFolder("classpath").toPath();
+		Path tensorDirectory = classpathRoot.resolve(InceptionV4WeightsResources.getSerializedTensorDirectory());
+		Files.createDirectories(tensorDirectory);
+		serialize(tensorDirectory, "conv2d_1_kernel0", new float[] { 1f, 2f, 3f, 4f, 5f, 6f });
+		serialize(tensorDirectory, "batch_normalization_1_beta0", new float[] { -1f, 0.5f, 7f });
+		InceptionV4WeightsManifest.create(tensorDirectory)
+				.write(tensorDirectory.resolve(InceptionV4WeightsManifest.SERIALIZED_MANIFEST_FILE_NAME));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classpathRoot.toUri().toURL() }, null)) {
+			new PretrainedInceptionV4WeightsLoaderImpl(classLoader, mockMatrixFactory)
+					.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+		}
+
+		// Replace a tensor with different values of the same length
+		serialize(tensorDirectory, "batch_normalization_1_beta0", new float[] { -1f, 0.5f, 8f });
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classpathRoot.toUri().toURL() }, null)) {
+			PretrainedInceptionV4WeightsLoaderImpl weightsLoader = new PretrainedInceptionV4WeightsLoaderImpl(
+					classLoader, mockMatrixFactory);
+
+			// Each tensor is verified as it is read, so the intact tensor is still served
+			weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+			try {
+				weightsLoader.loadWeights("batch_normalization_1_beta0");
+				Assert.fail("Expected the corrupt tensor to fail verification");
+			} catch (UncheckedIOException e) {
+				Assert.assertTrue(e.getMessage().contains("batch_normalization_1_beta0 has checksum"));
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptDirectoryTensor() throws IOException {
+
+		Path weightsRoot = temporaryFolder.newFolder("weights").toPath();
+		Path tensorDirectory = weightsRoot.resolve(InceptionV4WeightsResources.getSerializedTensorDirectory());
+		Files.createDirectories(tensorDirectory);
+		serialize(tensorDirectory, "conv2d_1_kernel0", new float[] { 1f, 2f, 3f, 4f, 5f, 6f });
+		serialize(tensorDirectory, "batch_normalization_1_beta0", new float[] { -1f, 0.5f, 7f });
+		InceptionV4WeightsManifest.create(tensorDirectory)
+				.write(tensorDirectory.resolve(InceptionV4WeightsManifest.SERIALIZED_MANIFEST_FILE_NAME));
+		serialize(tensorDirectory, "batch_normalization_1_beta0", new float[] { -1f, 0.5f, 8f });
+
+		FileSystemInceptionV4WeightsLoaderImpl weightsLoader = new FileSystemInceptionV4WeightsLoaderImpl(
+				weightsRoot, mockMatrixFactory);
+
+		Assert.assertArrayEquals(new float[] { 1f, 2f, 3f, 4f, 5f, 6f },
+				weightsLoader.loadWeights("conv2d_1_kernel0"), 0f);
+		try {
+			weightsLoader.loadWeights("batch_normalization_1_beta0");
+			Assert.fail("Expected the corrupt tensor to fail verification");
+		} catch (UncheckedIOException e) {
+			Assert.assertTrue(e.getMessage().contains("batch_normalization_1_beta0 has checksum"));
+		}
+	}
+
+	private static void serialize(Path tensorDirectory, String name, float[] values) throws IOException {
+		try (OutputStream outputStream = Files.newOutputStream(
+				tensorDirectory.resolve(name + InceptionV4WeightsResources.SERIALIZED_EXTENSION));
+				ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+			objectOutputStream.writeObject(values);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequestedShapeMismatch() {
+		new PackedInceptionV4WeightsLoaderImpl(packedWeightsPath, mockMatrixFactory)
+				.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 2, 3);
+	}
+}
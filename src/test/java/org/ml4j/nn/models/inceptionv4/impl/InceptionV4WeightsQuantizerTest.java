@@ -0,0 +1,192 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.models.inceptionv4.InceptionV4Labels;
+import org.ml4j.nn.neurons.Neurons;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.neurons.NeuronsActivationImpl;
+import org.ml4j.nn.neurons.format.NeuronsActivationFormat;
+import org.ml4j.nn.sessions.factories.DefaultSessionFactory;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class InceptionV4WeightsQuantizerTest {
+
+	private static final String KERNEL_NAME = "conv2d_1_kernel0";
+
+	private static final String MEAN_NAME = "batch_normalization_1_moving_mean0";
+
+	private static final int CLASS_COUNT = 7;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private DefaultSessionFactory mockSessionFactory;
+
+	@Mock
+	private InceptionV4Labels mockLabels;
+
+	@Mock
+	private FeedForwardNeuralNetworkContext mockContext;
+
+	private InMemoryWeightsLoader sourceWeightsLoader;
+
+	private InceptionV4WeightsQuantizer quantizer;
+
+	private Path outputPath;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(), Mockito.anyInt(),
+				Mockito.any())).thenAnswer(invocation -> createMatrix((Integer) invocation.getArguments()[0],
+						(Integer) invocation.getArguments()[1], (float[]) invocation.getArguments()[2]));
+		sourceWeightsLoader = new InMemoryWeightsLoader(mockMatrixFactory);
+		sourceWeightsLoader.tensors.put(MEAN_NAME, new float[] { 0.123456789f, -7.5f });
+		quantizer = new InceptionV4WeightsQuantizer(mockSessionFactory, sourceWeightsLoader, mockLabels,
+				mockMatrixFactory) {
+
+			/**
+			 * A network with a single 1 x 2 convolution of one input channel, which
+			 * scores each class by the first weight of its output channel.
+			 */
+			@Override
+			SupervisedFeedForwardNeuralNetwork createNetwork(InceptionV4WeightsLoader weightsLoader,
+					FeedForwardNeuralNetworkContext context) {
+				float[] kernel = weightsLoader.getConvolutionalLayerWeights(KERNEL_NAME, 2, 1, 1, CLASS_COUNT)
+						.getMatrix().getRowByRowArray();
+				weightsLoader.getBatchNormLayerMean(MEAN_NAME, 2);
+				float[] scores = new float[CLASS_COUNT];
+				for (int classIndex = 0; classIndex < CLASS_COUNT; classIndex++) {
+					scores[classIndex] = kernel[classIndex * 2];
+				}
+				SupervisedFeedForwardNeuralNetwork network = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class,
+						Mockito.RETURNS_DEEP_STUBS);
+				Mockito.when(network.forwardPropagate(Mockito.any(NeuronsActivation.class), Mockito.eq(context))
+						.getOutput()).thenReturn(new NeuronsActivationImpl(new Neurons(CLASS_COUNT, false),
+								createMatrix(CLASS_COUNT, 1, scores), NeuronsActivationFormat.ROWS_SPAN_FEATURE_SET));
+				return network;
+			}
+		};
+		outputPath = temporaryFolder.getRoot().toPath().resolve("inceptionv4-int8.weights");
+	}
+
+	private static Matrix createMatrix(int rows, int columns, float[] values) {
+		Matrix matrix = Mockito.mock(Matrix.class);
+		Mockito.when(matrix.getRows()).thenReturn(rows);
+		Mockito.when(matrix.getColumns()).thenReturn(columns);
+		Mockito.when(matrix.getRowByRowArray()).thenReturn(values);
+		return matrix;
+	}
+
+	private static Iterator<InceptionV4InputImage> createImages(String... ids) {
+		return Arrays.stream(ids)
+				.map(id -> InceptionV4InputImage.of(id, new float[InceptionV4Activations.INPUT_FEATURE_COUNT]))
+				.iterator();
+	}
+
+	/**
+	 * Class 1 is scored above class 0 by 0.502 to 0.5006, but class 0 rounds
+	 * up to 64 / 127 of its channel's maximum, so the int8 network prefers it.
+	 */
+	private void putKernelWhichQuantisationReorders() {
+		sourceWeightsLoader.tensors.put(KERNEL_NAME, new float[] { 0.5006f, 1f, 0.502f, 0.502f, 0.1f, -1f, 0.2f, 1f,
+				0.3f, 1f, 0.4f, 1f, 0f, 0f });
+	}
+
+	@Test
+	public void testScalesArePerOutputChannelMaxAbsOver127() throws IOException {
+
+		putKernelWhichQuantisationReorders();
+
+		quantizer.quantize(outputPath, mockContext, createImages("a.jpg"), null, 1);
+
+		PackedInceptionV4Weights packedWeights = PackedInceptionV4Weights.open(outputPath);
+		Assert.assertEquals(PackedTensorDataType.INT8, packedWeights.getTensor(KERNEL_NAME).getDataType());
+		Assert.assertArrayEquals(new int[] { CLASS_COUNT, 2 }, packedWeights.getTensor(KERNEL_NAME).getShape());
+		// An output channel of zeros keeps a scale of one
+		Assert.assertArrayEquals(new float[] { 1f / 127, 0.502f / 127, 1f / 127, 1f / 127, 1f / 127, 1f / 127, 1f },
+				packedWeights.readTensor(KERNEL_NAME + PackedInceptionV4Weights.SCALES_SUFFIX), 1e-9f);
+
+		// Tensors other than convolution kernels are kept as float32
+		Assert.assertEquals(PackedTensorDataType.FLOAT32, packedWeights.getTensor(MEAN_NAME).getDataType());
+		Assert.assertArrayEquals(new float[] { 0.123456789f, -7.5f }, packedWeights.readTensor(MEAN_NAME), 0f);
+	}
+
+	@Test
+	public void testRoundTripErrorIsWithinHalfAScale() throws IOException {
+
+		Random random = new Random(11);
+		float[] kernel = new float[CLASS_COUNT * 2];
+		for (int i = 0; i < kernel.length; i++) {
+			kernel[i] = (float) (random.nextGaussian() * (1 + i / 2));
+		}
+		sourceWeightsLoader.tensors.put(KERNEL_NAME, kernel);
+
+		quantizer.quantize(outputPath, mockContext, createImages("a.jpg"), null, 1);
+
+		float[] dequantized = PackedInceptionV4Weights.open(outputPath).readTensor(KERNEL_NAME);
+		for (int row = 0; row < CLASS_COUNT; row++) {
+			float scale = Math.max(Math.abs(kernel[row * 2]), Math.abs(kernel[row * 2 + 1])) / 127;
+			for (int i = row * 2; i < row * 2 + 2; i++) {
+				Assert.assertEquals(kernel[i], dequantized[i], scale / 2 + 1e-6f);
+			}
+		}
+	}
+
+	@Test
+	public void testReportsAccuracyDeltas() throws IOException {
+
+		putKernelWhichQuantisationReorders();
+
+		InceptionV4AccuracyComparison.Report report = quantizer.quantize(outputPath, mockContext,
+				createImages("a.jpg", "b.jpg"), id -> 1, 1);
+
+		Assert.assertEquals(2, report.getImageCount());
+		Assert.assertEquals(0, report.getTop1Agreement(), 0);
+		Assert.assertEquals(1, report.getTop5Agreement(), 0);
+		Assert.assertEquals(1, report.getReferenceTop1Accuracy(), 0);
+		Assert.assertEquals(0, report.getCandidateTop1Accuracy(), 0);
+		Assert.assertEquals(1, report.getReferenceTop5Accuracy(), 0);
+		Assert.assertEquals(1, report.getCandidateTop5Accuracy(), 0);
+		Assert.assertTrue(report.toString().contains("(delta -1.0000)"));
+	}
+
+	private static class InMemoryWeightsLoader extends AbstractInceptionV4WeightsLoader {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Map<String, float[]> tensors = new HashMap<>();
+
+		private InMemoryWeightsLoader(MatrixFactory matrixFactory) {
+			super(matrixFactory);
+		}
+
+		@Override
+		protected float[] loadWeights(String name) {
+			return tensors.get(name);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.nn.FeedForwardNeuralNetworkContext;
+import org.ml4j.nn.ForwardPropagation;
+import org.ml4j.nn.models.inceptionv4.InceptionV4MetricsSink;
+import org.ml4j.nn.models.inceptionv4.impl.InceptionV4ForwardPropagationMetrics.ComponentMetrics;
+import org.ml4j.nn.neurons.NeuronsActivation;
+import org.ml4j.nn.supervised.SupervisedFeedForwardNeuralNetwork;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.mock.SerializableMode;
+
+public class InstrumentedInceptionV4NetworkTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private SupervisedFeedForwardNeuralNetwork mockNetwork;
+
+	@Mock
+	private FeedForwardNeuralNetworkContext mockContext;
+
+	@Mock
+	private NeuronsActivation mockInput;
+
+	@Mock
+	private NeuronsActivation mockOutput;
+
+	@Mock
+	private ForwardPropagation mockForwardPropagation;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockInput.getFeatureCount()).thenReturn(299 * 299 * 3);
+		Mockito.when(mockInput.getExampleCount()).thenReturn(4);
+		Mockito.when(mockOutput.getFeatureCount()).thenReturn(1001);
+		Mockito.when(mockForwardPropagation.getOutput()).thenReturn(mockOutput);
+		Mockito.when(mockNetwork.forwardPropagate(mockInput, mockContext)).thenReturn(mockForwardPropagation);
+	}
+
+	@Test
+	public void testRecordsForwardPropagations() {
+
+		InceptionV4ForwardPropagationMetrics metrics = new InceptionV4ForwardPropagationMetrics();
+		SupervisedFeedForwardNeuralNetwork network = InstrumentedInceptionV4Network.instrument(mockNetwork,
+				"inceptionV4", metrics);
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertSame(mockForwardPropagation, network.forwardPropagate(mockInput, mockContext));
+		}
+
+		Assert.assertTrue(network instanceof InstrumentedInceptionV4Network);
+		Mockito.verify(mockNetwork, Mockito.times(3)).forwardPropagate(mockInput, mockContext);
+		ComponentMetrics component = metrics.getComponentMetrics("inceptionV4");
+		Assert.assertEquals(3, component.getWallTimeNanos().getCount());
+		Assert.assertEquals(4, component.getExampleCounts().getMean(), 0);
+		Assert.assertEquals(299 * 299 * 3, component.getInputFeatures());
+		Assert.assertEquals(1001, component.getOutputFeatures());
+	}
+
+	@Test
+	public void testOtherMethodsAreDelegated() {
+
+		InceptionV4MetricsSink mockMetricsSink = Mockito.mock(InceptionV4MetricsSink.class);
+		SupervisedFeedForwardNeuralNetwork network = InstrumentedInceptionV4Network.instrument(mockNetwork,
+				"inceptionV4", mockMetricsSink);
+		SupervisedFeedForwardNeuralNetwork mockCopy = Mockito.mock(SupervisedFeedForwardNeuralNetwork.class);
+		Mockito.when(mockNetwork.dup()).thenReturn(mockCopy);
+		Mockito.when(mockCopy.forwardPropagate(mockInput, mockContext)).thenReturn(mockForwardPropagation);
+
+		network.train(mockInput, mockOutput, mockContext);
+		network.dup().forwardPropagate(mockInput, mockContext);
+
+		Mockito.verify(mockNetwork).train(mockInput, mockOutput, mockContext);
+		// Copies of the network are instrumented too
+		Mockito.verify(mockMetricsSink).recordForwardPropagation(Mockito.eq("inceptionV4"), Mockito.anyLong(),
+				Mockito.anyLong(), Mockito.eq(299 * 299 * 3), Mockito.eq(1001), Mockito.eq(4));
+		Mockito.verifyNoMoreInteractions(mockMetricsSink);
+	}
+
+	@Test
+	public void testDisabledWithoutMetricsSink() {
+
+		SupervisedFeedForwardNeuralNetwork network = InstrumentedInceptionV4Network.instrument(mockNetwork,
+				"inceptionV4", null);
+
+		// The network is not wrapped at all
+		Assert.assertSame(mockNetwork, network);
+	}
+
+	@Test
+	public void testSnapshotHoldsTheUninstrumentedNetwork() throws IOException {
+
+		SupervisedFeedForwardNeuralNetwork serializableNetwork = Mockito.mock(
+				SupervisedFeedForwardNeuralNetwork.class,
+				Mockito.withSettings().serializable(SerializableMode.ACROSS_CLASSLOADERS));
+		Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("inceptionv4.snapshot");
+
+		InceptionV4NetworkSnapshot.write(InstrumentedInceptionV4Network.instrument(serializableNetwork,
+				"inceptionV4", new InceptionV4ForwardPropagationMetrics()), snapshotPath,
+				"weights=0000002a ml4j=2.0.0");
+
+		SupervisedFeedForwardNeuralNetwork restored = InceptionV4NetworkSnapshot.read(snapshotPath,
+				getClass().getClassLoader(), "weights=0000002a ml4j=2.0.0");
+		Assert.assertNotNull(restored);
+		Assert.assertFalse(restored instanceof InstrumentedInceptionV4Network);
+	}
+}
@@ -0,0 +1,210 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ml4j.Matrix;
+import org.ml4j.MatrixFactory;
+import org.ml4j.nn.architectures.inception.inceptionv4.InceptionV4WeightsLoader;
+import org.ml4j.nn.axons.WeightsMatrix;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class PackedInceptionV4WeightsLoaderImplTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	@Mock
+	private Matrix mockMatrix;
+
+	private Path packedWeightsPath;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockMatrixFactory.createMatrixFromRowsByRowsArray(Mockito.anyInt(),
+				Mockito.anyInt(), Mockito.any())).thenReturn(mockMatrix);
+
+		packedWeightsPath = temporaryFolder.newFile("inceptionv4.weights").toPath();
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(packedWeightsPath)) {
+			writer.writeTensor("conv2d_1_kernel0", new int[] { 2, 3 }, new float[] { 1f, 2f, 3f, 4f, 5f, 6f });
+			writer.writeTensor("batch_normalization_1_beta0", new int[] { 3 }, new float[] { -1f, 0.5f, 7f });
+			writer.commit();
+		}
+	}
+
+	@Test
+	public void testReadTensors() throws IOException {
+
+		PackedInceptionV4Weights packedWeights = PackedInceptionV4Weights.open(packedWeightsPath);
+
+		Assert.assertEquals(2, packedWeights.getTensorNames().size());
+		Assert.assertArrayEquals(new int[] { 2, 3 }, packedWeights.getTensor("conv2d_1_kernel0").getShape());
+		Assert.assertEquals(0, packedWeights.getTensor("conv2d_1_kernel0").getDataOffset() % PackedInceptionV4Weights.ALIGNMENT);
+		Assert.assertArrayEquals(new float[] { 1f, 2f, 3f, 4f, 5f, 6f }, packedWeights.readTensor("conv2d_1_kernel0"), 0f);
+		Assert.assertArrayEquals(new float[] { -1f, 0.5f, 7f }, packedWeights.readTensor("batch_normalization_1_beta0"), 0f);
+	}
+
+	@Test
+	public void testGetConvolutionalLayerWeights() {
+
+		InceptionV4WeightsLoader weightsLoader = new PackedInceptionV4WeightsLoaderImpl(packedWeightsPath, mockMatrixFactory);
+
+		WeightsMatrix weightsMatrix = weightsLoader.getConvolutionalLayerWeights("conv2d_1_kernel0", 1, 1, 3, 2);
+
+		ArgumentCaptor<float[]> valuesCaptor = ArgumentCaptor.forClass(float[].class);
+		Mockito.verify(mockMatrixFactory).createMatrixFromRowsByRowsArray(Mockito.eq(2), Mockito.eq(3), valuesCaptor.capture());
+
+		Assert.assertArrayEquals(new float[] { 1f, 2f, 3f, 4f, 5f, 6f }, valuesCaptor.getValue(), 0f);
+		Assert.assertEquals(mockMatrix, weightsMatrix.getMatrix());
+	}
+
+	@Test
+	public void testReadQuantizedTensor() throws IOException {
+
+		Path quantizedWeightsPath = temporaryFolder.newFile("inceptionv4-int8.weights").toPath();
+		float[] values = new float[] { 0.5f, -1f, 0.25f, 100f, 50f, -25f };
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(quantizedWeightsPath)) {
+			writer.writeQuantizedTensor("conv2d_1_kernel0", 2, 3, values);
+			writer.commit();
+		}
+
+		PackedInceptionV4Weights packedWeights = PackedInceptionV4Weights.open(quantizedWeightsPath);
+
+		Assert.assertEquals(1, packedWeights.getTensorNames().size());
+		Assert.assertEquals(PackedTensorDataType.INT8, packedWeights.getTensor("conv2d_1_kernel0").getDataType());
+		Assert.assertEquals(6, packedWeights.getTensor("conv2d_1_kernel0").getByteLength());
+		float[] dequantized = packedWeights.readTensor("conv2d_1_kernel0");
+		for (int row = 0; row < 2; row++) {
+			float maxAbs = row == 0 ? 1f : 100f;
+			for (int i = row * 3; i < row * 3 + 3; i++) {
+				Assert.assertEquals(values[i], dequantized[i], maxAbs / 254);
+			}
+		}
+	}
+
+	@Test
+	public void testReadHalfPrecisionTensors() throws IOException {
+
+		Path halfPrecisionWeightsPath = temporaryFolder.newFile("inceptionv4-half.weights").toPath();
+		float[] values = new float[] { 1f, -2.5f, 0.15625f, 1000f, -0.001f, 3.14159f };
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(halfPrecisionWeightsPath)) {
+			writer.writeTensor("conv2d_1_kernel0", new int[] { 2, 3 }, values, PackedTensorDataType.FLOAT16);
+			writer.writeTensor("conv2d_2_kernel0", new int[] { 2, 3 }, values, PackedTensorDataType.BFLOAT16);
+			writer.commit();
+		}
+
+		PackedInceptionV4Weights packedWeights = PackedInceptionV4Weights.open(halfPrecisionWeightsPath);
+
+		Assert.assertEquals(PackedTensorDataType.FLOAT16, packedWeights.getTensor("conv2d_1_kernel0").getDataType());
+		Assert.assertEquals(12, packedWeights.getTensor("conv2d_1_kernel0").getByteLength());
+		Assert.assertEquals(PackedTensorDataType.BFLOAT16, packedWeights.getTensor("conv2d_2_kernel0").getDataType());
+		Assert.assertEquals(12, packedWeights.getTensor("conv2d_2_kernel0").getByteLength());
+		float[] float16Values = packedWeights.readTensor("conv2d_1_kernel0");
+		float[] bfloat16Values = packedWeights.readTensor("conv2d_2_kernel0");
+		for (int i = 0; i < values.length; i++) {
+			// 11 and 8 significant bits respectively, with round to nearest
+			Assert.assertEquals(values[i], float16Values[i], Math.abs(values[i]) / 2048);
+			Assert.assertEquals(values[i], bfloat16Values[i], Math.abs(values[i]) / 256);
+		}
+		// Values exactly representable in both formats are unchanged
+		Assert.assertEquals(-2.5f, float16Values[1], 0f);
+		Assert.assertEquals(-2.5f, bfloat16Values[1], 0f);
+
+		// The loader reads the half precision tensors into the requested shape
+		WeightsMatrix weightsMatrix = new PackedInceptionV4WeightsLoaderImpl(halfPrecisionWeightsPath,
+				mockMatrixFactory).getConvolutionalLayerWeights("conv2d_2_kernel0", 1, 1, 3, 2);
+		ArgumentCaptor<float[]> valuesCaptor = ArgumentCaptor.forClass(float[].class);
+		Mockito.verify(mockMatrixFactory).createMatrixFromRowsByRowsArray(Mockito.eq(2), Mockito.eq(3),
+				valuesCaptor.capture());
+		Assert.assertArrayEquals(bfloat16Values, valuesCaptor.getValue(), 0f);
+		Assert.assertEquals(mockMatrix, weightsMatrix.getMatrix());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingTensor() {
+		new PackedInceptionV4WeightsLoaderImpl(packedWeightsPath, mockMatrixFactory).getBatchNormLayerMean("missing", 3);
+	}
+
+	@Test
+	public void testUncommittedWeightsAreDiscarded() throws IOException {
+
+		Path uncommittedPath = temporaryFolder.getRoot().toPath().resolve("uncommitted.weights");
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(uncommittedPath)) {
+			writer.writeTensor("conv2d_1_kernel0", new int[] { 2, 3 }, new float[] { 1f, 2f, 3f, 4f, 5f, 6f });
+		}
+
+		Assert.assertFalse(Files.exists(uncommittedPath));
+		Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsTensorWhoseShapeDoesNotMatchItsBytes() throws IOException {
+
+		ByteBuffer packedWeights = ByteBuffer.wrap(Files.readAllBytes(packedWeightsPath)).order(ByteOrder.LITTLE_ENDIAN);
+		int indexOffset = (int) packedWeights.getLong(16);
+		int nameLength = packedWeights.getShort(indexOffset);
+		// Change the shape of the first tensor from 2 x 3 to 2 x 4
+		packedWeights.putInt(indexOffset + 2 + nameLength + 2 + 4, 4);
+		Files.write(packedWeightsPath, packedWeights.array());
+
+		PackedInceptionV4Weights.open(packedWeightsPath);
+	}
+
+	@Test
+	public void testReadsNamesLongerThanASignedShort() throws IOException {
+
+		char[] nameChars = new char[40000];
+		Arrays.fill(nameChars, 'a');
+		String longName = new String(nameChars);
+		Path longNamePath = temporaryFolder.getRoot().toPath().resolve("longname.weights");
+		try (PackedInceptionV4WeightsWriter writer = new PackedInceptionV4WeightsWriter(longNamePath)) {
+			writer.writeTensor(longName, new int[] { 3 }, new float[] { -1f, 0.5f, 7f });
+			writer.commit();
+		}
+
+		Assert.assertArrayEquals(new float[] { -1f, 0.5f, 7f },
+				PackedInceptionV4Weights.open(longNamePath).readTensor(longName), 0f);
+	}
+
+	@Test
+	public void testRejectsIndexWhichExtendsBeyondTheFile() throws IOException {
+
+		ByteBuffer packedWeights = ByteBuffer.wrap(Files.readAllBytes(packedWeightsPath)).order(ByteOrder.LITTLE_ENDIAN);
+		int indexOffset = (int) packedWeights.getLong(16);
+		// Declare a name longer than the rest of the index
+		packedWeights.putShort(indexOffset, (short) 0xfff0);
+		Files.write(packedWeightsPath, packedWeights.array());
+
+		try {
+			PackedInceptionV4Weights.open(packedWeightsPath);
+			Assert.fail("Expected the malformed index to be rejected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("extends beyond the index"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsTruncatedIndex() throws IOException {
+
+		byte[] packedWeights = Files.readAllBytes(packedWeightsPath);
+		Files.write(packedWeightsPath, Arrays.copyOf(packedWeights, packedWeights.length - 4));
+
+		PackedInceptionV4Weights.open(packedWeightsPath);
+	}
+}
@@ -0,0 +1,32 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackedTensorDataTypeTest {
+
+	@Test
+	public void testDecodeAdvancesSourcePosition() {
+
+		float[] values = new float[] { 1f, -2f, 4f, 3f };
+
+		for (PackedTensorDataType dataType : PackedTensorDataType.values()) {
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * dataType.getBytesPerElement())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			dataType.encode(values, 0, values.length, buffer);
+			Assert.assertEquals(dataType.name(), buffer.capacity(), buffer.position());
+
+			// Decode the values in two runs from the same buffer
+			buffer.flip();
+			float[] decoded = new float[values.length];
+			dataType.decode(buffer, decoded, 0, 1);
+			Assert.assertEquals(dataType.name(), dataType.getBytesPerElement(), buffer.position());
+			dataType.decode(buffer, decoded, 1, values.length - 1);
+			Assert.assertEquals(dataType.name(), buffer.capacity(), buffer.position());
+			Assert.assertArrayEquals(dataType.name(), values, decoded, 0f);
+		}
+	}
+}
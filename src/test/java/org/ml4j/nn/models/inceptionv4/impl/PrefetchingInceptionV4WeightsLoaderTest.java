@@ -0,0 +1,172 @@
+package org.ml4j.nn.models.inceptionv4.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml4j.MatrixFactory;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PrefetchingInceptionV4WeightsLoaderTest {
+
+	@Mock
+	private MatrixFactory mockMatrixFactory;
+
+	private CountingWeightsLoader sourceWeightsLoader;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		sourceWeightsLoader = new CountingWeightsLoader(mockMatrixFactory);
+	}
+
+	@Test
+	public void testPrefetchedTensorsAreServedOnce() {
+
+		PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				sourceWeightsLoader, Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), Runnable::run);
+
+		Assert.assertEquals(Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), sourceWeightsLoader.loadedNames);
+
+		Assert.assertArrayEquals(new float[] { 16 }, weightsLoader.loadWeights("conv2d_1_kernel0"), 0f);
+		Assert.assertEquals(2, sourceWeightsLoader.loadedNames.size());
+
+		// A second request is read from the source loader
+		weightsLoader.loadWeights("conv2d_1_kernel0");
+		Assert.assertEquals(3, sourceWeightsLoader.loadedNames.size());
+	}
+
+	@Test
+	public void testPrefetchPassesManifestLengthToSource() {
+
+		sourceWeightsLoader.setManifest(new InceptionV4WeightsManifest(Arrays.asList(
+				new InceptionV4WeightsManifest.Entry("conv2d_1_kernel0", InceptionV4WeightsManifest.SERIALIZED_FLOAT32,
+						new int[] { 1, 1 }, 4, 0))));
+
+		PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				sourceWeightsLoader, Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), Runnable::run);
+
+		// Only the tensor listed in the manifest has a known length when prefetched
+		Assert.assertEquals(Arrays.asList(1, -1), sourceWeightsLoader.expectedLengths);
+
+		weightsLoader.loadWeights("conv2d_1_kernel0");
+		weightsLoader.loadWeights("conv2d_1_kernel0", 1);
+		Assert.assertEquals(Arrays.asList(1, -1, 1), sourceWeightsLoader.expectedLengths);
+	}
+
+	@Test
+	public void testSecondNetworkReadsFromSource() {
+
+		PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				sourceWeightsLoader, Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), Runnable::run);
+
+		weightsLoader.loadWeights("conv2d_1_kernel0", 1);
+		weightsLoader.loadWeights("dense_1_bias0", 1);
+		Assert.assertEquals(2, sourceWeightsLoader.loadedNames.size());
+
+		// The tensors are not prefetched again for a second network
+		weightsLoader.loadWeights("conv2d_1_kernel0", 1);
+		weightsLoader.loadWeights("dense_1_bias0", 1);
+		Assert.assertEquals(Arrays.asList("conv2d_1_kernel0", "dense_1_bias0", "conv2d_1_kernel0", "dense_1_bias0"),
+				sourceWeightsLoader.loadedNames);
+	}
+
+	@Test
+	public void testCloseDiscardsUnrequestedTensors() {
+
+		PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				sourceWeightsLoader, Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), Runnable::run);
+
+		weightsLoader.loadWeights("conv2d_1_kernel0");
+		weightsLoader.close();
+		weightsLoader.close();
+
+		// The discarded tensor is read again on request
+		weightsLoader.loadWeights("dense_1_bias0");
+		Assert.assertEquals(3, sourceWeightsLoader.loadedNames.size());
+	}
+
+	@Test
+	public void testCloseCancelsReadsWhichHaveNotStarted() {
+
+		List<Runnable> pendingReads = new ArrayList<>();
+		PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+				sourceWeightsLoader, Arrays.asList("conv2d_1_kernel0", "dense_1_bias0"), pendingReads::add);
+
+		weightsLoader.close();
+		pendingReads.forEach(Runnable::run);
+
+		Assert.assertTrue(sourceWeightsLoader.loadedNames.isEmpty());
+	}
+
+	@Test
+	public void testCloseWaitsForReadsInProgress() throws Exception {
+
+		CountDownLatch readStarted = new CountDownLatch(1);
+		CountDownLatch readReleased = new CountDownLatch(1);
+		AbstractInceptionV4WeightsLoader blockingWeightsLoader = new CountingWeightsLoader(mockMatrixFactory) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected float[] loadWeights(String name) {
+				readStarted.countDown();
+				try {
+					readReleased.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.loadWeights(name);
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			PrefetchingInceptionV4WeightsLoader weightsLoader = new PrefetchingInceptionV4WeightsLoader(
+					blockingWeightsLoader, Arrays.asList("conv2d_1_kernel0"), executor);
+			readStarted.await();
+
+			Thread closingThread = new Thread(weightsLoader::close);
+			closingThread.start();
+			closingThread.join(100);
+			Assert.assertTrue(closingThread.isAlive());
+
+			readReleased.countDown();
+			closingThread.join(5000);
+			Assert.assertFalse(closingThread.isAlive());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class CountingWeightsLoader extends AbstractInceptionV4WeightsLoader {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> loadedNames = new ArrayList<>();
+
+		private final List<Integer> expectedLengths = new ArrayList<>();
+
+		private CountingWeightsLoader(MatrixFactory matrixFactory) {
+			super(matrixFactory);
+		}
+
+		@Override
+		protected float[] loadWeights(String name) {
+			return loadWeights(name, -1);
+		}
+
+		@Override
+		protected synchronized float[] loadWeights(String name, int expectedLength) {
+			loadedNames.add(name);
+			expectedLengths.add(expectedLength);
+			return new float[] { name.length() };
+		}
+	}
+}